@@ -0,0 +1,214 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Allocation regression check for the load and backtest hot paths.
+ * Loads a fixed synthetic dataset and runs each algorithm on it, measuring
+ * the heap bytes the current thread allocates per parsed row and per
+ * simulated bar. Exits with status 1 if any figure is over its budget, so
+ * reintroduced per-row boxing or per-bar string building fails a build
+ * step instead of going unnoticed.
+ *
+ * Usage: java AllocationBudget [rows]
+ * The budgets assume the default 100000 rows; fewer rows spread each run's
+ * fixed setup over fewer bars.
+ * Budgets, in bytes, can be overridden with system properties:
+ *   -Dstockbot.budget.loadRow=      per parsed CSV row, over reading and splitting it (default 720)
+ *   -Dstockbot.budget.summaryBar=   per bar of a summary-only run (default 4)
+ *   -Dstockbot.budget.curveBar=     per bar of a run that keeps its equity curve (default 16)
+ *   -Dstockbot.budget.logBar=       per bar of a run that writes its activity log (default 480)
+ * Most of a row's allocation is the line and its split fields, which the
+ * JDK decides, so the load budget is measured on top of a baseline: the
+ * same file read and split in the same JVM. The defaults leave about a
+ * third of headroom over JDK 21 with G1, where the loader adds about 540
+ * bytes per row to a baseline of about 540 (number and date parsing, the
+ * row's arrays) and a logged bar costs about 360 bytes (its date string,
+ * number formatting and its share of the log's buffer), so a regression
+ * that adds a couple of objects per row or bar trips them. Logs are built
+ * as usual and written to a null sink rather than to disk. The per-bar
+ * figures without logs are near zero.
+ * Each figure is the lowest of several repeats, after a JIT warm-up.
+ */
+public class AllocationBudget {
+
+    private static final int DEFAULT_ROWS = 100_000;
+    private static final int REPEATS = 5;
+    private static final int WARMUPS = 20;
+    private static final long SEED = 42;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int rows;
+    private final Path file;
+    private boolean failed;
+
+    public AllocationBudget(int rows, Path file) {
+        this.rows = rows;
+        this.file = file;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+        if (!THREADS.isThreadAllocatedMemorySupported()) {
+            System.out.println("Per-thread allocation counting is not supported by this JVM");
+            System.exit(2);
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        Path file = Files.createTempFile("stockbot-alloc", ".csv");
+        try {
+            writeDataset(file, rows);
+            AllocationBudget check = new AllocationBudget(rows, file);
+            boolean ok = check.run();
+            System.out.println(ok ? "All allocation budgets met" : "Allocation budget exceeded");
+            if (!ok) {
+                System.exit(1);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Measure every hot path against its budget, printing one line each
+     * @return True if every budget was met
+     */
+    public boolean run() throws Exception {
+        double loadBudget = budget("loadRow", 720);
+        double summaryBudget = budget("summaryBar", 4);
+        double curveBudget = budget("curveBar", 16);
+        double logBudget = budget("logBar", 480);
+
+        // Loading: parse, store and nothing else (no export, no indicators), over reading and splitting the lines
+        double baseline = measure(rows, this::readLines);
+        System.out.println(String.format(Locale.ROOT, "%-45s %10.1f bytes/row", "read and split (baseline)", baseline));
+        StockSystem load = new StockSystem();
+        check("loadData", "row", rows, baseline + loadBudget, () -> load.loadData(file.toString(), ""));
+
+        StockSystem system = new StockSystem();
+        system.loadData(file.toString(), "");
+        system.setBalance(10000);
+        system.setActivityLogs(false);
+        // Compute the cached indicators up front so the runs measure only the bar loop
+        system.getMovingAverage();
+        system.getRSI();
+
+        for (int a = 0; a < StockSystem.ALGORITHMS.length; a++) {
+            int algorithm = a;
+            system.setSummaryOnly(true);
+            check(StockSystem.ALGORITHMS[a] + " (summary only)", "bar", rows, summaryBudget,
+                    () -> runAlgorithm(system, algorithm));
+            system.setSummaryOnly(false);
+            check(StockSystem.ALGORITHMS[a] + " (equity curve)", "bar", rows, curveBudget,
+                    () -> runAlgorithm(system, algorithm));
+        }
+
+        // Activity logs built as usual, then dropped, so the check sees per-bar string building but no disk
+        system.setMainSystem(new MainSystem() {
+            @Override
+            public BufferedWriter writeFile(String fileName) {
+                return new BufferedWriter(Writer.nullWriter());
+            }
+        });
+        system.setActivityLogs(true);
+        for (int a = 0; a < StockSystem.ALGORITHMS.length; a++) {
+            int algorithm = a;
+            check(StockSystem.ALGORITHMS[a] + " (activity log)", "bar", rows, logBudget,
+                    () -> runAlgorithm(system, algorithm));
+        }
+        return !failed;
+    }
+
+    // What the JDK allocates to read the file's lines and split them, as the loader does
+    private void readLines() throws IOException {
+        try (BufferedReader in = new MainSystem().readFile(file.toString())) {
+            String line;
+            int fields = 0;
+            while ((line = in.readLine()) != null) {
+                fields += line.split(",").length;
+            }
+            if (fields == 0) {
+                throw new IOException("Empty dataset");
+            }
+        }
+    }
+
+    private interface Work {
+        void run() throws Exception;
+    }
+
+    private void check(String name, String unit, int count, double budget, Work work) throws Exception {
+        double perUnit = measure(count, work);
+        boolean ok = perUnit <= budget;
+        failed |= !ok;
+        System.out.println(String.format(Locale.ROOT, "%-45s %10.1f bytes/%s  budget %8.1f  %s",
+                name, perUnit, unit, budget, ok ? "ok" : "OVER"));
+    }
+
+    // Run the work until the JIT has compiled it, then keep the fewest bytes allocated over REPEATS runs, per unit
+    private static double measure(int count, Work work) throws Exception {
+        for (int w = 0; w < WARMUPS; w++) {
+            work.run();
+        }
+        long least = Long.MAX_VALUE;
+        for (int r = 0; r < REPEATS; r++) {
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            work.run();
+            least = Math.min(least, THREADS.getCurrentThreadAllocatedBytes() - before);
+        }
+        return (double) least / count;
+    }
+
+    private static void runAlgorithm(StockSystem system, int algorithm) {
+        switch (algorithm) {
+            case 0:
+                system.algo1();
+                break;
+            case 1:
+                system.algo2();
+                break;
+            default:
+                system.algo3();
+                break;
+        }
+    }
+
+    private static double budget(String name, double defaultBytes) {
+        String value = System.getProperty("stockbot.budget." + name);
+        return value == null ? defaultBytes : Double.parseDouble(value);
+    }
+
+    /**
+     * Write a daily price history in loadData's CSV format: a random walk
+     * from a fixed seed, so every run measures the same data
+     * @param file Where to write
+     * @param rows Number of bars
+     */
+    public static void writeDataset(Path file, int rows) throws IOException {
+        Random random = new Random(SEED);
+        LocalDate date = LocalDate.of(1980, 1, 1);
+        double price = 100;
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("Date,Open,High,Low,Close,Adj Close,Volume\n");
+            for (int i = 0; i < rows; i++) {
+                double open = price;
+                price = Math.max(1, price * (1 + random.nextGaussian() * 0.015));
+                double high = Math.max(open, price) * (1 + random.nextDouble() * 0.01);
+                double low = Math.min(open, price) * (1 - random.nextDouble() * 0.01);
+                long volume = 100_000 + random.nextInt(900_000);
+                out.write(String.format(Locale.ROOT, "%s,%.2f,%.2f,%.2f,%.2f,%.2f,%d\n",
+                        date, open, high, low, price, price, volume));
+                date = date.plusDays(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.IOException;
+
+/**
+ * Streaming aggregation of ticks or fine bars into coarser OHLCV bars
+ * (tick to 1 minute, 1 minute to 5 minutes, intraday to daily, ...).
+ * Input must arrive in time order. Only the bar being built is kept, so the
+ * state is constant no matter how long the input is. Each output bar is
+ * stamped with the start of its interval; intervals are aligned to midnight.
+ */
+public class BarResampler implements BarSink {
+
+    public static final long MINUTE = 60_000L;
+    public static final long FIVE_MINUTES = 5 * MINUTE;
+    public static final long HOUR = 60 * MINUTE;
+    public static final long DAY = BarSeries.DAY_MILLIS;
+
+    private final long interval;
+    private final BarSink out;
+
+    // The bar being built
+    private boolean open;
+    private long bucket;
+    private double o, h, l, c, adj, vol;
+
+    /**
+     * Create a resampler
+     * @param interval Output bar length in milliseconds
+     * @param out Receives each completed bar
+     */
+    public BarResampler(long interval, BarSink out) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        this.interval = interval;
+        this.out = out;
+    }
+
+    // Add a trade; the price becomes every field of a one-trade bar
+    public void tick(long time, double price, double size) throws IOException {
+        add(time, price, price, price, price, price, size);
+    }
+
+    @Override
+    public void add(long time, double bo, double bh, double bl, double bc, double badj, double bvol) throws IOException {
+        long b = time - Math.floorMod(time, interval);
+        if (open && b != bucket) {
+            if (b < bucket) {
+                throw new IllegalArgumentException("Input is not in time order at " + BarSeries.toDateTime(time));
+            }
+            flush();
+        }
+        if (!open) {
+            open = true;
+            bucket = b;
+            o = bo;
+            h = bh;
+            l = bl;
+            vol = 0;
+        } else {
+            h = Math.max(h, bh);
+            l = Math.min(l, bl);
+        }
+        c = bc;
+        adj = badj;
+        vol += bvol;
+    }
+
+    // Emit the bar being built, if any; call once after the last input
+    public void flush() throws IOException {
+        if (open) {
+            out.add(bucket, o, h, l, c, adj, vol);
+            open = false;
+        }
+    }
+
+    /**
+     * Resample a whole series in one pass
+     * @param in Source bars
+     * @param interval Output bar length in milliseconds
+     * @return The coarser bars on the heap
+     */
+    public static HeapBarSeries resample(BarSeries in, long interval) {
+        HeapBarSeries result = new HeapBarSeries();
+        BarResampler resampler = new BarResampler(interval, result);
+        DoubleSeries open = in.open(), high = in.high(), low = in.low(), close = in.close();
+        DoubleSeries adjClose = in.adjClose(), volume = in.volume();
+        try {
+            for (int i = 0; i < in.size(); i++) {
+                resampler.add(in.time(i), open.get(i), high.get(i), low.get(i), close.get(i),
+                        adjClose.get(i), volume.get(i));
+            }
+            resampler.flush();
+        } catch (IOException e) {
+            // HeapBarSeries never throws
+            throw new IllegalStateException(e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated single-producer / multi-consumer ring buffer of bars.
+ * Slots are parallel primitive arrays that are overwritten in place, so
+ * publishing an event allocates nothing. Each consumer has its own
+ * sequence. The producer waits for the slowest one before reusing a slot,
+ * which gives backpressure instead of dropped events.
+ */
+public class BarRingBuffer {
+
+    private final int mask;
+    private final int[] index;
+    private final long[] time;
+    private final double[] open, high, low, close, volume;
+
+    // Last published sequence, -1 before the first event
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final AtomicLong[] consumers;
+    private volatile boolean closed;
+
+    /**
+     * Create a ring buffer
+     * @param capacity Number of slots, rounded up to a power of two
+     * @param consumerCount Number of consumers that will read it
+     */
+    public BarRingBuffer(int capacity, int consumerCount) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        index = new int[size];
+        time = new long[size];
+        open = new double[size];
+        high = new double[size];
+        low = new double[size];
+        close = new double[size];
+        volume = new double[size];
+        consumers = new AtomicLong[consumerCount];
+        for (int c = 0; c < consumerCount; c++) {
+            consumers[c] = new AtomicLong(-1);
+        }
+    }
+
+    /**
+     * Publish one bar, waiting while the slowest consumer is a full buffer behind
+     * @return false if the buffer was closed while waiting
+     */
+    public boolean publish(int i, long t, double o, double h, double l, double c, double v) {
+        long seq = cursor.get() + 1;
+        int spins = 0;
+        while (seq - minConsumer() > mask) {
+            if (closed) {
+                return false;
+            }
+            spins = idle(spins);
+        }
+        int slot = (int) seq & mask;
+        index[slot] = i;
+        time[slot] = t;
+        open[slot] = o;
+        high[slot] = h;
+        low[slot] = l;
+        close[slot] = c;
+        volume[slot] = v;
+        cursor.lazySet(seq);
+        return true;
+    }
+
+    // Mark the end of the stream; consumers drain what is left and stop
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Deliver every event to one consumer until the stream ends
+     * @param consumer Consumer number, 0 to consumerCount - 1
+     * @param listener Receives the events
+     */
+    public void consume(int consumer, ReplayListener listener) {
+        AtomicLong own = consumers[consumer];
+        long next = own.get() + 1;
+        int spins = 0;
+        while (true) {
+            long available = cursor.get();
+            if (available < next) {
+                if (closed && cursor.get() < next) {
+                    break;
+                }
+                spins = idle(spins);
+                continue;
+            }
+            spins = 0;
+            for (; next <= available; next++) {
+                int slot = (int) next & mask;
+                listener.onBar(index[slot], time[slot], open[slot], high[slot], low[slot], close[slot], volume[slot]);
+            }
+            // Hand the slots back to the producer in one step per batch
+            own.lazySet(available);
+        }
+        listener.onEnd();
+    }
+
+    private long minConsumer() {
+        long min = Long.MAX_VALUE;
+        for (AtomicLong c : consumers) {
+            min = Math.min(min, c.get());
+        }
+        return min;
+    }
+
+    // Spin briefly, then yield, then park
+    private static int idle(int spins) {
+        if (spins < 100) {
+            Thread.onSpinWait();
+        } else if (spins < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+        return spins + 1;
+    }
+}
@@ -0,0 +1,54 @@
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Accessor for a loaded price history, one column per field.
+ * Implemented by {@link HeapBarSeries} for CSV loads and by
+ * {@link OffHeapBarStore} for memory-mapped datasets larger than the heap.
+ */
+public interface BarSeries {
+    
+    long DAY_MILLIS = 86_400_000L;
+    
+    int size();
+    
+    /**
+     * Bar timestamp in milliseconds. Exchange-local date-times are stored as if
+     * they were UTC, so a daily bar's timestamp is its date at midnight.
+     */
+    long time(int i);
+    
+    // Calendar date of the bar
+    default LocalDate date(int i) {
+        return LocalDate.ofEpochDay(Math.floorDiv(time(i), DAY_MILLIS));
+    }
+    
+    DoubleSeries open();
+    
+    DoubleSeries high();
+    
+    DoubleSeries low();
+    
+    DoubleSeries close();
+    
+    DoubleSeries adjClose();
+    
+    DoubleSeries volume();
+    
+    /**
+     * Allocate a writable column for derived values (indicators) in the same
+     * kind of storage as the bars themselves
+     * @param size Number of values
+     * @return A zero-filled column of the given size
+     */
+    DoubleSeries newColumn(int size);
+    
+    static long toTime(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+    
+    static LocalDateTime toDateTime(long time) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(time, 1000L), (int) Math.floorMod(time, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+}
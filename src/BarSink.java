@@ -0,0 +1,12 @@
+import java.io.IOException;
+
+/**
+ * Receives bars one at a time, in time order.
+ * Implemented by on-heap series, the off-heap store writer and the resampler,
+ * so loaders and resamplers can be chained without intermediate copies.
+ */
+public interface BarSink {
+    
+    void add(long time, double open, double high, double low, double close, double adjClose, double volume)
+            throws IOException;
+}
@@ -0,0 +1,194 @@
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Read-only table over data that stays where it is, such as an equity curve
+ * or a mapped trade journal. A cell is read and formatted only when the
+ * table asks for it, which JTable does for the visible rows only, so a
+ * table of millions of rows costs no more to show than one of a screenful.
+ *
+ * Sorting and filtering never move the data: the view is a permutation of
+ * row numbers, sorted by each row's numeric key and filtered with a
+ * {@link RuleCompiler} rule over the columns' rule names, e.g.
+ * {@code side == 1 && price > 100}.
+ */
+public abstract class ColumnTableModel extends AbstractTableModel {
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final String[] titles;
+    private final String[] ruleNames;
+    // Visible rows in display order; null shows every row in order
+    private int[] view;
+    private int sortColumn = -1;
+    private boolean descending;
+    private String filter;
+
+    /**
+     * @param titles Column headers
+     * @param ruleNames Name of each column in filter rules, lower case
+     */
+    protected ColumnTableModel(String[] titles, String[] ruleNames) {
+        this.titles = titles;
+        this.ruleNames = ruleNames;
+    }
+
+    // Number of rows in the data, before filtering
+    protected abstract int rows();
+
+    // Numeric value of a cell, for sorting and filtering
+    protected abstract double value(int row, int column);
+
+    // Display value of a cell
+    protected abstract Object cell(int row, int column);
+
+    @Override
+    public int getRowCount() {
+        return view == null ? rows() : view.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return titles.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return titles[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return cell(modelRow(rowIndex), columnIndex);
+    }
+
+    // Row of the data shown at a table row
+    public int modelRow(int rowIndex) {
+        return view == null ? rowIndex : view[rowIndex];
+    }
+
+    /**
+     * Sort by a column; sorting by the same column again reverses the order
+     * @param column Column to sort by, or -1 for data order
+     */
+    public void sort(int column) {
+        descending = column == sortColumn && !descending;
+        sortColumn = column;
+        refresh();
+    }
+
+    /**
+     * Show only the rows matching a rule
+     * @param rule Rule over the rule names, or null or blank for every row
+     * @throws IllegalArgumentException If the rule is not valid; the filter is then unchanged
+     */
+    public void setFilter(String rule) {
+        String previous = filter;
+        filter = rule == null || rule.isBlank() ? null : rule;
+        try {
+            refresh();
+        } catch (IllegalArgumentException e) {
+            filter = previous;
+            throw e;
+        }
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    // Rule names a filter may use
+    public String[] getRuleNames() {
+        return ruleNames.clone();
+    }
+
+    /**
+     * Rebuild the view after the data changed, keeping the sort and filter.
+     * Subclasses call this when they are given new data.
+     */
+    protected void refresh() {
+        int n = rows();
+        int[] rows = null;
+        if (filter != null) {
+            RuleCompiler.Rule rule = new RuleCompiler(this::column).compile(filter);
+            int[] matches = new int[n];
+            int count = 0;
+            for (int row = 0; row < n; row++) {
+                if (rule.test(row)) {
+                    matches[count++] = row;
+                }
+            }
+            rows = Arrays.copyOf(matches, count);
+        }
+        if (sortColumn >= 0) {
+            if (rows == null) {
+                rows = new int[n];
+                for (int row = 0; row < n; row++) {
+                    rows[row] = row;
+                }
+            }
+            double[] keys = new double[n];
+            for (int row : rows) {
+                keys[row] = value(row, sortColumn);
+            }
+            if (descending) {
+                IndexSort.byKeyDescending(rows, keys);
+            } else {
+                IndexSort.byKey(rows, keys);
+            }
+        }
+        view = rows;
+        fireTableDataChanged();
+    }
+
+    // A column as a series over the data rows, for filter rules
+    private DoubleSeries column(String name, double[] params) {
+        for (int c = 0; c < ruleNames.length; c++) {
+            if (ruleNames[c].equals(name)) {
+                if (params.length > 0) {
+                    throw new IllegalArgumentException(name + " takes no parameters");
+                }
+                int column = c;
+                return new DoubleSeries() {
+                    @Override
+                    public int size() {
+                        return rows();
+                    }
+
+                    @Override
+                    public double get(int i) {
+                        return value(i, column);
+                    }
+
+                    @Override
+                    public void copyFrom(double[] src, int off, int at, int len) {
+                        throw new UnsupportedOperationException("Table columns are read-only");
+                    }
+                };
+            }
+        }
+        return null;
+    }
+
+    // Plain date for daily bars, date and time otherwise
+    protected static String formatTime(long time) {
+        LocalDateTime stamp = BarSeries.toDateTime(time);
+        return Math.floorMod(time, BarSeries.DAY_MILLIS) == 0 ? stamp.format(DATE) : stamp.format(DATE_TIME);
+    }
+
+    // Two decimals, as in the log and comparison table
+    protected static String formatMoney(double value) {
+        return String.format("%.2f", value);
+    }
+}
@@ -0,0 +1,213 @@
+import java.util.ArrayList;
+import java.util.List;
+import org.jfree.data.DomainInfo;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+import org.jfree.data.xy.XYRangeInfo;
+
+/**
+ * JFreeChart dataset that reads straight from primitive columns.
+ * Nothing is copied or boxed: the renderer's getXValue/getYValue calls go
+ * to the columns' get(i). X is the bar index unless a series has its own
+ * x column. A visible limit lets a growing column (a replay) show only the
+ * points filled in so far.
+ *
+ * Axis autoscaling never iterates either. X is ascending, which lets the
+ * renderer binary search for the visible items, and the y bounds of any x
+ * range come from a {@link RangeMinMax} per series, which JFreeChart asks
+ * for through XYRangeInfo on every zoom and pan.
+ */
+public class ColumnXYDataset extends AbstractXYDataset implements XYRangeInfo, RangeInfo, DomainInfo {
+
+    private final List<String> keys = new ArrayList<>();
+    private final List<DoubleSeries> xs = new ArrayList<>();
+    private final List<DoubleSeries> ys = new ArrayList<>();
+    private final List<RangeMinMax> yRanges = new ArrayList<>();
+    private int limit = Integer.MAX_VALUE;
+
+    // Series plotted against the bar index
+    public void addSeries(String key, DoubleSeries y) {
+        addSeries(key, null, y);
+    }
+
+    /**
+     * Add a series
+     * @param key Legend name
+     * @param x X values in ascending order, or null to use the index
+     * @param y Y values
+     */
+    public void addSeries(String key, DoubleSeries x, DoubleSeries y) {
+        keys.add(key);
+        xs.add(x);
+        ys.add(y);
+        yRanges.add(new RangeMinMax(y));
+        fireDatasetChanged();
+    }
+
+    // Show at most this many points of each series and repaint
+    public void setLimit(int limit) {
+        this.limit = limit;
+        fireDatasetChanged();
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return keys.size();
+    }
+
+    @Override
+    public Comparable<?> getSeriesKey(int series) {
+        return keys.get(series);
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        DoubleSeries x = xs.get(series);
+        int size = ys.get(series).size();
+        if (x != null) {
+            size = Math.min(size, x.size());
+        }
+        return Math.min(size, limit);
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        DoubleSeries x = xs.get(series);
+        return x == null ? item : x.get(item);
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return ys.get(series).get(item);
+    }
+
+    // Boxed accessors required by XYDataset; the renderers use the primitive ones above
+    @Override
+    public Number getX(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return getYValue(series, item);
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    /**
+     * Y bounds of the given series over an x range, for autoscaling the
+     * y axis to the visible part of the chart
+     * @return The bounds, or null if no point is in range
+     */
+    // Raw List, as JFreeChart versions differ in how they declare it
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Range getRangeBounds(List visibleSeriesKeys, Range xRange, boolean includeInterval) {
+        double lower = Double.POSITIVE_INFINITY, upper = Double.NEGATIVE_INFINITY;
+        for (Object key : visibleSeriesKeys) {
+            int series = keys.indexOf(key);
+            if (series < 0) {
+                continue;
+            }
+            int from = firstItemAtOrAfter(series, xRange.getLowerBound());
+            int to = firstItemAfter(series, xRange.getUpperBound());
+            if (from < to) {
+                RangeMinMax range = yRanges.get(series);
+                // Only the points shown so far, as a replay's columns are filled as it runs
+                range.update(getItemCount(series));
+                double min = range.min(from, to);
+                if (!Double.isNaN(min)) {
+                    lower = Math.min(lower, min);
+                    upper = Math.max(upper, range.max(from, to));
+                }
+            }
+        }
+        return lower <= upper ? new Range(lower, upper) : null;
+    }
+
+    @Override
+    public Range getRangeBounds(boolean includeInterval) {
+        return getRangeBounds(keys, new Range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY), includeInterval);
+    }
+
+    @Override
+    public double getRangeLowerBound(boolean includeInterval) {
+        Range bounds = getRangeBounds(includeInterval);
+        return bounds == null ? Double.NaN : bounds.getLowerBound();
+    }
+
+    @Override
+    public double getRangeUpperBound(boolean includeInterval) {
+        Range bounds = getRangeBounds(includeInterval);
+        return bounds == null ? Double.NaN : bounds.getUpperBound();
+    }
+
+    // X runs from each series' first point to its last, as it is ascending
+    @Override
+    public Range getDomainBounds(boolean includeInterval) {
+        double lower = Double.POSITIVE_INFINITY, upper = Double.NEGATIVE_INFINITY;
+        for (int series = 0; series < keys.size(); series++) {
+            int count = getItemCount(series);
+            if (count > 0) {
+                lower = Math.min(lower, getXValue(series, 0));
+                upper = Math.max(upper, getXValue(series, count - 1));
+            }
+        }
+        return lower <= upper ? new Range(lower, upper) : null;
+    }
+
+    @Override
+    public double getDomainLowerBound(boolean includeInterval) {
+        Range bounds = getDomainBounds(includeInterval);
+        return bounds == null ? Double.NaN : bounds.getLowerBound();
+    }
+
+    @Override
+    public double getDomainUpperBound(boolean includeInterval) {
+        Range bounds = getDomainBounds(includeInterval);
+        return bounds == null ? Double.NaN : bounds.getUpperBound();
+    }
+
+    // First item whose x is at least value: arithmetic on the index, else a binary search
+    private int firstItemAtOrAfter(int series, double value) {
+        int count = getItemCount(series);
+        DoubleSeries x = xs.get(series);
+        if (x == null) {
+            return (int) Math.max(0, Math.min(count, Math.ceil(value)));
+        }
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x.get(mid) < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // First item whose x is above value
+    private int firstItemAfter(int series, double value) {
+        int count = getItemCount(series);
+        DoubleSeries x = xs.get(series);
+        if (x == null) {
+            return (int) Math.max(0, Math.min(count, Math.floor(value) + 1));
+        }
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x.get(mid) <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,393 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Pairwise correlation and covariance of daily returns across a universe of
+ * symbols. The symbols' bars are aligned on the timestamps they all have,
+ * and each symbol's adjusted close returns are centered and scaled to unit
+ * length, so a correlation is a dot product of two rows. The n x n matrix is
+ * then computed in square tiles of symbols on a fork-join pool. Each task
+ * sweeps one pair of tiles along the time axis in slices that keep both
+ * tiles' rows in cache, two by four rows at a time so every value loaded
+ * from memory is used several times.
+ *
+ * In FLOAT precision the returns, sums and matrix are single precision:
+ * half the memory and bandwidth, with correlations good to about six
+ * digits. Covariances are derived as correlation * sd(i) * sd(j).
+ */
+public class CorrelationMatrix {
+
+    public enum Precision {
+        DOUBLE, FLOAT
+    }
+
+    // Symbols per tile side
+    private static final int TILE = 64;
+    // Time steps per sweep of a tile pair: 2 tiles x 64 rows x 512 doubles = 512 KB
+    private static final int DEPTH = 512;
+    // Symbols per task when preparing the rows
+    private static final int ROWS_PER_TASK = 16;
+
+    private final List<String> symbols;
+    private final long[] dates;
+    private final Precision precision;
+    // Standard deviation of each symbol's returns
+    private final double[] sd;
+    // Row-major n x n correlations in the chosen precision
+    private final double[] matrix;
+    private final float[] matrixF;
+
+    private CorrelationMatrix(List<String> symbols, long[] dates, Precision precision, double[] sd,
+            double[] matrix, float[] matrixF) {
+        this.symbols = symbols;
+        this.dates = dates;
+        this.precision = precision;
+        this.sd = sd;
+        this.matrix = matrix;
+        this.matrixF = matrixF;
+    }
+
+    /**
+     * Compute the matrix
+     * @param symbols Symbol names, one per series
+     * @param series Bars of each symbol, in time order
+     * @param precision Arithmetic and storage precision
+     * @param pool Pool to run on
+     * @return The matrix
+     * @throws IllegalArgumentException If the symbols share fewer than three bars
+     */
+    public static CorrelationMatrix compute(List<String> symbols, List<BarSeries> series, Precision precision,
+            ForkJoinPool pool) {
+        if (symbols.size() != series.size()) {
+            throw new IllegalArgumentException("One bar series is needed per symbol");
+        }
+        long[] dates = commonTimes(series);
+        if (dates.length < 3) {
+            throw new IllegalArgumentException("The symbols share only " + dates.length + " bars");
+        }
+        int n = series.size();
+        int t = dates.length - 1;
+        double[] sd = new double[n];
+        boolean single = precision == Precision.FLOAT;
+        double[] rows = single ? null : new double[n * t];
+        float[] rowsF = single ? new float[n * t] : null;
+
+        // Unit-length centered returns, one row per symbol
+        parallel(pool, 0, n, ROWS_PER_TASK, s -> {
+            double[] r = returns(series.get(s), dates);
+            double mean = 0;
+            for (double v : r) {
+                mean += v;
+            }
+            mean /= t;
+            double ss = 0;
+            for (double v : r) {
+                ss += (v - mean) * (v - mean);
+            }
+            sd[s] = Math.sqrt(ss / (t - 1));
+            double scale = ss > 0 ? 1 / Math.sqrt(ss) : 0;
+            for (int k = 0; k < t; k++) {
+                double z = (r[k] - mean) * scale;
+                if (single) {
+                    rowsF[s * t + k] = (float) z;
+                } else {
+                    rows[s * t + k] = z;
+                }
+            }
+        });
+
+        // One task per tile pair on or above the diagonal
+        int tiles = (n + TILE - 1) / TILE;
+        int[] pairI = new int[tiles * (tiles + 1) / 2];
+        int[] pairJ = new int[pairI.length];
+        int p = 0;
+        for (int i = 0; i < tiles; i++) {
+            for (int j = i; j < tiles; j++) {
+                pairI[p] = i;
+                pairJ[p++] = j;
+            }
+        }
+        double[] matrix = single ? null : new double[n * n];
+        float[] matrixF = single ? new float[n * n] : null;
+        parallel(pool, 0, pairI.length, 1, task -> {
+            int i0 = pairI[task] * TILE, i1 = Math.min(n, i0 + TILE);
+            int j0 = pairJ[task] * TILE, j1 = Math.min(n, j0 + TILE);
+            if (single) {
+                float[] acc = new float[TILE * TILE];
+                for (int k0 = 0; k0 < t; k0 += DEPTH) {
+                    tileF(rowsF, t, i0, i1, j0, j1, k0, Math.min(t, k0 + DEPTH), acc);
+                }
+                for (int i = i0; i < i1; i++) {
+                    for (int j = j0; j < j1; j++) {
+                        float c = sd[i] > 0 && sd[j] > 0 ? acc[(i - i0) * TILE + (j - j0)] : Float.NaN;
+                        matrixF[i * n + j] = c;
+                        matrixF[j * n + i] = c;
+                    }
+                }
+            } else {
+                double[] acc = new double[TILE * TILE];
+                for (int k0 = 0; k0 < t; k0 += DEPTH) {
+                    tile(rows, t, i0, i1, j0, j1, k0, Math.min(t, k0 + DEPTH), acc);
+                }
+                for (int i = i0; i < i1; i++) {
+                    for (int j = j0; j < j1; j++) {
+                        double c = sd[i] > 0 && sd[j] > 0 ? acc[(i - i0) * TILE + (j - j0)] : Double.NaN;
+                        matrix[i * n + j] = c;
+                        matrix[j * n + i] = c;
+                    }
+                }
+            }
+        });
+        return new CorrelationMatrix(new ArrayList<>(symbols), dates, precision, sd, matrix, matrixF);
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    public String getSymbol(int i) {
+        return symbols.get(i);
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    // Number of dates all symbols share; there is one return fewer
+    public int getDateCount() {
+        return dates.length;
+    }
+
+    public long getDate(int k) {
+        return dates[k];
+    }
+
+    // Correlation of two symbols' returns; NaN if either never moves
+    public double correlation(int i, int j) {
+        int at = i * size() + j;
+        return matrix != null ? matrix[at] : matrixF[at];
+    }
+
+    // Sample covariance of two symbols' returns
+    public double covariance(int i, int j) {
+        return correlation(i, j) * sd[i] * sd[j];
+    }
+
+    // Standard deviation of one symbol's returns
+    public double getVolatility(int i) {
+        return sd[i];
+    }
+
+    /**
+     * Write the correlations as a CSV table with the symbols as header row
+     * and first column
+     * @param file Destination
+     */
+    public void writeCsv(Path file) throws IOException {
+        int n = size();
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("Symbol");
+            for (String symbol : symbols) {
+                out.write(',');
+                out.write(symbol);
+            }
+            out.write('\n');
+            for (int i = 0; i < n; i++) {
+                out.write(symbols.get(i));
+                for (int j = 0; j < n; j++) {
+                    out.write(',');
+                    // Shortest text that reads back as the stored value
+                    out.write(matrixF != null ? Float.toString(matrixF[i * n + j]) : Double.toString(matrix[i * n + j]));
+                }
+                out.write('\n');
+            }
+        }
+    }
+
+    // Timestamps present in every series, each assumed sorted
+    static long[] commonTimes(List<BarSeries> series) {
+        BarSeries first = series.get(0);
+        long[] common = new long[first.size()];
+        for (int i = 0; i < common.length; i++) {
+            common[i] = first.time(i);
+        }
+        int count = common.length;
+        for (int s = 1; s < series.size() && count > 0; s++) {
+            BarSeries other = series.get(s);
+            int kept = 0;
+            for (int a = 0, b = 0; a < count && b < other.size(); ) {
+                long ta = common[a], tb = other.time(b);
+                if (ta == tb) {
+                    common[kept++] = ta;
+                    a++;
+                    b++;
+                } else if (ta < tb) {
+                    a++;
+                } else {
+                    b++;
+                }
+            }
+            count = kept;
+        }
+        return Arrays.copyOf(common, count);
+    }
+
+    // Adjusted close-to-close returns of one series between consecutive common dates
+    private static double[] returns(BarSeries bars, long[] dates) {
+        DoubleSeries close = bars.adjClose();
+        double[] r = new double[dates.length - 1];
+        double previous = 0;
+        int b = 0;
+        for (int k = 0; k < dates.length; k++) {
+            while (bars.time(b) != dates[k]) {
+                b++;
+            }
+            double price = close.get(b);
+            if (k > 0) {
+                r[k - 1] = previous != 0 ? price / previous - 1 : 0;
+            }
+            previous = price;
+        }
+        return r;
+    }
+
+    // Add rows [i0, i1) . rows [j0, j1) over time steps [k0, k1) into acc, two by four rows at a time
+    private static void tile(double[] z, int t, int i0, int i1, int j0, int j1, int k0, int k1, double[] acc) {
+        int i = i0;
+        for (; i + 1 < i1; i += 2) {
+            int a0 = i * t, a1 = a0 + t;
+            int j = j0;
+            for (; j + 3 < j1; j += 4) {
+                int b0 = j * t, b1 = b0 + t, b2 = b1 + t, b3 = b2 + t;
+                double s00 = 0, s01 = 0, s02 = 0, s03 = 0, s10 = 0, s11 = 0, s12 = 0, s13 = 0;
+                for (int k = k0; k < k1; k++) {
+                    double x0 = z[a0 + k], x1 = z[a1 + k];
+                    double y0 = z[b0 + k], y1 = z[b1 + k], y2 = z[b2 + k], y3 = z[b3 + k];
+                    s00 += x0 * y0;
+                    s01 += x0 * y1;
+                    s02 += x0 * y2;
+                    s03 += x0 * y3;
+                    s10 += x1 * y0;
+                    s11 += x1 * y1;
+                    s12 += x1 * y2;
+                    s13 += x1 * y3;
+                }
+                int r0 = (i - i0) * TILE + (j - j0), r1 = r0 + TILE;
+                acc[r0] += s00;
+                acc[r0 + 1] += s01;
+                acc[r0 + 2] += s02;
+                acc[r0 + 3] += s03;
+                acc[r1] += s10;
+                acc[r1 + 1] += s11;
+                acc[r1 + 2] += s12;
+                acc[r1 + 3] += s13;
+            }
+            for (; j < j1; j++) {
+                acc[(i - i0) * TILE + (j - j0)] += dot(z, a0, j * t, k0, k1);
+                acc[(i + 1 - i0) * TILE + (j - j0)] += dot(z, a1, j * t, k0, k1);
+            }
+        }
+        for (; i < i1; i++) {
+            for (int j = j0; j < j1; j++) {
+                acc[(i - i0) * TILE + (j - j0)] += dot(z, i * t, j * t, k0, k1);
+            }
+        }
+    }
+
+    private static double dot(double[] z, int a, int b, int k0, int k1) {
+        double s = 0;
+        for (int k = k0; k < k1; k++) {
+            s += z[a + k] * z[b + k];
+        }
+        return s;
+    }
+
+    // Single precision copy of tile
+    private static void tileF(float[] z, int t, int i0, int i1, int j0, int j1, int k0, int k1, float[] acc) {
+        int i = i0;
+        for (; i + 1 < i1; i += 2) {
+            int a0 = i * t, a1 = a0 + t;
+            int j = j0;
+            for (; j + 3 < j1; j += 4) {
+                int b0 = j * t, b1 = b0 + t, b2 = b1 + t, b3 = b2 + t;
+                float s00 = 0, s01 = 0, s02 = 0, s03 = 0, s10 = 0, s11 = 0, s12 = 0, s13 = 0;
+                for (int k = k0; k < k1; k++) {
+                    float x0 = z[a0 + k], x1 = z[a1 + k];
+                    float y0 = z[b0 + k], y1 = z[b1 + k], y2 = z[b2 + k], y3 = z[b3 + k];
+                    s00 += x0 * y0;
+                    s01 += x0 * y1;
+                    s02 += x0 * y2;
+                    s03 += x0 * y3;
+                    s10 += x1 * y0;
+                    s11 += x1 * y1;
+                    s12 += x1 * y2;
+                    s13 += x1 * y3;
+                }
+                int r0 = (i - i0) * TILE + (j - j0), r1 = r0 + TILE;
+                acc[r0] += s00;
+                acc[r0 + 1] += s01;
+                acc[r0 + 2] += s02;
+                acc[r0 + 3] += s03;
+                acc[r1] += s10;
+                acc[r1 + 1] += s11;
+                acc[r1 + 2] += s12;
+                acc[r1 + 3] += s13;
+            }
+            for (; j < j1; j++) {
+                acc[(i - i0) * TILE + (j - j0)] += dotF(z, a0, j * t, k0, k1);
+                acc[(i + 1 - i0) * TILE + (j - j0)] += dotF(z, a1, j * t, k0, k1);
+            }
+        }
+        for (; i < i1; i++) {
+            for (int j = j0; j < j1; j++) {
+                acc[(i - i0) * TILE + (j - j0)] += dotF(z, i * t, j * t, k0, k1);
+            }
+        }
+    }
+
+    private static float dotF(float[] z, int a, int b, int k0, int k1) {
+        float s = 0;
+        for (int k = k0; k < k1; k++) {
+            s += z[a + k] * z[b + k];
+        }
+        return s;
+    }
+
+    // Run body for every index in [from, to), splitting down to grain indexes per task
+    private static void parallel(ForkJoinPool pool, int from, int to, int grain, IntConsumer body) {
+        pool.invoke(new RangeTask(from, to, grain, body));
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+
+        private final int from, to, grain;
+        private final IntConsumer body;
+
+        RangeTask(int from, int to, int grain, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                for (int i = from; i < to; i++) {
+                    body.accept(i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, mid, grain, body), new RangeTask(mid, to, grain, body));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+
+/**
+ * Growable column of primitive doubles.
+ * Used in place of ArrayList&lt;Double&gt; so price and indicator data is stored
+ * unboxed and can be handed to the indicator kernels as a plain array.
+ */
+public class DoubleColumn implements DoubleSeries {
+    
+    private double[] data;
+    private int size;
+    
+    public DoubleColumn() {
+        this(256);
+    }
+    
+    public DoubleColumn(int capacity) {
+        data = new double[Math.max(capacity, 1)];
+    }
+    
+    /**
+     * Wrap an existing array without copying
+     * @param data Backing array
+     * @param size Number of valid values in the array
+     */
+    public DoubleColumn(double[] data, int size) {
+        this.data = data;
+        this.size = size;
+    }
+    
+    public void add(double value) {
+        if (size == data.length) {
+            ensureCapacity(data.length + (data.length >> 1) + 1);
+        }
+        data[size++] = value;
+    }
+    
+    // Append every value of another column in one copy
+    public void addAll(DoubleColumn other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.data, 0, data, size, other.size);
+        size += other.size;
+    }
+    
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            double[] grown = new double[capacity];
+            System.arraycopy(data, 0, grown, 0, size);
+            data = grown;
+        }
+    }
+    
+    @Override
+    public double get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+        }
+        return data[i];
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public void clear() {
+        size = 0;
+    }
+    
+    // Backing array; only the first size() values are valid
+    public double[] array() {
+        return data;
+    }
+    
+    @Override
+    public void copyTo(int from, double[] dst, int off, int len) {
+        System.arraycopy(data, from, dst, off, len);
+    }
+    
+    @Override
+    public void copyFrom(double[] src, int off, int at, int len) {
+        System.arraycopy(src, off, data, at, len);
+    }
+    
+    // Boxed copy for callers that still work with lists
+    @Override
+    public ArrayList<Double> toList() {
+        ArrayList<Double> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(data[i]);
+        }
+        return list;
+    }
+}
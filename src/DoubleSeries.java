@@ -0,0 +1,37 @@
+import java.util.ArrayList;
+
+/**
+ * Read access to a column of doubles, wherever it is stored.
+ * Strategies and indicators only go through this interface, so the same code
+ * runs over on-heap columns and memory-mapped off-heap bar stores.
+ */
+public interface DoubleSeries {
+    
+    int size();
+    
+    double get(int i);
+    
+    /**
+     * Copy len values starting at from into dst[off..]
+     */
+    default void copyTo(int from, double[] dst, int off, int len) {
+        for (int k = 0; k < len; k++) {
+            dst[off + k] = get(from + k);
+        }
+    }
+    
+    /**
+     * Overwrite len values starting at index at with src[off..].
+     * Read-only series throw UnsupportedOperationException.
+     */
+    void copyFrom(double[] src, int off, int at, int len);
+    
+    // Boxed copy for callers that still work with lists
+    default ArrayList<Double> toList() {
+        ArrayList<Double> list = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            list.add(get(i));
+        }
+        return list;
+    }
+}
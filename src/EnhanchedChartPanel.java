@@ -5,25 +5,43 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.event.MouseMotionAdapter;
-import java.awt.geom.Line2D;
+import java.awt.event.MouseWheelEvent;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.function.IntFunction;
 
 import javax.swing.JPanel;
 
 /**
  * Custom chart panel for drawing financial charts.
  * This is a simplified implementation that could be extended with more features.
+ *
+ * The mouse wheel zooms around the cursor, dragging pans and a double click
+ * shows all the data again. The y axis is fitted to the visible prices with
+ * a {@link RangeMinMax} index, and each pixel column is drawn from the
+ * index's min and max of the points under it, so neither a zoom nor a
+ * repaint for the crosshair ever walks the series: a frame costs the same
+ * for ten million points as for a hundred.
  */
-public class EnhancedChartPanel extends JPanel {
+public final class EnhancedChartPanel extends JPanel {
     
-    private ArrayList<Double> prices;
-    private ArrayList<Double> indicators;
-    private ArrayList<String> labels;
+    // Fewest points a zoom can show
+    private static final int MIN_VISIBLE = 10;
+    // Visible points multiply or divide by this per wheel notch
+    private static final double ZOOM_STEP = 1.25;
+    
+    private DoubleSeries prices;
+    private DoubleSeries indicators;
+    // Date label of a point, or null for none
+    private IntFunction<String> labels;
+    private RangeMinMax priceRange;
+    private RangeMinMax indicatorRange;
+    // Visible points are [viewFrom, viewTo)
+    private int viewFrom, viewTo;
     private double minPrice, maxPrice;
     private int mouseX = -1;
+    // Where a drag started, in pixels and as the first visible point
+    private int dragX = -1, dragFrom;
     private String chartTitle = "Stock Price Chart";
     
     // Chart rendering parameters
@@ -40,26 +58,71 @@ public class EnhancedChartPanel extends JPanel {
      * Constructor for the chart panel
      */
     public EnhancedChartPanel() {
-        this.prices = new ArrayList<>();
-        this.indicators = new ArrayList<>();
-        this.labels = new ArrayList<>();
+        setData(new DoubleColumn(), new DoubleColumn(), null);
         
-        // Add mouse listeners for crosshair
-        addMouseMotionListener(new MouseMotionAdapter() {
+        // Mouse listeners for the crosshair, zoom and pan
+        MouseAdapter mouse = new MouseAdapter() {
             @Override
             public void mouseMoved(MouseEvent e) {
                 mouseX = e.getX();
                 repaint();
             }
-        });
-        
-        addMouseListener(new MouseAdapter() {
+            
             @Override
             public void mouseExited(MouseEvent e) {
                 mouseX = -1;
                 repaint();
             }
-        });
+            
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragX = e.getX();
+                dragFrom = viewFrom;
+            }
+            
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragX = -1;
+            }
+            
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                mouseX = e.getX();
+                int chartWidth = getWidth() - 2 * padding;
+                if (dragX >= 0 && chartWidth > 0) {
+                    int span = viewTo - viewFrom;
+                    int shift = (int) Math.round((double) (dragX - e.getX()) * (span - 1) / chartWidth);
+                    int from = Math.max(0, Math.min(dragFrom + shift, prices.size() - span));
+                    setVisibleRange(from, from + span);
+                }
+            }
+            
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    setVisibleRange(0, prices.size());
+                }
+            }
+            
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (prices.size() < 2) {
+                    return;
+                }
+                // Keep the point under the cursor where it is
+                int anchor = indexAt(e.getX());
+                int span = viewTo - viewFrom;
+                double factor = Math.pow(ZOOM_STEP, e.getPreciseWheelRotation());
+                int newSpan = (int) Math.max(Math.min(MIN_VISIBLE, prices.size()),
+                        Math.min(prices.size(), Math.round(span * factor)));
+                int from = anchor - (int) Math.round((double) (anchor - viewFrom) * newSpan / span);
+                from = Math.max(0, Math.min(from, prices.size() - newSpan));
+                setVisibleRange(from, from + newSpan);
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
     }
     
     /**
@@ -69,17 +132,47 @@ public class EnhancedChartPanel extends JPanel {
      * @param labels Date labels
      */
     public void setData(ArrayList<Double> prices, ArrayList<Double> indicators, ArrayList<String> labels) {
+        setData(column(prices), column(indicators), i -> i < labels.size() ? labels.get(i) : null);
+    }
+    
+    /**
+     * Set data for the chart without copying it, and show all of it
+     * @param prices Price data
+     * @param indicators Indicator data, plotted on the price scale; may be shorter or empty
+     * @param labels Date label of each point, or null for none; it may return null
+     */
+    public void setData(DoubleSeries prices, DoubleSeries indicators, IntFunction<String> labels) {
         this.prices = prices;
         this.indicators = indicators;
         this.labels = labels;
         
-        // Calculate min and max values for scaling
-        minPrice = Double.MAX_VALUE;
-        maxPrice = Double.MIN_VALUE;
+        // Build the min/max indexes once; every zoom and pan then reads them
+        priceRange = new RangeMinMax(prices);
+        priceRange.update();
+        indicatorRange = new RangeMinMax(indicators);
+        indicatorRange.update();
         
-        for (Double price : prices) {
-            minPrice = Math.min(minPrice, price);
-            maxPrice = Math.max(maxPrice, price);
+        setVisibleRange(0, prices.size());
+    }
+    
+    /**
+     * Show a window of the data and fit the y axis to it
+     * @param from First visible point
+     * @param to End of the visible points, exclusive
+     */
+    public void setVisibleRange(int from, int to) {
+        viewFrom = Math.max(0, Math.min(from, prices.size()));
+        viewTo = Math.max(viewFrom, Math.min(to, prices.size()));
+        
+        // Min and max of the visible prices, in constant time
+        minPrice = priceRange.min(viewFrom, viewTo);
+        maxPrice = priceRange.max(viewFrom, viewTo);
+        if (Double.isNaN(minPrice)) {
+            minPrice = 0;
+            maxPrice = 1;
+        } else if (minPrice == maxPrice) {
+            minPrice -= 1;
+            maxPrice += 1;
         }
         
         // Add some padding to min/max
@@ -90,6 +183,14 @@ public class EnhancedChartPanel extends JPanel {
         repaint();
     }
     
+    public int getVisibleFrom() {
+        return viewFrom;
+    }
+    
+    public int getVisibleTo() {
+        return viewTo;
+    }
+    
     /**
      * Set the chart title
      * @param title The chart title
@@ -99,6 +200,75 @@ public class EnhancedChartPanel extends JPanel {
         repaint();
     }
     
+    // Unbox a list once, so painting reads primitives
+    private static DoubleColumn column(ArrayList<Double> values) {
+        DoubleColumn column = new DoubleColumn(values.size());
+        for (Double value : values) {
+            column.add(value);
+        }
+        return column;
+    }
+    
+    private String label(int index) {
+        return labels == null ? null : labels.apply(index);
+    }
+    
+    // Point nearest to a pixel column; arithmetic, not a search
+    private int indexAt(int x) {
+        int chartWidth = getWidth() - 2 * padding;
+        int span = viewTo - viewFrom;
+        if (chartWidth <= 0 || span <= 1) {
+            return viewFrom;
+        }
+        int offset = (int) Math.round((double) (x - padding) * (span - 1) / chartWidth);
+        return viewFrom + Math.max(0, Math.min(offset, span - 1));
+    }
+    
+    // Pixel column of a point
+    private int xOf(int index, int chartWidth) {
+        int span = viewTo - viewFrom;
+        return span <= 1 ? padding : padding + (int) ((long) chartWidth * (index - viewFrom) / (span - 1));
+    }
+    
+    // Pixel row of a value
+    private int yOf(double value, int height, int chartHeight) {
+        return height - padding - (int) (chartHeight * (value - minPrice) / (maxPrice - minPrice));
+    }
+    
+    /**
+     * Draw the visible part of a series. With fewer points than pixels it is
+     * a line through the points; otherwise each pixel column is a vertical
+     * stroke from the min to the max of its points, starting from the last
+     * point of the column before so the strokes join up.
+     */
+    private void drawSeries(Graphics2D g2, DoubleSeries series, RangeMinMax range,
+                            int height, int chartWidth, int chartHeight) {
+        int end = Math.min(viewTo, series.size());
+        int span = viewTo - viewFrom;
+        if (span - 1 <= chartWidth) {
+            for (int i = viewFrom; i < end - 1; i++) {
+                double v1 = series.get(i), v2 = series.get(i + 1);
+                if (!Double.isNaN(v1) && !Double.isNaN(v2)) {
+                    g2.drawLine(xOf(i, chartWidth), yOf(v1, height, chartHeight),
+                            xOf(i + 1, chartWidth), yOf(v2, height, chartHeight));
+                }
+            }
+            return;
+        }
+        for (int px = 0; px < chartWidth; px++) {
+            int from = viewFrom + (int) ((long) span * px / chartWidth);
+            int to = Math.min(end, viewFrom + (int) ((long) span * (px + 1) / chartWidth));
+            if (from >= to) {
+                break;
+            }
+            int first = Math.max(viewFrom, from - 1);
+            double lo = range.min(first, to), hi = range.max(first, to);
+            if (!Double.isNaN(lo)) {
+                g2.drawLine(padding + px, yOf(lo, height, chartHeight), padding + px, yOf(hi, height, chartHeight));
+            }
+        }
+    }
+    
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
@@ -114,7 +284,7 @@ public class EnhancedChartPanel extends JPanel {
         g2.fillRect(0, 0, width, height);
         
         // If no data, show message and return
-        if (prices.isEmpty()) {
+        if (viewTo == viewFrom) {
             g2.setColor(Color.BLACK);
             g2.setFont(new Font("Arial", Font.PLAIN, 18));
             String message = "No data available";
@@ -126,6 +296,7 @@ public class EnhancedChartPanel extends JPanel {
         // Calculate chart dimensions
         int chartWidth = width - 2 * padding;
         int chartHeight = height - 2 * padding;
+        int span = viewTo - viewFrom;
         
         // Draw chart title
         g2.setColor(Color.BLACK);
@@ -153,21 +324,21 @@ public class EnhancedChartPanel extends JPanel {
         }
         
         // Draw X-axis
-        int numLabels = Math.min(10, labels.size());
-        int step = labels.size() / numLabels;
+        int numLabels = Math.min(10, span);
+        int step = span / numLabels;
         if (step == 0) step = 1;
         
-        for (int i = 0; i < labels.size(); i += step) {
-            int x = padding + (int) (chartWidth * i / (prices.size() - 1));
+        for (int i = viewFrom; i < viewTo; i += step) {
+            int x = xOf(i, chartWidth);
             
             // Draw grid line
             g2.setColor(gridColor);
             g2.drawLine(x, padding, x, height - padding);
             
             // Draw label (only if we have them)
-            if (!labels.isEmpty()) {
+            String label = label(i);
+            if (label != null) {
                 g2.setColor(Color.BLACK);
-                String label = labels.get(i);
                 int labelWidth = g2.getFontMetrics().stringWidth(label);
                 g2.drawString(label, x - labelWidth / 2, height - padding + 20);
             }
@@ -176,28 +347,12 @@ public class EnhancedChartPanel extends JPanel {
         // Draw price line
         g2.setColor(priceLineColor);
         g2.setStroke(new java.awt.BasicStroke(2f));
-        
-        for (int i = 0; i < prices.size() - 1; i++) {
-            int x1 = padding + (int) (chartWidth * i / (prices.size() - 1));
-            int y1 = height - padding - (int) (chartHeight * (prices.get(i) - minPrice) / (maxPrice - minPrice));
-            int x2 = padding + (int) (chartWidth * (i + 1) / (prices.size() - 1));
-            int y2 = height - padding - (int) (chartHeight * (prices.get(i + 1) - minPrice) / (maxPrice - minPrice));
-            
-            g2.draw(new Line2D.Double(x1, y1, x2, y2));
-        }
+        drawSeries(g2, prices, priceRange, height, chartWidth, chartHeight);
         
         // Draw indicator line if available
-        if (!indicators.isEmpty()) {
+        if (indicators.size() > 0) {
             g2.setColor(indicatorLineColor);
-            
-            for (int i = 0; i < Math.min(indicators.size() - 1, prices.size() - 1); i++) {
-                int x1 = padding + (int) (chartWidth * i / (prices.size() - 1));
-                int y1 = height - padding - (int) (chartHeight * (indicators.get(i) - minPrice) / (maxPrice - minPrice));
-                int x2 = padding + (int) (chartWidth * (i + 1) / (prices.size() - 1));
-                int y2 = height - padding - (int) (chartHeight * (indicators.get(i + 1) - minPrice) / (maxPrice - minPrice));
-                
-                g2.draw(new Line2D.Double(x1, y1, x2, y2));
-            }
+            drawSeries(g2, indicators, indicatorRange, height, chartWidth, chartHeight);
         }
         
         // Draw crosshair if mouse is over chart
@@ -206,32 +361,32 @@ public class EnhancedChartPanel extends JPanel {
             g2.drawLine(mouseX, padding, mouseX, height - padding);
             
             // Find closest data point and highlight it
-            int dataIndex = (int) ((mouseX - padding) * (prices.size() - 1) / chartWidth);
-            if (dataIndex >= 0 && dataIndex < prices.size()) {
-                int x = padding + (int) (chartWidth * dataIndex / (prices.size() - 1));
-                int y = height - padding - (int) (chartHeight * (prices.get(dataIndex) - minPrice) / (maxPrice - minPrice));
-                
-                // Draw point
-                g2.setColor(pointColor);
-                g2.fill(new Rectangle2D.Double(x - pointWidth / 2, y - pointWidth / 2, pointWidth, pointWidth));
-                
-                // Draw tooltip
-                String tooltip = String.format("Price: %.2f", prices.get(dataIndex));
-                if (!labels.isEmpty() && dataIndex < labels.size()) {
-                    tooltip = labels.get(dataIndex) + " - " + tooltip;
-                }
-                
-                int tooltipWidth = g2.getFontMetrics().stringWidth(tooltip) + 10;
-                int tooltipHeight = 20;
-                int tooltipX = Math.min(x + 10, width - tooltipWidth - 10);
-                int tooltipY = Math.max(y - 30, tooltipHeight + 10);
-                
-                g2.setColor(new Color(255, 255, 225));
-                g2.fillRect(tooltipX, tooltipY, tooltipWidth, tooltipHeight);
-                g2.setColor(Color.BLACK);
-                g2.drawRect(tooltipX, tooltipY, tooltipWidth, tooltipHeight);
-                g2.drawString(tooltip, tooltipX + 5, tooltipY + 15);
+            int dataIndex = indexAt(mouseX);
+            double price = prices.get(dataIndex);
+            int x = xOf(dataIndex, chartWidth);
+            int y = yOf(price, height, chartHeight);
+            
+            // Draw point
+            g2.setColor(pointColor);
+            g2.fill(new Rectangle2D.Double(x - pointWidth / 2, y - pointWidth / 2, pointWidth, pointWidth));
+            
+            // Draw tooltip
+            String tooltip = String.format("Price: %.2f", price);
+            String label = label(dataIndex);
+            if (label != null) {
+                tooltip = label + " - " + tooltip;
             }
+            
+            int tooltipWidth = g2.getFontMetrics().stringWidth(tooltip) + 10;
+            int tooltipHeight = 20;
+            int tooltipX = Math.min(x + 10, width - tooltipWidth - 10);
+            int tooltipY = Math.max(y - 30, tooltipHeight + 10);
+            
+            g2.setColor(new Color(255, 255, 225));
+            g2.fillRect(tooltipX, tooltipY, tooltipWidth, tooltipHeight);
+            g2.setColor(Color.BLACK);
+            g2.drawRect(tooltipX, tooltipY, tooltipWidth, tooltipHeight);
+            g2.drawString(tooltip, tooltipX + 5, tooltipY + 15);
         }
         
         // Draw legend
@@ -243,7 +398,7 @@ public class EnhancedChartPanel extends JPanel {
         g2.setColor(Color.BLACK);
         g2.drawString("Price", legendX + 25, legendY + 10);
         
-        if (!indicators.isEmpty()) {
+        if (indicators.size() > 0) {
             g2.setColor(indicatorLineColor);
             g2.fillRect(legendX, legendY + 20, 20, 10);
             g2.setColor(Color.BLACK);
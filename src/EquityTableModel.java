@@ -0,0 +1,59 @@
+/**
+ * One row per bar of a strategy run: the bar's date, the net worth, and its
+ * change from the previous bar and from the starting balance. Reads the
+ * run's equity curve and the bars' timestamps in place.
+ */
+public class EquityTableModel extends ColumnTableModel {
+
+    private static final int DATE = 0, WORTH = 1, CHANGE = 2, RETURN = 3;
+
+    private BarSeries bars;
+    private StrategyResult result;
+    // Bars before the first equity value; runs that start late record fewer values than bars
+    private int offset;
+
+    public EquityTableModel() {
+        super(new String[]{"Date", "Net Worth", "Change %", "Return %"},
+                new String[]{"time", "worth", "change", "return"});
+    }
+
+    /**
+     * Show a run
+     * @param bars The bars the run was made on
+     * @param result The run; null to empty the table
+     */
+    public void setResult(BarSeries bars, StrategyResult result) {
+        this.bars = bars;
+        this.result = result;
+        offset = result == null ? 0 : Math.max(0, bars.size() - result.getEquitySize());
+        refresh();
+    }
+
+    @Override
+    protected int rows() {
+        return result == null ? 0 : result.getEquitySize();
+    }
+
+    @Override
+    protected double value(int row, int column) {
+        switch (column) {
+            case DATE:
+                return row + offset < bars.size() ? bars.time(row + offset) : Double.NaN;
+            case WORTH:
+                return result.getEquity(row);
+            case CHANGE:
+                return row == 0 ? Double.NaN : (result.getEquity(row) / result.getEquity(row - 1) - 1) * 100;
+            default:
+                return (result.getEquity(row) / result.getInitialBalance() - 1) * 100;
+        }
+    }
+
+    @Override
+    protected Object cell(int row, int column) {
+        if (column == DATE) {
+            return row + offset < bars.size() ? formatTime(bars.time(row + offset)) : "";
+        }
+        double value = value(row, column);
+        return Double.isNaN(value) ? "" : formatMoney(value);
+    }
+}
@@ -0,0 +1,312 @@
+import java.util.EnumSet;
+
+/**
+ * Computes a requested set of indicators in a single pass over the bar columns.
+ * State that several indicators need (true range, running sums, squared deviations,
+ * highest high / lowest low) is kept once and shared. Results are written into
+ * primitive arrays that are allocated up front and reused between runs.
+ *
+ * SMA, EMA, MACD and Bollinger bands use the close price. Like
+ * {@link MainSystem#smoothy}, windowed values use whatever data is available
+ * until the window is full.
+ */
+public class FusedIndicators {
+
+    public enum Indicator {
+        SMA, EMA, MACD, BOLLINGER, ATR, STOCHASTIC
+    }
+
+    public enum Output {
+        SMA, EMA, MACD, MACD_SIGNAL, MACD_HIST, BB_MIDDLE, BB_UPPER, BB_LOWER, ATR, STOCH_K, STOCH_D
+    }
+
+    private final EnumSet<Indicator> requested;
+    private final double[][] outputs = new double[Output.values().length][];
+    private int capacity;
+    private int size;
+
+    // Parameters
+    private int smaPeriod = 14;
+    private int emaPeriod = 14;
+    private int macdFast = 12, macdSlow = 26, macdSignal = 9;
+    private int bollingerPeriod = 20;
+    private double bollingerWidth = 2.0;
+    private int atrPeriod = 14;
+    private int stochPeriod = 14, stochSmooth = 3;
+
+    /**
+     * Create an indicator set
+     * @param requested Indicators to compute
+     * @param capacity Number of bars to preallocate outputs for
+     */
+    public FusedIndicators(EnumSet<Indicator> requested, int capacity) {
+        this.requested = EnumSet.copyOf(requested);
+        allocate(capacity);
+    }
+
+    public void setSmaPeriod(int period) {
+        this.smaPeriod = checkPeriod("SMA", period);
+    }
+
+    public void setEmaPeriod(int period) {
+        this.emaPeriod = checkPeriod("EMA", period);
+    }
+
+    public void setMacd(int fast, int slow, int signal) {
+        checkPeriod("MACD fast", fast);
+        checkPeriod("MACD signal", signal);
+        if (fast >= slow) {
+            throw new IllegalArgumentException("MACD fast period must be below the slow period");
+        }
+        this.macdFast = fast;
+        this.macdSlow = slow;
+        this.macdSignal = signal;
+    }
+
+    public void setBollinger(int period, double width) {
+        checkPeriod("Bollinger", period);
+        if (!(width >= 0)) {
+            throw new IllegalArgumentException("Bollinger width must be 0 or more");
+        }
+        this.bollingerPeriod = period;
+        this.bollingerWidth = width;
+    }
+
+    public void setAtrPeriod(int period) {
+        this.atrPeriod = checkPeriod("ATR", period);
+    }
+
+    public void setStochastic(int period, int smooth) {
+        checkPeriod("Stochastic", period);
+        checkPeriod("Stochastic smoothing", smooth);
+        this.stochPeriod = period;
+        this.stochSmooth = smooth;
+    }
+
+    private static int checkPeriod(String name, int period) {
+        if (period < 1) {
+            throw new IllegalArgumentException(name + " period must be at least 1");
+        }
+        return period;
+    }
+
+    // Grow the output arrays if needed; existing arrays are kept when large enough
+    public void ensureCapacity(int n) {
+        allocate(n);
+    }
+
+    // Private, so the constructor can size the arrays without calling an overridable method
+    private void allocate(int n) {
+        if (n <= capacity && capacity > 0) {
+            return;
+        }
+        capacity = Math.max(n, 1);
+        for (Output o : Output.values()) {
+            if (requested.contains(owner(o))) {
+                outputs[o.ordinal()] = new double[capacity];
+            }
+        }
+    }
+
+    public boolean contains(Indicator indicator) {
+        return requested.contains(indicator);
+    }
+
+    /**
+     * Output column for one indicator line. Only the first size() values are valid.
+     * @param output The line to fetch
+     * @return The backing array, or null if its indicator was not requested
+     */
+    public double[] output(Output output) {
+        return outputs[output.ordinal()];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Compute every requested indicator in one pass
+     * @param high High prices
+     * @param low Low prices
+     * @param close Close prices
+     * @param n Number of bars
+     */
+    public void compute(double[] high, double[] low, double[] close, int n) {
+        compute(new DoubleColumn(high, n), new DoubleColumn(low, n), new DoubleColumn(close, n));
+    }
+
+    /**
+     * Compute every requested indicator in one pass over any bar columns,
+     * including off-heap ones
+     * @param high High prices
+     * @param low Low prices
+     * @param close Close prices
+     */
+    public void compute(DoubleSeries high, DoubleSeries low, DoubleSeries close) {
+        int n = close.size();
+        ensureCapacity(n);
+        size = n;
+        if (n == 0) {
+            return;
+        }
+
+        boolean sma = requested.contains(Indicator.SMA);
+        boolean ema = requested.contains(Indicator.EMA);
+        boolean macd = requested.contains(Indicator.MACD);
+        boolean boll = requested.contains(Indicator.BOLLINGER);
+        boolean atr = requested.contains(Indicator.ATR);
+        boolean stoch = requested.contains(Indicator.STOCHASTIC);
+
+        double[] smaOut = outputs[Output.SMA.ordinal()];
+        double[] emaOut = outputs[Output.EMA.ordinal()];
+        double[] macdOut = outputs[Output.MACD.ordinal()];
+        double[] signalOut = outputs[Output.MACD_SIGNAL.ordinal()];
+        double[] histOut = outputs[Output.MACD_HIST.ordinal()];
+        double[] midOut = outputs[Output.BB_MIDDLE.ordinal()];
+        double[] upperOut = outputs[Output.BB_UPPER.ordinal()];
+        double[] lowerOut = outputs[Output.BB_LOWER.ordinal()];
+        double[] atrOut = outputs[Output.ATR.ordinal()];
+        double[] kOut = outputs[Output.STOCH_K.ordinal()];
+        double[] dOut = outputs[Output.STOCH_D.ordinal()];
+
+        double smaSum = 0;
+        // Windowed mean and sum of squared deviations from it (Welford), which
+        // stay accurate on high prices where sum(c^2) - n * mean^2 cancels
+        double bollMean = 0, bollM2 = 0;
+
+        double emaAlpha = 2.0 / (emaPeriod + 1);
+        double fastAlpha = 2.0 / (macdFast + 1);
+        double slowAlpha = 2.0 / (macdSlow + 1);
+        double signalAlpha = 2.0 / (macdSignal + 1);
+        double emaVal = close.get(0), fastVal = close.get(0), slowVal = close.get(0), signalVal = 0;
+
+        double atrVal = 0;
+
+        // Monotonic deques of indices for the rolling highest high and lowest low
+        int[] maxQ = stoch ? new int[stochPeriod] : null;
+        int[] minQ = stoch ? new int[stochPeriod] : null;
+        int maxHead = 0, maxLen = 0, minHead = 0, minLen = 0;
+        double kSum = 0;
+
+        for (int i = 0; i < n; i++) {
+            double c = close.get(i);
+
+            if (sma) {
+                smaSum += c;
+                if (i >= smaPeriod) {
+                    smaSum -= close.get(i - smaPeriod);
+                }
+                smaOut[i] = smaSum / Math.min(i + 1, smaPeriod);
+            }
+
+            if (boll) {
+                if (i < bollingerPeriod) {
+                    double delta = c - bollMean;
+                    bollMean += delta / (i + 1);
+                    bollM2 += delta * (c - bollMean);
+                } else {
+                    // Replace the oldest close with this one in a single step
+                    double old = close.get(i - bollingerPeriod);
+                    double prevMean = bollMean;
+                    bollMean += (c - old) / bollingerPeriod;
+                    bollM2 += (c - old) * (c - bollMean + old - prevMean);
+                }
+                int count = Math.min(i + 1, bollingerPeriod);
+                // Rounding can leave a flat window a hair below zero
+                double std = Math.sqrt(Math.max(0, bollM2 / count));
+                midOut[i] = bollMean;
+                upperOut[i] = bollMean + bollingerWidth * std;
+                lowerOut[i] = bollMean - bollingerWidth * std;
+            }
+
+            if (ema) {
+                if (i > 0) {
+                    emaVal += emaAlpha * (c - emaVal);
+                }
+                emaOut[i] = emaVal;
+            }
+
+            if (macd) {
+                if (i > 0) {
+                    fastVal += fastAlpha * (c - fastVal);
+                    slowVal += slowAlpha * (c - slowVal);
+                }
+                double line = fastVal - slowVal;
+                signalVal = i == 0 ? line : signalVal + signalAlpha * (line - signalVal);
+                macdOut[i] = line;
+                signalOut[i] = signalVal;
+                histOut[i] = line - signalVal;
+            }
+
+            if (atr) {
+                // True range, using the previous close once there is one
+                double tr = high.get(i) - low.get(i);
+                if (i > 0) {
+                    double prev = close.get(i - 1);
+                    tr = Math.max(tr, Math.max(Math.abs(high.get(i) - prev), Math.abs(low.get(i) - prev)));
+                }
+                // Simple mean until the period fills, Wilder smoothing after
+                if (i < atrPeriod) {
+                    atrVal += (tr - atrVal) / (i + 1);
+                } else {
+                    atrVal = (atrVal * (atrPeriod - 1) + tr) / atrPeriod;
+                }
+                atrOut[i] = atrVal;
+            }
+
+            if (stoch) {
+                // Drop indices that left the window, then keep each deque monotonic
+                if (maxLen > 0 && maxQ[maxHead] <= i - stochPeriod) {
+                    maxHead = (maxHead + 1) % stochPeriod;
+                    maxLen--;
+                }
+                while (maxLen > 0 && high.get(maxQ[(maxHead + maxLen - 1) % stochPeriod]) <= high.get(i)) {
+                    maxLen--;
+                }
+                maxQ[(maxHead + maxLen++) % stochPeriod] = i;
+
+                if (minLen > 0 && minQ[minHead] <= i - stochPeriod) {
+                    minHead = (minHead + 1) % stochPeriod;
+                    minLen--;
+                }
+                while (minLen > 0 && low.get(minQ[(minHead + minLen - 1) % stochPeriod]) >= low.get(i)) {
+                    minLen--;
+                }
+                minQ[(minHead + minLen++) % stochPeriod] = i;
+
+                double hh = high.get(maxQ[maxHead]);
+                double ll = low.get(minQ[minHead]);
+                double k = hh == ll ? 50.0 : 100.0 * (c - ll) / (hh - ll);
+                kOut[i] = k;
+
+                kSum += k;
+                if (i >= stochSmooth) {
+                    kSum -= kOut[i - stochSmooth];
+                }
+                dOut[i] = kSum / Math.min(i + 1, stochSmooth);
+            }
+        }
+    }
+
+    private static Indicator owner(Output output) {
+        switch (output) {
+            case SMA:
+                return Indicator.SMA;
+            case EMA:
+                return Indicator.EMA;
+            case MACD:
+            case MACD_SIGNAL:
+            case MACD_HIST:
+                return Indicator.MACD;
+            case BB_MIDDLE:
+            case BB_UPPER:
+            case BB_LOWER:
+                return Indicator.BOLLINGER;
+            case ATR:
+                return Indicator.ATR;
+            default:
+                return Indicator.STOCHASTIC;
+        }
+    }
+}
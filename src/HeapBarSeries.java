@@ -0,0 +1,95 @@
+/**
+ * Bar history held on the Java heap in primitive columns.
+ */
+public class HeapBarSeries implements BarSeries, BarSink {
+    
+    private long[] time = new long[256];
+    private int size;
+    private final DoubleColumn open = new DoubleColumn();
+    private final DoubleColumn high = new DoubleColumn();
+    private final DoubleColumn low = new DoubleColumn();
+    private final DoubleColumn close = new DoubleColumn();
+    private final DoubleColumn adjClose = new DoubleColumn();
+    private final DoubleColumn volume = new DoubleColumn();
+    
+    @Override
+    public void add(long t, double o, double h, double l, double c, double adj, double vol) {
+        if (size == time.length) {
+            long[] grown = new long[time.length + (time.length >> 1) + 1];
+            System.arraycopy(time, 0, grown, 0, size);
+            time = grown;
+        }
+        time[size++] = t;
+        open.add(o);
+        high.add(h);
+        low.add(l);
+        close.add(c);
+        adjClose.add(adj);
+        volume.add(vol);
+    }
+    
+    // Append another series' bars after this one's, column by column
+    public void addAll(HeapBarSeries other) {
+        if (size + other.size > time.length) {
+            long[] grown = new long[size + other.size];
+            System.arraycopy(time, 0, grown, 0, size);
+            time = grown;
+        }
+        System.arraycopy(other.time, 0, time, size, other.size);
+        size += other.size;
+        open.addAll(other.open);
+        high.addAll(other.high);
+        low.addAll(other.low);
+        close.addAll(other.close);
+        adjClose.addAll(other.adjClose);
+        volume.addAll(other.volume);
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public long time(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+        }
+        return time[i];
+    }
+    
+    @Override
+    public DoubleColumn open() {
+        return open;
+    }
+    
+    @Override
+    public DoubleColumn high() {
+        return high;
+    }
+    
+    @Override
+    public DoubleColumn low() {
+        return low;
+    }
+    
+    @Override
+    public DoubleColumn close() {
+        return close;
+    }
+    
+    @Override
+    public DoubleColumn adjClose() {
+        return adjClose;
+    }
+    
+    @Override
+    public DoubleColumn volume() {
+        return volume;
+    }
+    
+    @Override
+    public DoubleSeries newColumn(int size) {
+        return new DoubleColumn(new double[size], size);
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The MA and RSI of StockSystem, updated one price at a time.
+ * The last period prices, gains and losses sit in small rings, and each
+ * window is summed in the same order as the batch kernels, so the values
+ * are bit for bit the ones computeRSI and MainSystem.smoothy produce.
+ * As a {@link ReplayListener} it follows the open price of a replay.
+ */
+public class IncrementalIndicators implements ReplayListener {
+
+    private final int period;
+    private final double[] prices, gains, losses;
+    private int count;
+    private double lastPrice;
+    // Current and two previous RSI values
+    private double rsi, rsi1, rsi2;
+    private double ma;
+
+    public IncrementalIndicators(int period) {
+        this.period = period;
+        prices = new double[period];
+        gains = new double[period];
+        losses = new double[period];
+    }
+
+    public void reset() {
+        count = 0;
+        rsi = rsi1 = rsi2 = ma = 0;
+    }
+
+    /**
+     * Add the next price
+     * @param price Next value of the series
+     */
+    public void update(double price) {
+        int slot = count % period;
+        double change = count == 0 ? 0 : price - lastPrice;
+        prices[slot] = price;
+        gains[slot] = change >= 0 ? change : 0.0;
+        losses[slot] = change >= 0 ? 0.0 : Math.abs(change);
+        lastPrice = price;
+        count++;
+
+        // Moving average: oldest to newest over the last period prices
+        int n = Math.min(count, period);
+        double sum = 0;
+        for (int k = count - n; k < count; k++) {
+            sum += prices[k % period];
+        }
+        ma = sum / n;
+
+        // RSI: gain and loss sums newest to oldest
+        double sumUp = 0, sumDown = 0;
+        for (int k = count - 1; k >= count - n; k--) {
+            sumUp += gains[k % period];
+            sumDown += losses[k % period];
+        }
+        double rs = sumDown == 0 ? 0 : sumUp / sumDown;
+        rsi2 = rsi1;
+        rsi1 = rsi;
+        rsi = rs == 0 ? 100.0 : (100 - (100 / (1 + rs)));
+    }
+
+    @Override
+    public void onBar(int index, long time, double open, double high, double low, double close, double volume) {
+        update(open);
+    }
+
+    /**
+     * Save the state, so updates can continue after readFrom
+     * @param out Destination
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(period);
+        out.writeInt(count);
+        out.writeDouble(lastPrice);
+        out.writeDouble(rsi);
+        out.writeDouble(rsi1);
+        out.writeDouble(rsi2);
+        out.writeDouble(ma);
+        // Only the filled part of the rings, oldest first
+        int n = Math.min(count, period);
+        for (int k = count - n; k < count; k++) {
+            out.writeDouble(prices[k % period]);
+            out.writeDouble(gains[k % period]);
+            out.writeDouble(losses[k % period]);
+        }
+    }
+
+    /**
+     * Restore a state written by writeTo
+     * @param in Source
+     * @return The indicators, as they were when written
+     * @throws IOException If the data is truncated or invalid
+     */
+    public static IncrementalIndicators readFrom(DataInput in) throws IOException {
+        int period = in.readInt();
+        int count = in.readInt();
+        if (period < 1 || count < 0) {
+            throw new IOException("Bad indicator state: period " + period + ", count " + count);
+        }
+        IncrementalIndicators indicators = new IncrementalIndicators(period);
+        indicators.count = count;
+        indicators.lastPrice = in.readDouble();
+        indicators.rsi = in.readDouble();
+        indicators.rsi1 = in.readDouble();
+        indicators.rsi2 = in.readDouble();
+        indicators.ma = in.readDouble();
+        int n = Math.min(count, period);
+        for (int k = count - n; k < count; k++) {
+            indicators.prices[k % period] = in.readDouble();
+            indicators.gains[k % period] = in.readDouble();
+            indicators.losses[k % period] = in.readDouble();
+        }
+        return indicators;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double getMA() {
+        return ma;
+    }
+
+    public double getRSI() {
+        return rsi;
+    }
+
+    // RSI back bars ago, 0 to 2
+    public double getRSI(int back) {
+        return back == 0 ? rsi : back == 1 ? rsi1 : rsi2;
+    }
+}
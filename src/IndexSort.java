@@ -0,0 +1,87 @@
+/**
+ * Sorts row numbers by a primitive key per row, without boxing: the
+ * permutations behind the screener's field indexes and the tables' sorted
+ * views.
+ */
+public final class IndexSort {
+
+    // Runs shorter than this are insertion sorted
+    private static final int INSERTION = 24;
+
+    private IndexSort() {
+    }
+
+    /**
+     * Stable sort of row numbers by ascending key; NaN keys go last
+     * @param rows Row numbers to reorder in place
+     * @param keys Key of each row, indexed by row number
+     */
+    public static void byKey(int[] rows, double[] keys) {
+        if (rows.length > 1) {
+            mergeSort(rows, rows.clone(), keys, 0, rows.length);
+        }
+    }
+
+    /**
+     * Stable sort of row numbers by descending key; NaN keys still go last
+     * @param rows Row numbers to reorder in place
+     * @param keys Key of each row, indexed by row number
+     */
+    public static void byKeyDescending(int[] rows, double[] keys) {
+        byKey(rows, keys);
+        int end = rows.length;
+        while (end > 0 && Double.isNaN(keys[rows[end - 1]])) {
+            end--;
+        }
+        // Reverse each run of equal keys first, so reversing the whole keeps them stable
+        for (int i = 0; i < end; ) {
+            int j = i + 1;
+            while (j < end && keys[rows[j]] == keys[rows[i]]) {
+                j++;
+            }
+            reverse(rows, i, j);
+            i = j;
+        }
+        reverse(rows, 0, end);
+    }
+
+    private static void reverse(int[] rows, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int t = rows[i];
+            rows[i] = rows[j];
+            rows[j] = t;
+        }
+    }
+
+    // Sort rows[from, to), using scratch, which holds the same values on entry
+    private static void mergeSort(int[] rows, int[] scratch, double[] keys, int from, int to) {
+        if (to - from <= INSERTION) {
+            for (int i = from + 1; i < to; i++) {
+                int row = rows[i];
+                double key = keys[row];
+                int j = i - 1;
+                while (j >= from && Double.compare(keys[rows[j]], key) > 0) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        // Sort each half of scratch using rows as its scratch, then merge back into rows
+        mergeSort(scratch, rows, keys, from, mid);
+        mergeSort(scratch, rows, keys, mid, to);
+        if (Double.compare(keys[scratch[mid - 1]], keys[scratch[mid]]) <= 0) {
+            System.arraycopy(scratch, from, rows, from, to - from);
+            return;
+        }
+        for (int i = from, a = from, b = mid; i < to; i++) {
+            if (b >= to || a < mid && Double.compare(keys[scratch[a]], keys[scratch[b]]) <= 0) {
+                rows[i] = scratch[a++];
+            } else {
+                rows[i] = scratch[b++];
+            }
+        }
+    }
+}
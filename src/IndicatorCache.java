@@ -0,0 +1,247 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Memoizes indicator columns by (dataset, indicator, parameters).
+ * A column is computed the first time it is asked for and then shared by
+ * every later request, across threads. If several threads ask for the same
+ * missing column at once, only one computes it. Datasets are matched by
+ * identity and held weakly, so a dropped dataset takes its entries with it.
+ * When the cached heap columns exceed the memory budget, the least recently
+ * used ones are evicted. Off-heap columns (anything but a DoubleColumn) are
+ * kept out of the budget and never evicted: their memory belongs to the
+ * store that allocated them and only goes back when it is unmapped, so
+ * evicting one would only make the next request allocate it again. They
+ * stay cached as long as their dataset; call invalidate before unmapping
+ * a store that is still referenced.
+ */
+public class IndicatorCache {
+
+    // Budget of the shared cache in megabytes, overridable with -Dstockbot.indicatorCacheMB
+    private static final long DEFAULT_BUDGET_MB = 256;
+    private static final IndicatorCache SHARED =
+            new IndicatorCache(Long.getLong("stockbot.indicatorCacheMB", DEFAULT_BUDGET_MB) << 20);
+
+    /**
+     * Computes a column on a cache miss
+     */
+    public interface Computation {
+        DoubleSeries compute();
+    }
+
+    private final long budget;
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    // Access ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    // Off-heap columns, outside the budget
+    private long offHeapBytes;
+    private long hits, misses, evictions;
+
+    /**
+     * Create a cache
+     * @param budget Most bytes of cached columns to keep
+     */
+    public IndicatorCache(long budget) {
+        this.budget = budget;
+    }
+
+    // Process-wide cache used by StockSystem
+    public static IndicatorCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Fetch a column, computing it on a miss
+     * @param dataset The data the indicator is computed from, matched by identity
+     * @param indicator Indicator name
+     * @param params Indicator parameters
+     * @param computation Computes the column on a miss
+     * @return The cached or newly computed column
+     */
+    public DoubleSeries get(Object dataset, String indicator, double[] params, Computation computation) {
+        Key key = new Key(dataset, indicator, params, collected);
+        Entry entry;
+        boolean owner = false;
+        synchronized (this) {
+            expunge();
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+                owner = true;
+                misses++;
+            } else {
+                hits++;
+            }
+        }
+
+        if (owner) {
+            DoubleSeries column;
+            try {
+                column = computation.compute();
+            } catch (RuntimeException | Error e) {
+                synchronized (this) {
+                    entries.remove(key, entry);
+                }
+                entry.value.completeExceptionally(e);
+                throw e;
+            }
+            synchronized (this) {
+                entry.bytes = column.size() * 8L;
+                entry.offHeap = !(column instanceof DoubleColumn);
+                if (entries.get(key) == entry) {
+                    add(entry, 1);
+                    evict(entry);
+                }
+            }
+            entry.value.complete(column);
+            return column;
+        }
+
+        try {
+            return entry.value.join();
+        } catch (CompletionException e) {
+            // The computing thread failed; rethrow its exception here too
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    // Drop every entry of one dataset, e.g. after its bars were changed in place
+    public synchronized void invalidate(Object dataset) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().get() == dataset) {
+                add(e.getValue(), -1);
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        offHeapBytes = 0;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    // Bytes of cached heap columns, which the budget limits
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    // Bytes of cached off-heap columns, which the budget does not limit
+    public synchronized long getOffHeapBytes() {
+        return offHeapBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // Evict least recently used finished columns until within budget; keep the one just added
+    private void evict(Entry keep) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > budget && it.hasNext()) {
+            Entry e = it.next();
+            if (e == keep || !e.value.isDone() || e.offHeap) {
+                continue;
+            }
+            add(e, -1);
+            it.remove();
+            evictions++;
+        }
+    }
+
+    // Remove entries whose dataset has been garbage collected
+    private void expunge() {
+        Object ref;
+        while ((ref = collected.poll()) != null) {
+            Entry e = entries.remove(ref);
+            if (e != null) {
+                add(e, -1);
+            }
+        }
+    }
+
+    // Count an entry's column in or out of the heap or off-heap total
+    private void add(Entry e, int sign) {
+        if (e.offHeap) {
+            offHeapBytes += sign * e.bytes;
+        } else {
+            bytes += sign * e.bytes;
+        }
+    }
+
+    private static final class Entry {
+        final CompletableFuture<DoubleSeries> value = new CompletableFuture<>();
+        // Counted once the column exists
+        long bytes;
+        boolean offHeap;
+    }
+
+    // Weak dataset reference plus indicator and parameters; equal to itself even after collection
+    private static final class Key extends WeakReference<Object> {
+
+        private final int datasetHash;
+        private final String indicator;
+        private final double[] params;
+        private final int hash;
+
+        Key(Object dataset, String indicator, double[] params, ReferenceQueue<Object> queue) {
+            super(dataset, queue);
+            this.datasetHash = System.identityHashCode(dataset);
+            this.indicator = indicator;
+            this.params = params.clone();
+            this.hash = 31 * (31 * datasetHash + indicator.hashCode()) + Arrays.hashCode(this.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            Object dataset = get();
+            return dataset != null && dataset == k.get() && indicator.equals(k.indicator)
+                    && Arrays.equals(params, k.params);
+        }
+    }
+}
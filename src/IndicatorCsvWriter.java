@@ -0,0 +1,184 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams the Date,RSI,Open,MA export through one reused byte buffer.
+ * Numbers are turned into ASCII digits directly instead of going through
+ * Double.toString, and the date text is encoded once per calendar day.
+ *
+ * The output matches the old StringBuilder export: RSI and MA are rounded
+ * to 2 decimals like MainSystem.format, and open prices print the same as
+ * Double.toString. Values outside the fast path (1e7 and up, below 1e-3,
+ * more than 6 decimals) still go through Double.toString.
+ */
+public class IndicatorCsvWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Longest row we can produce, so a flush check per row is enough
+    private static final int MAX_ROW = 160;
+    private static final double FAST_LIMIT = 1e7;
+    private static final long[] POW10 = {1, 10, 100, 1000, 10_000, 100_000, 1_000_000};
+
+    private final OutputStream out;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private int pos;
+
+    // Encoded yyyy-MM-dd of the last day written
+    private long cachedDay = Long.MIN_VALUE;
+    private byte[] cachedDate = new byte[0];
+
+    public IndicatorCsvWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public void writeHeader() throws IOException {
+        writeAscii("Date,RSI values,Open price,Moving Average\n");
+    }
+
+    /**
+     * Append one export row
+     * @param time Bar timestamp in milliseconds
+     * @param rsi RSI value, written rounded to 2 decimals
+     * @param open Open price, written as is
+     * @param ma Moving average, written rounded to 2 decimals
+     */
+    public void writeRow(long time, double rsi, double open, double ma) throws IOException {
+        if (pos + MAX_ROW > buf.length) {
+            flush();
+        }
+        writeStamp(time);
+        buf[pos++] = ',';
+        writeRounded(rsi);
+        buf[pos++] = ',';
+        writeShortest(open);
+        buf[pos++] = ',';
+        writeRounded(ma);
+        buf[pos++] = '\n';
+    }
+
+    public void flush() throws IOException {
+        out.write(buf, 0, pos);
+        pos = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    // yyyy-MM-dd for daily bars, plus THH:mm[:ss[.SSS]] for intraday ones
+    private void writeStamp(long time) {
+        long day = Math.floorDiv(time, BarSeries.DAY_MILLIS);
+        if (day != cachedDay) {
+            cachedDay = day;
+            cachedDate = BarSeries.toDateTime(time).toLocalDate().toString().getBytes(StandardCharsets.US_ASCII);
+        }
+        System.arraycopy(cachedDate, 0, buf, pos, cachedDate.length);
+        pos += cachedDate.length;
+
+        int ms = (int) Math.floorMod(time, BarSeries.DAY_MILLIS);
+        if (ms == 0) {
+            return;
+        }
+        int millis = ms % 1000;
+        int seconds = ms / 1000 % 60;
+        buf[pos++] = 'T';
+        writeTwoDigits(ms / 3_600_000);
+        buf[pos++] = ':';
+        writeTwoDigits(ms / 60_000 % 60);
+        if (seconds != 0 || millis != 0) {
+            buf[pos++] = ':';
+            writeTwoDigits(seconds);
+        }
+        if (millis != 0) {
+            buf[pos++] = '.';
+            buf[pos++] = (byte) ('0' + millis / 100);
+            writeTwoDigits(millis % 100);
+        }
+    }
+
+    // Same text as Double.toString(MainSystem.format(value))
+    private void writeRounded(double value) {
+        long cents = Math.round(value * 100.0);
+        double rounded = cents / 100.0;
+        if (!(Math.abs(rounded) < FAST_LIMIT)) {
+            writeAscii(Double.toString(rounded));
+            return;
+        }
+        writeDecimal(cents, 2);
+    }
+
+    // Same text as Double.toString(value) for values with up to 6 decimals
+    private void writeShortest(double value) {
+        double abs = Math.abs(value);
+        // Double.toString switches to exponent form below 1e-3; zero keeps its sign
+        if (abs < FAST_LIMIT && abs >= 1e-3) {
+            for (int d = 0; d < POW10.length; d++) {
+                long scaled = Math.round(value * POW10[d]);
+                if ((double) scaled / POW10[d] == value) {
+                    writeDecimal(scaled, d);
+                    return;
+                }
+            }
+        }
+        writeAscii(Double.toString(value));
+    }
+
+    // Writes scaled / 10^decimals with trailing zeros dropped but at least one decimal
+    private void writeDecimal(long scaled, int decimals) {
+        if (scaled < 0) {
+            buf[pos++] = '-';
+            scaled = -scaled;
+        }
+        long whole = scaled / POW10[decimals];
+        long frac = scaled % POW10[decimals];
+        writeLong(whole);
+        buf[pos++] = '.';
+        if (frac == 0) {
+            buf[pos++] = '0';
+            return;
+        }
+        while (frac % 10 == 0) {
+            frac /= 10;
+            decimals--;
+        }
+        for (long p = POW10[decimals - 1]; p > 0; p /= 10) {
+            buf[pos++] = (byte) ('0' + frac / p % 10);
+        }
+    }
+
+    private void writeLong(long v) {
+        if (v == 0) {
+            buf[pos++] = '0';
+            return;
+        }
+        int start = pos;
+        while (v > 0) {
+            buf[pos++] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        // Digits went in backwards
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+    }
+
+    private void writeTwoDigits(int v) {
+        buf[pos++] = (byte) ('0' + v / 10);
+        buf[pos++] = (byte) ('0' + v % 10);
+    }
+
+    private void writeAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            buf[pos++] = (byte) s.charAt(i);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Numeric kernels behind the indicator and portfolio math.
+ * All methods work on primitive arrays and only read the first n values.
+ * Every implementation must produce results bit for bit identical to
+ * {@link ScalarKernels}, which keeps the summation order of the original code.
+ */
+public interface IndicatorKernels {
+    
+    /**
+     * Split price changes into gains and losses.
+     * gain[0] and loss[0] are 0; for i &gt; 0 a non-negative change goes to gain,
+     * a negative change goes to loss as its absolute value.
+     */
+    void gainLoss(double[] price, int n, double[] gain, double[] loss);
+    
+    /**
+     * Trailing mean over up to window values ending at i, summed oldest first.
+     * Early values use however many values are available.
+     */
+    void trailingMean(double[] x, int n, int window, double[] out);
+    
+    /**
+     * Trailing sum over up to window values ending at i, summed newest first.
+     */
+    void trailingSum(double[] x, int n, int window, double[] out);
+    
+    /**
+     * Portfolio value for a fixed position: out[i - from] = cash + shares * close[i]
+     */
+    void equity(double cash, double shares, double[] close, int from, int to, double[] out);
+    
+    /**
+     * Portfolio value per bar: out[i] = cash[i] + shares[i] * close[i]
+     */
+    void equity(double[] cash, double[] shares, double[] close, int n, double[] out);
+    
+    // Operators for compare, meaning what Java's do: NaN satisfies only NE
+    int LT = 0, LE = 1, GT = 2, GE = 3, EQ = 4, NE = 5;
+    
+    /**
+     * Rule comparisons over a block of bars: out[k] = a[aFrom + k] op c, k &lt; n
+     * @param op LT, LE, GT, GE, EQ or NE
+     */
+    void compare(int op, double[] a, int aFrom, double c, boolean[] out, int n);
+    
+    /**
+     * out[k] = a[aFrom + k] op b[bFrom + k], k &lt; n
+     */
+    void compare(int op, double[] a, int aFrom, double[] b, int bFrom, boolean[] out, int n);
+    
+    /**
+     * out[k] = out[k] &amp; x[k], or out[k] | x[k] when any, for k &lt; n
+     */
+    void merge(boolean[] out, boolean[] x, int n, boolean any);
+    
+    /**
+     * Best available implementation: the Vector API kernels when the
+     * jdk.incubator.vector module is present, the scalar kernels otherwise.
+     * Setting -Dstockbot.scalar=true forces the scalar path.
+     */
+    static IndicatorKernels get() {
+        return KernelHolder.INSTANCE;
+    }
+}
+
+final class KernelHolder {
+    
+    static final IndicatorKernels INSTANCE = load();
+    
+    private KernelHolder() {
+    }
+    
+    private static IndicatorKernels load() {
+        if (!Boolean.getBoolean("stockbot.scalar")
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (IndicatorKernels) Class.forName("VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Fall back to the scalar kernels
+            }
+        }
+        return new ScalarKernels();
+    }
+}
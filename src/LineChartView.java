@@ -0,0 +1,85 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import javax.swing.JComponent;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartPanel;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
+
+/**
+ * The GUI's one reusable line chart. Every JFreeChart reference lives here
+ * rather than in StockBotGUI, so building the main window loads none of the
+ * chart library; it is loaded when the first chart is shown, or earlier by
+ * the startup warm-up thread.
+ */
+public class LineChartView {
+
+    private final XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer(true, false);
+    private JFreeChart chart;
+    private ChartPanel panel;
+
+    /**
+     * Show a dataset; after the first call this only swaps the dataset, titles and colors
+     * @param title Chart title
+     * @param xLabel Domain axis label
+     * @param yLabel Range axis label
+     * @param dataset Series to draw
+     * @param colors Line color of each series, in order
+     */
+    public void show(String title, String xLabel, String yLabel, ColumnXYDataset dataset, Color... colors) {
+        for (int s = 0; s < colors.length; s++) {
+            renderer.setSeriesPaint(s, colors[s]);
+        }
+        if (chart == null) {
+            chart = ChartFactory.createXYLineChart(
+                    title,
+                    xLabel,
+                    yLabel,
+                    dataset,
+                    PlotOrientation.VERTICAL,
+                    true,
+                    true,
+                    false
+            );
+            chart.getXYPlot().setRenderer(renderer);
+            panel = new ChartPanel(chart);
+            panel.setPreferredSize(new Dimension(600, 400));
+            panel.setMouseWheelEnabled(true);
+        } else {
+            chart.setTitle(title);
+            XYPlot plot = chart.getXYPlot();
+            plot.getDomainAxis().setLabel(xLabel);
+            plot.getRangeAxis().setLabel(yLabel);
+            plot.setDataset(dataset);
+            // Drop any zoom left over from the previous dataset
+            panel.restoreAutoBounds();
+        }
+    }
+
+    // The Swing component to add to the window; null until the first show
+    public JComponent getComponent() {
+        return panel;
+    }
+
+    /**
+     * Load the chart classes and render a small throwaway chart off screen,
+     * so the first real chart skips class loading and font setup. Touches
+     * no Swing component, so it may run on any thread.
+     */
+    public static void warmUp() {
+        ColumnXYDataset dataset = new ColumnXYDataset();
+        DoubleColumn y = new DoubleColumn(3);
+        y.add(1);
+        y.add(3);
+        y.add(2);
+        dataset.addSeries("Warm-up", y);
+        JFreeChart chart = ChartFactory.createXYLineChart("Warm-up", "x", "y", dataset,
+                PlotOrientation.VERTICAL, true, true, false);
+        chart.getXYPlot().setRenderer(new XYLineAndShapeRenderer(true, false));
+        chart.createBufferedImage(320, 200);
+        // Only load the panel class; initializing a Swing class belongs on the EDT
+        ChartPanel.class.getName();
+    }
+}
@@ -1,13 +1,20 @@
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Scanner;
+import java.util.zip.GZIPInputStream;
 
 public class MainSystem {
     
+    // Buffer size for file reads and gzip inflation
+    private static final int READ_BUFFER = 1 << 16;
+    
     private Scanner scanner;
     
     public MainSystem() {
@@ -27,10 +34,24 @@ public class MainSystem {
         return name;
     }
     
-    // Method to read from a file
+    // Method to read from a file; gzip files are decompressed as they are read
     public BufferedReader readFile(String fileName) {
         try {
-            return new BufferedReader(new FileReader(fileName));
+            InputStream in = new BufferedInputStream(new FileInputStream(fileName), READ_BUFFER);
+            try {
+                if (hasGzipMagic(in)) {
+                    in = new GZIPInputStream(in, READ_BUFFER);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Not handed to a reader yet, so close it here
+                try {
+                    in.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                throw e;
+            }
+            return new BufferedReader(new InputStreamReader(in), READ_BUFFER);
         } catch (IOException e) {
             System.out.println("Error opening file: " + fileName);
             e.printStackTrace();
@@ -38,6 +59,24 @@ public class MainSystem {
         }
     }
     
+    // Method to check whether a file is gzip compressed, by its magic bytes
+    public boolean isGzip(String fileName) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(fileName), 2)) {
+            return hasGzipMagic(in);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    // Peeks at the first two bytes and leaves the stream where it was
+    private static boolean hasGzipMagic(InputStream in) throws IOException {
+        in.mark(2);
+        int b1 = in.read();
+        int b2 = in.read();
+        in.reset();
+        return b1 == 0x1f && b2 == 0x8b;
+    }
+    
     // Method to write to a file
     public BufferedWriter writeFile(String fileName) {
         try {
@@ -51,25 +90,34 @@ public class MainSystem {
     
     // Method to calculate simple moving average
     public ArrayList<Double> smoothy(ArrayList<Double> data) {
-        ArrayList<Double> result = new ArrayList<>();
+        DoubleColumn column = new DoubleColumn(data.size());
+        for (Double value : data) {
+            column.add(value);
+        }
+        DoubleColumn result = new DoubleColumn(new double[data.size()], data.size());
+        smoothy(column, result);
+        return result.toList();
+    }
+    
+    // Same moving average over any column, written into out
+    public void smoothy(DoubleSeries data, DoubleSeries out) {
         int period = 14; // Moving Average period
+        int chunk = 1 << 16;
+        int size = data.size();
+        int cap = Math.min(size, chunk + period - 1);
+        double[] buf = new double[cap];
+        double[] result = new double[cap];
         
-        // First n-1 elements don't have a full window, so we'll use whatever data we have
-        for (int i = 0; i < data.size(); i++) {
-            double sum = 0;
-            int count = 0;
-            
-            // Sum the values in the window
-            for (int j = Math.max(0, i - period + 1); j <= i; j++) {
-                sum += data.get(j);
-                count++;
-            }
-            
-            // Add the average to the result
-            result.add(sum / count);
+        // First n-1 elements don't have a full window, so we'll use whatever data we have.
+        // Each chunk re-reads the period-1 values before it so later windows stay full.
+        for (int start = 0; start < size; start += chunk) {
+            int end = Math.min(start + chunk, size);
+            int from = Math.max(0, start - period + 1);
+            int len = end - from;
+            data.copyTo(from, buf, 0, len);
+            IndicatorKernels.get().trailingMean(buf, len, period, result);
+            out.copyFrom(result, start - from, start, end - start);
         }
-        
-        return result;
     }
     
     // Method to format double values to 2 decimal places
@@ -0,0 +1,543 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes synthetic price histories in the CSV format StockSystem.loadData
+ * reads, for benchmarks and load tests on reproducible data.
+ *
+ * The log price is geometric Brownian motion with Poisson jumps, with the
+ * drift as the expected return, and by default weakly pulled back towards
+ * the start price. Every symbol's shocks share a market
+ * factor, so a universe of symbols is correlated. Volume follows an AR(1)
+ * process in log space and rises with the size of the bar's move. Bars are
+ * daily on weekdays, or intraday within a 09:30 to 16:00 session.
+ *
+ * Output depends only on the seed and the settings, not on the number of
+ * threads: rows are generated in fixed chunks, each drawing from random
+ * streams derived from (seed, symbol, chunk). A first pass finds the price
+ * at each chunk boundary, then chunks are formatted in parallel and written
+ * in order, so a multi-gigabyte file streams with little memory.
+ *
+ * Usage:
+ *   java MarketDataGenerator file.csv rows [options]
+ *   java MarketDataGenerator --universe directory symbols rows [options]
+ * Options: --seed n, --minutes m (intraday bars of m minutes), --threads t
+ */
+public class MarketDataGenerator {
+
+    public static final String HEADER = "Date,Open,High,Low,Close,Adj Close,Volume\n";
+
+    // Rows per generation chunk; fixed, so output does not depend on the threads
+    private static final int CHUNK_ROWS = 1 << 16;
+    private static final int TRADING_DAYS = 252;
+    private static final int SESSION_MINUTES = 390;
+    private static final int SESSION_OPEN = 9 * 60 + 30;
+    // Random streams of a chunk; the market stream is shared by all symbols
+    private static final int PRICE = 1, DECORATION = 2, MARKET = 3;
+    // Mean of |z| for a standard normal z
+    private static final double MEAN_ABS_NORMAL = Math.sqrt(2 / Math.PI);
+
+    private final long seed;
+    private double startPrice = 100;
+    private LocalDate startDate = LocalDate.of(2000, 1, 3);
+    private double drift = 0.07;
+    private double volatility = 0.25;
+    private double jumpsPerYear = 3;
+    private double jumpMean = -0.02;
+    private double jumpVolatility = 0.06;
+    // Keeps long histories within a few multiples of the start price
+    private double meanReversion = 0.1;
+    private double marketCorrelation = 0.3;
+    private double meanVolume = 1_000_000;
+    private double volumePersistence = 0.8;
+    private double volumeVolatility = 0.3;
+    private double volumeSensitivity = 0.3;
+    private int barMinutes = 0;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public MarketDataGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> positional = new ArrayList<>();
+        long seed = 1;
+        int minutes = 0, threads = 0;
+        for (int a = 0; a < args.length; a++) {
+            switch (args[a]) {
+                case "--seed":
+                    seed = Long.parseLong(args[++a]);
+                    break;
+                case "--minutes":
+                    minutes = Integer.parseInt(args[++a]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++a]);
+                    break;
+                default:
+                    positional.add(args[a]);
+                    break;
+            }
+        }
+        boolean universe = !positional.isEmpty() && positional.get(0).equals("--universe");
+        if (positional.size() != (universe ? 4 : 2)) {
+            System.out.println("Usage: MarketDataGenerator file.csv rows [--seed n] [--minutes m] [--threads t]");
+            System.out.println("       MarketDataGenerator --universe directory symbols rows [--seed n] [--minutes m] [--threads t]");
+            System.exit(2);
+        }
+
+        MarketDataGenerator generator = new MarketDataGenerator(seed);
+        generator.setBarMinutes(minutes);
+        if (threads > 0) {
+            generator.setThreads(threads);
+        }
+        long start = System.nanoTime();
+        long bytes;
+        if (universe) {
+            bytes = 0;
+            for (Path file : generator.writeUniverse(Paths.get(positional.get(1)),
+                    Integer.parseInt(positional.get(2)), Long.parseLong(positional.get(3)))) {
+                bytes += Files.size(file);
+            }
+        } else {
+            Path file = Paths.get(positional.get(0));
+            generator.writeFile(file, 0, Long.parseLong(positional.get(1)));
+            bytes = Files.size(file);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%,d bytes in %.2f s (%.0f MB/s)",
+                bytes, seconds, bytes / seconds / (1 << 20)));
+    }
+
+    /**
+     * Write one symbol's history
+     * @param file Destination CSV file
+     * @param symbol Symbol number; each number gives a different path
+     * @param rows Number of bars
+     */
+    public void writeFile(Path file, int symbol, long rows) throws IOException, InterruptedException {
+        checkRange(rows);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            // Pass 1: the log price deviation at every chunk boundary
+            int chunks = (int) ((rows + CHUNK_ROWS - 1) / CHUNK_ROWS);
+            List<Future<double[]>> walks = new ArrayList<>();
+            for (int c = 0; c < chunks; c++) {
+                int chunk = c;
+                walks.add(pool.submit(() -> walk(symbol, chunk, chunkRows(rows, chunk))));
+            }
+            double[] starts = new double[chunks];
+            for (int c = 1; c < chunks; c++) {
+                double[] walk = walks.get(c - 1).get();
+                starts[c] = walk[0] * starts[c - 1] + walk[1];
+            }
+
+            // Pass 2: format chunks in parallel, at most two per thread ahead of the writer
+            out.write(HEADER.getBytes());
+            ArrayDeque<Future<RowWriter>> pending = new ArrayDeque<>();
+            int next = 0;
+            for (int c = 0; c < chunks; c++) {
+                while (next < chunks && pending.size() < 2 * threads) {
+                    int chunk = next++;
+                    pending.add(pool.submit(() -> format(symbol, chunk, chunkRows(rows, chunk), starts[chunk])));
+                }
+                RowWriter written = pending.poll().get();
+                out.write(written.buffer, 0, written.size);
+            }
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Write a directory of symbols, SYM00000.csv and up, in parallel
+     * @param directory Destination directory, created if missing
+     * @param symbols Number of symbols
+     * @param rows Bars per symbol
+     * @return The files written, in symbol order
+     */
+    public List<Path> writeUniverse(Path directory, int symbols, long rows) throws IOException, InterruptedException {
+        checkRange(rows);
+        Files.createDirectories(directory);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Path>> writes = new ArrayList<>();
+            int digits = Math.max(5, Integer.toString(symbols - 1).length());
+            for (int s = 0; s < symbols; s++) {
+                int symbol = s;
+                Path file = directory.resolve(String.format(Locale.ROOT, "SYM%0" + digits + "d.csv", s));
+                writes.add(pool.submit(() -> {
+                    writeSerial(file, symbol, rows);
+                    return file;
+                }));
+            }
+            List<Path> files = new ArrayList<>();
+            for (Future<Path> write : writes) {
+                files.add(write.get());
+            }
+            return files;
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void setStartPrice(double startPrice) {
+        this.startPrice = startPrice;
+    }
+
+    // First bar's date; a weekend moves it to the Monday after
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    // Annual drift and volatility of the log price
+    public void setDrift(double drift) {
+        this.drift = drift;
+    }
+
+    public void setVolatility(double volatility) {
+        this.volatility = volatility;
+    }
+
+    /**
+     * Jumps in the log price
+     * @param perYear Average number of jumps a year
+     * @param mean Mean jump size
+     * @param volatility Standard deviation of the jump size
+     */
+    public void setJumps(double perYear, double mean, double volatility) {
+        this.jumpsPerYear = perYear;
+        this.jumpMean = mean;
+        this.jumpVolatility = volatility;
+    }
+
+    /**
+     * Pull of the log price back towards the start price, per year. 0 gives
+     * pure GBM, whose prices drift out of any fixed range over centuries of
+     * bars; the default 0.1 keeps them within a few multiples of the start.
+     */
+    public void setMeanReversion(double meanReversion) {
+        this.meanReversion = meanReversion;
+    }
+
+    // Share of each shock's variance that is common to all symbols, 0 to 1
+    public void setMarketCorrelation(double marketCorrelation) {
+        if (marketCorrelation < 0 || marketCorrelation > 1) {
+            throw new IllegalArgumentException("Market correlation must be between 0 and 1");
+        }
+        this.marketCorrelation = marketCorrelation;
+    }
+
+    /**
+     * Volume model
+     * @param meanVolume Typical volume of a day, spread over its bars
+     * @param persistence AR(1) coefficient of the log volume, 0 to below 1
+     * @param volatility Standard deviation of the log volume
+     * @param sensitivity Log volume added per unit of |shock| above average
+     */
+    public void setVolume(double meanVolume, double persistence, double volatility, double sensitivity) {
+        if (persistence < 0 || persistence >= 1) {
+            throw new IllegalArgumentException("Volume persistence must be in [0, 1)");
+        }
+        this.meanVolume = meanVolume;
+        this.volumePersistence = persistence;
+        this.volumeVolatility = volatility;
+        this.volumeSensitivity = sensitivity;
+    }
+
+    // Intraday bar length in minutes, or 0 for daily bars
+    public void setBarMinutes(int barMinutes) {
+        if (barMinutes < 0 || barMinutes > SESSION_MINUTES) {
+            throw new IllegalArgumentException("Bar minutes must be 0 (daily) to " + SESSION_MINUTES);
+        }
+        this.barMinutes = barMinutes;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    // One symbol on the calling thread, for writeUniverse's per-file tasks
+    private void writeSerial(Path file, int symbol, long rows) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(HEADER.getBytes());
+            int chunks = (int) ((rows + CHUNK_ROWS - 1) / CHUNK_ROWS);
+            double start = 0;
+            for (int c = 0; c < chunks; c++) {
+                int n = chunkRows(rows, c);
+                RowWriter written = format(symbol, c, n, start);
+                out.write(written.buffer, 0, written.size);
+                double[] walk = walk(symbol, c, n);
+                start = walk[0] * start + walk[1];
+            }
+        }
+    }
+
+    /**
+     * The chunk's effect on the log price deviation d from the start price:
+     * d at its end is a * d at its start + b
+     * @return {a, b}
+     */
+    private double[] walk(int symbol, int chunk, int rows) {
+        Step step = new Step(symbol, chunk);
+        double b = 0;
+        for (int k = 0; k < rows; k++) {
+            b = step.reversion * b + step.next();
+        }
+        return new double[]{Math.pow(step.reversion, rows), b};
+    }
+
+    // Rows of one chunk as CSV text, from the log price deviation at its start
+    private RowWriter format(int symbol, int chunk, int rows, double deviation) {
+        Step step = new Step(symbol, chunk);
+        SplittableRandom decoration = new SplittableRandom(streamSeed(symbol, chunk, DECORATION));
+        int barsPerDay = barsPerDay();
+        double base = Math.log(startPrice);
+        double volumeShock = volumeVolatility * Math.sqrt(1 - volumePersistence * volumePersistence);
+        double barVolume = meanVolume / barsPerDay;
+        double rangeScale = 0.5 * step.shockScale;
+        // Log volume from its stationary distribution at the chunk start
+        double logVolume = volumeVolatility * decoration.nextGaussian();
+
+        RowWriter out = new RowWriter(rows * 80);
+        long row = (long) chunk * CHUNK_ROWS;
+        long epochDay = businessDay(row / barsPerDay);
+        int bar = (int) (row % barsPerDay);
+        out.setDay(epochDay);
+        double open = Math.exp(base + deviation);
+        for (int k = 0; k < rows; k++) {
+            deviation = step.reversion * deviation + step.next();
+            double close = Math.exp(base + deviation);
+            double high = Math.max(open, close) * Math.exp(Math.abs(decoration.nextGaussian()) * rangeScale);
+            double low = Math.min(open, close) * Math.exp(-Math.abs(decoration.nextGaussian()) * rangeScale);
+            logVolume = volumePersistence * logVolume + volumeShock * decoration.nextGaussian();
+            double activity = volumeSensitivity * (Math.abs(step.shock) - MEAN_ABS_NORMAL);
+            long volume = Math.max(1, Math.round(barVolume * Math.exp(logVolume + activity)));
+
+            out.date();
+            if (barMinutes > 0) {
+                out.time(SESSION_OPEN + bar * barMinutes);
+            }
+            out.price(open);
+            out.price(high);
+            out.price(low);
+            out.price(close);
+            out.price(close);
+            out.volume(volume);
+
+            open = close;
+            if (++bar == barsPerDay) {
+                bar = 0;
+                // Next weekday: Friday is followed by Monday (epoch day 0 was a Thursday)
+                epochDay += Math.floorMod(epochDay + 3, 7) == 4 ? 3 : 1;
+                out.setDay(epochDay);
+            }
+        }
+        return out;
+    }
+
+    // Draws a chunk's log price steps in a fixed order, so both passes see the same path
+    private final class Step {
+
+        final double reversion;
+        final double shockScale;
+        private final double stepDrift, jumpChance, marketWeight, ownWeight;
+        private final SplittableRandom own, market;
+        // Standard normal shock of the last step, without jumps
+        double shock;
+
+        Step(int symbol, int chunk) {
+            double dt = 1.0 / TRADING_DAYS / barsPerDay();
+            reversion = Math.exp(-meanReversion * dt);
+            shockScale = volatility * Math.sqrt(dt);
+            // Less the jumps' expected gain, so the expected return is the drift (Merton's compensator)
+            double jumpGain = jumpsPerYear * (Math.exp(jumpMean + jumpVolatility * jumpVolatility / 2) - 1);
+            stepDrift = (drift - volatility * volatility / 2 - jumpGain) * dt;
+            jumpChance = jumpsPerYear * dt;
+            marketWeight = Math.sqrt(marketCorrelation);
+            ownWeight = Math.sqrt(1 - marketCorrelation);
+            own = new SplittableRandom(streamSeed(symbol, chunk, PRICE));
+            market = new SplittableRandom(streamSeed(-1, chunk, MARKET));
+        }
+
+        double next() {
+            shock = marketWeight * market.nextGaussian() + ownWeight * own.nextGaussian();
+            double step = stepDrift + shockScale * shock;
+            if (own.nextDouble() < jumpChance) {
+                step += jumpMean + jumpVolatility * own.nextGaussian();
+            }
+            return step;
+        }
+    }
+
+    private long streamSeed(int symbol, int chunk, int stream) {
+        return mix(mix(mix(seed + stream) + symbol) + chunk);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private int barsPerDay() {
+        return barMinutes == 0 ? 1 : SESSION_MINUTES / barMinutes;
+    }
+
+    private static int chunkRows(long rows, int chunk) {
+        return (int) Math.min(CHUNK_ROWS, rows - (long) chunk * CHUNK_ROWS);
+    }
+
+    // Epoch day of the given weekday after the start date, weekends skipped
+    private long businessDay(long day) {
+        LocalDate first = startDate;
+        while (first.getDayOfWeek() == DayOfWeek.SATURDAY || first.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            first = first.plusDays(1);
+        }
+        int weekday = first.getDayOfWeek().getValue() - 1;
+        long monday = first.toEpochDay() - weekday;
+        return monday + (weekday + day) / 5 * 7 + (weekday + day) % 5;
+    }
+
+    // loadData reads four-digit years only
+    private void checkRange(long rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("At least one row is needed");
+        }
+        LocalDate last = LocalDate.ofEpochDay(businessDay((rows - 1) / barsPerDay()));
+        if (last.getYear() > 9999) {
+            throw new IllegalArgumentException(rows + " bars would run past the year 9999; use intraday bars or fewer rows");
+        }
+    }
+
+    private static IOException rethrow(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+    }
+
+    // ASCII CSV rows in a growable byte buffer, without Strings per value
+    private static final class RowWriter {
+
+        byte[] buffer;
+        int size;
+        private final byte[] date = new byte[10];
+
+        RowWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        // Civil date of an epoch day without a LocalDate (H. Hinnant's days_from_civil inverse)
+        void setDay(long epochDay) {
+            long z = epochDay + 719468;
+            long era = Math.floorDiv(z, 146097);
+            long doe = z - era * 146097;
+            long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+            long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+            long mp = (5 * doy + 2) / 153;
+            int dom = (int) (doy - (153 * mp + 2) / 5 + 1);
+            int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+            int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+            date[0] = (byte) ('0' + year / 1000);
+            date[1] = (byte) ('0' + year / 100 % 10);
+            date[2] = (byte) ('0' + year / 10 % 10);
+            date[3] = (byte) ('0' + year % 10);
+            date[4] = '-';
+            date[5] = (byte) ('0' + month / 10);
+            date[6] = (byte) ('0' + month % 10);
+            date[7] = '-';
+            date[8] = (byte) ('0' + dom / 10);
+            date[9] = (byte) ('0' + dom % 10);
+        }
+
+        // Starts a row, making room for the longest one
+        void date() {
+            ensure(256);
+            System.arraycopy(date, 0, buffer, size, 10);
+            size += 10;
+        }
+
+        // " HH:mm" after the date
+        void time(int minuteOfDay) {
+            int hour = minuteOfDay / 60, minute = minuteOfDay % 60;
+            buffer[size++] = ' ';
+            buffer[size++] = (byte) ('0' + hour / 10);
+            buffer[size++] = (byte) ('0' + hour % 10);
+            buffer[size++] = ':';
+            buffer[size++] = (byte) ('0' + minute / 10);
+            buffer[size++] = (byte) ('0' + minute % 10);
+        }
+
+        // ",price" with four decimals
+        void price(double value) {
+            buffer[size++] = ',';
+            if (!(value >= 1e-4 && value < 1e14)) {
+                // Outside the fixed-point range: Double.toString, which loadData parses too
+                for (byte b : Double.toString(value).getBytes()) {
+                    buffer[size++] = b;
+                }
+                return;
+            }
+            long scaled = Math.round(value * 10_000);
+            digits(scaled / 10_000);
+            buffer[size++] = '.';
+            long fraction = scaled % 10_000;
+            buffer[size++] = (byte) ('0' + fraction / 1000);
+            buffer[size++] = (byte) ('0' + fraction / 100 % 10);
+            buffer[size++] = (byte) ('0' + fraction / 10 % 10);
+            buffer[size++] = (byte) ('0' + fraction % 10);
+        }
+
+        // ",volume" and the line end
+        void volume(long value) {
+            buffer[size++] = ',';
+            digits(value);
+            buffer[size++] = '\n';
+        }
+
+        private void digits(long value) {
+            int start = size;
+            do {
+                buffer[size++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            for (int i = start, j = size - 1; i < j; i++, j--) {
+                byte t = buffer[i];
+                buffer[i] = buffer[j];
+                buffer[j] = t;
+            }
+        }
+
+        private void ensure(int more) {
+            if (size + more > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(size + more, buffer.length * 2));
+            }
+        }
+    }
+}
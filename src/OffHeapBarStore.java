@@ -0,0 +1,247 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bar history stored in a memory-mapped file outside the Java heap.
+ * The file is paged in by the OS on demand, so datasets much larger than -Xmx
+ * can be backtested with a small heap and almost no garbage collection.
+ * Uses the Foreign Function &amp; Memory API (java.lang.foreign).
+ *
+ * File layout (little endian): a 16 byte header (magic, version, row count)
+ * followed by one fixed 56 byte record per bar: timestamp in milliseconds,
+ * open, high, low, close, adjusted close and volume.
+ */
+public class OffHeapBarStore implements BarSeries {
+
+    private static final int MAGIC = 0x53544B42; // "STKB"
+    private static final int VERSION = 2;
+    private static final long HEADER = 16;
+    private static final long RECORD = 56;
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final int size;
+    private final MappedColumn open, high, low, close, adjClose, volume;
+
+    private OffHeapBarStore(Arena arena, MemorySegment segment) {
+        this.arena = arena;
+        this.segment = segment;
+        if (segment.byteSize() < HEADER || segment.get(INT, 0) != MAGIC) {
+            throw new IllegalArgumentException("Not a bar store file");
+        }
+        int version = segment.get(INT, 4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported bar store version: " + version);
+        }
+        // A truncated or half-written file would otherwise fail mid-backtest
+        long count = segment.get(LONG, 8);
+        if (count < 0 || count > Math.min(Integer.MAX_VALUE, (segment.byteSize() - HEADER) / RECORD)) {
+            throw new IllegalArgumentException("Truncated bar store file: header lists " + count + " bars");
+        }
+        this.size = (int) count;
+        this.open = new MappedColumn(8);
+        this.high = new MappedColumn(16);
+        this.low = new MappedColumn(24);
+        this.close = new MappedColumn(32);
+        this.adjClose = new MappedColumn(40);
+        this.volume = new MappedColumn(48);
+    }
+
+    /**
+     * Map a bar store file read-only
+     * @param path The store file
+     * @return The mapped store; call unmap() when done with it
+     */
+    public static OffHeapBarStore open(Path path) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            return new OffHeapBarStore(arena, segment);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long time(int i) {
+        return segment.get(LONG, offset(i));
+    }
+
+    @Override
+    public DoubleSeries open() {
+        return open;
+    }
+
+    @Override
+    public DoubleSeries high() {
+        return high;
+    }
+
+    @Override
+    public DoubleSeries low() {
+        return low;
+    }
+
+    @Override
+    public DoubleSeries close() {
+        return close;
+    }
+
+    @Override
+    public DoubleSeries adjClose() {
+        return adjClose;
+    }
+
+    @Override
+    public DoubleSeries volume() {
+        return volume;
+    }
+
+    // Derived columns live in off-heap memory owned by this store
+    @Override
+    public DoubleSeries newColumn(int size) {
+        return new SegmentColumn(arena.allocate(size * 8L, 8), size);
+    }
+
+    // Unmaps the file and frees every column created by newColumn.
+    // Named unmap because close() is the close price column.
+    public void unmap() {
+        arena.close();
+    }
+
+    private long offset(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+        }
+        return HEADER + i * RECORD;
+    }
+
+    // One field of the fixed-size records, read straight from the mapping
+    private class MappedColumn implements DoubleSeries {
+
+        private final long field;
+
+        MappedColumn(long field) {
+            this.field = field;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public double get(int i) {
+            return segment.get(DOUBLE, offset(i) + field);
+        }
+
+        @Override
+        public void copyTo(int from, double[] dst, int off, int len) {
+            long pos = offset(from) + field;
+            for (int k = 0; k < len; k++, pos += RECORD) {
+                dst[off + k] = segment.get(DOUBLE, pos);
+            }
+        }
+
+        @Override
+        public void copyFrom(double[] src, int off, int at, int len) {
+            throw new UnsupportedOperationException("Bar store columns are read-only");
+        }
+    }
+
+    // Dense off-heap column of doubles
+    private static class SegmentColumn implements DoubleSeries {
+
+        private final MemorySegment values;
+        private final int size;
+
+        SegmentColumn(MemorySegment values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public double get(int i) {
+            return values.getAtIndex(ValueLayout.JAVA_DOUBLE, i);
+        }
+
+        @Override
+        public void copyTo(int from, double[] dst, int off, int len) {
+            MemorySegment.copy(values, ValueLayout.JAVA_DOUBLE, from * 8L, dst, off, len);
+        }
+
+        @Override
+        public void copyFrom(double[] src, int off, int at, int len) {
+            MemorySegment.copy(src, off, values, ValueLayout.JAVA_DOUBLE, at * 8L, len);
+        }
+    }
+
+    /**
+     * Streams bars into a new store file. Rows are buffered and written in
+     * large blocks; the row count in the header is filled in on close.
+     */
+    public static class Writer implements BarSink, AutoCloseable {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long rows;
+
+        public Writer(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(0);
+        }
+
+        @Override
+        public void add(long time, double open, double high, double low, double close,
+                double adjClose, double volume) throws IOException {
+            if (buffer.remaining() < RECORD) {
+                flush();
+            }
+            buffer.putLong(time).putDouble(open).putDouble(high).putDouble(low)
+                    .putDouble(close).putDouble(adjClose).putDouble(volume);
+            rows++;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                ByteBuffer count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, rows);
+                channel.write(count, 8);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,436 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Bar-by-bar order execution with market, limit, stop and stop-limit orders.
+ * Resting orders sit in price-ordered heaps, one per kind and side, so each
+ * bar only looks at the orders whose price the bar's range reached: buy
+ * limits from the highest price down, sell limits from the lowest up, buy
+ * stops from the lowest trigger up and sell stops from the highest down.
+ * Orders at the same price fill first in, first out.
+ *
+ * Fills use the bar's open, high and low. An order whose price the bar gaps
+ * through fills at the open. Otherwise a limit fills at its limit and a stop
+ * at its trigger. Market and stop fills pay slippage; limit fills never fill
+ * worse than their limit. A triggered stop-limit becomes a limit order and
+ * can fill in the same bar, but no better than its trigger, as the open came
+ * before it; likewise an order placed from a FillListener during a bar fills
+ * no better than the fill that placed it. Commission is charged per order, per share and
+ * as a fraction of the traded value. The account is long only: sells are
+ * capped at the position and buys at what the cash can pay for.
+ */
+public class OrderEngine {
+
+    public static final int BUY = TradeJournal.BUY;
+    public static final int SELL = TradeJournal.SELL;
+
+    private static final int MARKET = 0, LIMIT = 1, STOP = 2, STOP_LIMIT = 3;
+    private static final int OPEN = 0, FILLED = 1, CANCELLED = 2;
+
+    /**
+     * Called once per bar after its fills, to read signals and place orders.
+     * Orders placed here can fill from the next bar on.
+     */
+    public interface Strategy {
+        void onBar(OrderEngine engine, int i);
+    }
+
+    /**
+     * Told about every fill, e.g. to attach exit orders to an entry
+     */
+    public interface FillListener {
+        void onFill(OrderEngine engine, int order, int i, int side, int qty, double price, double commission);
+    }
+
+    private final BarSeries bars;
+    private double slippage;
+    private double commissionPerOrder, commissionPerShare, commissionRate;
+    private FillListener fillListener;
+    private TradeJournal.Writer journal;
+
+    // Orders, struct of arrays indexed by order id
+    private int orderCount;
+    private int[] kind = new int[64];
+    private int[] side = new int[64];
+    private int[] quantity = new int[64];
+    private int[] status = new int[64];
+    private double[] limitPrice = new double[64];
+    private double[] stopPrice = new double[64];
+    // Bar an order became active in, and the price then; before that bar it fills from the open
+    private int[] activeBar = new int[64];
+    private double[] activePrice = new double[64];
+
+    // Bar being processed, or -1 between bars, and the price of its latest fill
+    private int currentBar = -1;
+    private double currentPrice;
+
+    // Resting orders by price: limits and untriggered stops, per side
+    private final PriceHeap buyLimits = new PriceHeap(true);
+    private final PriceHeap sellLimits = new PriceHeap(false);
+    private final PriceHeap buyStops = new PriceHeap(false);
+    private final PriceHeap sellStops = new PriceHeap(true);
+    private final PriceHeap market = new PriceHeap(false);
+
+    // Account
+    private double cash;
+    private int position;
+    private double commissions;
+    private final PerformanceStats stats = new PerformanceStats();
+
+    public OrderEngine(BarSeries bars) {
+        this.bars = bars;
+    }
+
+    // Adverse price move on market and stop fills, as a fraction of the price
+    public void setSlippage(double slippage) {
+        this.slippage = slippage;
+    }
+
+    /**
+     * Set trading costs
+     * @param perOrder Fixed fee per fill
+     * @param perShare Fee per share
+     * @param rate Fee as a fraction of the traded value
+     */
+    public void setCommission(double perOrder, double perShare, double rate) {
+        this.commissionPerOrder = perOrder;
+        this.commissionPerShare = perShare;
+        this.commissionRate = rate;
+    }
+
+    public void setFillListener(FillListener fillListener) {
+        this.fillListener = fillListener;
+    }
+
+    public void setTradeJournal(TradeJournal.Writer journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Run a strategy over every bar
+     * @param balance Starting cash
+     * @param strategy Places orders after each bar
+     * @return Final worth at the last close
+     */
+    public double run(double balance, Strategy strategy) {
+        reset(balance);
+        for (int i = 0; i < bars.size(); i++) {
+            processBar(i);
+            strategy.onBar(this, i);
+            stats.update(bars.time(i), getWorth(i), position);
+        }
+        return bars.size() == 0 ? cash : getWorth(bars.size() - 1);
+    }
+
+    // Clear orders and positions and start over with this much cash
+    public void reset(double balance) {
+        cash = balance;
+        position = 0;
+        commissions = 0;
+        orderCount = 0;
+        currentBar = -1;
+        buyLimits.clear();
+        sellLimits.clear();
+        buyStops.clear();
+        sellStops.clear();
+        market.clear();
+        stats.reset(balance);
+    }
+
+    // Fills at the next bar's open
+    public int market(int orderSide, int qty) {
+        int id = newOrder(MARKET, orderSide, qty, Double.NaN, Double.NaN);
+        market.push(id, id);
+        return id;
+    }
+
+    // Fills at the limit price or better
+    public int limit(int orderSide, int qty, double price) {
+        int id = newOrder(LIMIT, orderSide, qty, price, Double.NaN);
+        (orderSide == BUY ? buyLimits : sellLimits).push(id, price);
+        return id;
+    }
+
+    // Becomes a market order once the price trades through the trigger
+    public int stop(int orderSide, int qty, double trigger) {
+        int id = newOrder(STOP, orderSide, qty, Double.NaN, trigger);
+        (orderSide == BUY ? buyStops : sellStops).push(id, trigger);
+        return id;
+    }
+
+    // Becomes a limit order once the price trades through the trigger
+    public int stopLimit(int orderSide, int qty, double trigger, double price) {
+        int id = newOrder(STOP_LIMIT, orderSide, qty, price, trigger);
+        (orderSide == BUY ? buyStops : sellStops).push(id, trigger);
+        return id;
+    }
+
+    // Cancelled orders stay in their heap and are skipped when they reach the top
+    public void cancel(int order) {
+        if (status[order] == OPEN) {
+            status[order] = CANCELLED;
+        }
+    }
+
+    public boolean isOpen(int order) {
+        return status[order] == OPEN;
+    }
+
+    public boolean isFilled(int order) {
+        return status[order] == FILLED;
+    }
+
+    /**
+     * Fill every order the bar reaches
+     * @param i Bar index
+     */
+    public void processBar(int i) {
+        double open = bars.open().get(i);
+        double high = bars.high().get(i);
+        double low = bars.low().get(i);
+        currentBar = i;
+        currentPrice = open;
+
+        // Market orders at the open, in the order they were placed
+        while (market.size() > 0) {
+            int id = market.pop();
+            if (status[id] == OPEN) {
+                currentPrice = open;
+                fill(id, i, adverse(side[id], open));
+            }
+        }
+
+        // Stops whose trigger was reached; stop-limits move to the limit heaps
+        while (buyStops.size() > 0 && buyStops.topPrice() <= high) {
+            int id = buyStops.pop();
+            if (status[id] == OPEN) {
+                trigger(id, i, Math.max(start(id, i, open), stopPrice[id]));
+            }
+        }
+        while (sellStops.size() > 0 && sellStops.topPrice() >= low) {
+            int id = sellStops.pop();
+            if (status[id] == OPEN) {
+                trigger(id, i, Math.min(start(id, i, open), stopPrice[id]));
+            }
+        }
+
+        // Limits the range reached, best price first
+        while (buyLimits.size() > 0 && buyLimits.topPrice() >= low) {
+            int id = buyLimits.pop();
+            if (status[id] == OPEN) {
+                currentPrice = Math.min(start(id, i, open), limitPrice[id]);
+                fill(id, i, currentPrice);
+            }
+        }
+        while (sellLimits.size() > 0 && sellLimits.topPrice() <= high) {
+            int id = sellLimits.pop();
+            if (status[id] == OPEN) {
+                currentPrice = Math.max(start(id, i, open), limitPrice[id]);
+                fill(id, i, currentPrice);
+            }
+        }
+        currentBar = -1;
+    }
+
+    // Earliest price an order could trade at in bar i: the open, or the price when it became active
+    private double start(int id, int i, double open) {
+        return activeBar[id] == i ? activePrice[id] : open;
+    }
+
+    public double getCash() {
+        return cash;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public double getCommissions() {
+        return commissions;
+    }
+
+    // Cash plus the position at bar i's close
+    public double getWorth(int i) {
+        return cash + position * bars.close().get(i);
+    }
+
+    public BarSeries getBars() {
+        return bars;
+    }
+
+    public PerformanceStats getPerformanceStats() {
+        return stats;
+    }
+
+    private void trigger(int id, int i, double price) {
+        if (kind[id] == STOP) {
+            currentPrice = price;
+            fill(id, i, adverse(side[id], price));
+        } else {
+            // Stop-limit: rest as a limit; the limit loops below may fill it in this bar, from the trigger on
+            kind[id] = LIMIT;
+            activeBar[id] = i;
+            activePrice[id] = price;
+            (side[id] == BUY ? buyLimits : sellLimits).push(id, limitPrice[id]);
+        }
+    }
+
+    private double adverse(int orderSide, double price) {
+        return orderSide == BUY ? price * (1 + slippage) : price * (1 - slippage);
+    }
+
+    private double commission(int qty, double price) {
+        return commissionPerOrder + commissionPerShare * qty + commissionRate * qty * price;
+    }
+
+    private void fill(int id, int i, double price) {
+        int qty = quantity[id];
+        if (side[id] == BUY) {
+            // Shrink the order to what the cash covers, fees included
+            while (qty > 0 && qty * price + commission(qty, price) > cash) {
+                qty = Math.min(qty - 1, (int) ((cash - commissionPerOrder) / (price * (1 + commissionRate) + commissionPerShare)));
+            }
+        } else {
+            qty = Math.min(qty, position);
+        }
+        if (qty <= 0) {
+            status[id] = CANCELLED;
+            return;
+        }
+
+        double fee = commission(qty, price);
+        commissions += fee;
+        if (side[id] == BUY) {
+            cash -= qty * price + fee;
+            position += qty;
+            // Fees go into the cost basis so the stats' trade P&L is net
+            stats.onBuy(qty, price + fee / qty);
+        } else {
+            cash += qty * price - fee;
+            position -= qty;
+            stats.onSell(qty, price - fee / qty);
+        }
+        status[id] = FILLED;
+
+        if (journal != null) {
+            try {
+                journal.append(bars.time(i), side[id], qty, price, cash);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (fillListener != null) {
+            fillListener.onFill(this, id, i, side[id], qty, price, fee);
+        }
+    }
+
+    private int newOrder(int orderKind, int orderSide, int qty, double limit, double trigger) {
+        if (orderSide != BUY && orderSide != SELL) {
+            throw new IllegalArgumentException("Side must be BUY or SELL: " + orderSide);
+        }
+        if (qty <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive: " + qty);
+        }
+        if (orderCount == kind.length) {
+            int n = orderCount * 2;
+            kind = Arrays.copyOf(kind, n);
+            side = Arrays.copyOf(side, n);
+            quantity = Arrays.copyOf(quantity, n);
+            status = Arrays.copyOf(status, n);
+            limitPrice = Arrays.copyOf(limitPrice, n);
+            stopPrice = Arrays.copyOf(stopPrice, n);
+            activeBar = Arrays.copyOf(activeBar, n);
+            activePrice = Arrays.copyOf(activePrice, n);
+        }
+        int id = orderCount++;
+        kind[id] = orderKind;
+        side[id] = orderSide;
+        quantity[id] = qty;
+        status[id] = OPEN;
+        limitPrice[id] = limit;
+        stopPrice[id] = trigger;
+        // Placed from a FillListener mid-bar: only the rest of the bar is left to it
+        activeBar[id] = currentBar;
+        activePrice[id] = currentPrice;
+        return id;
+    }
+
+    // Binary heap of order ids by price, highest or lowest first; ties go to the older order
+    private static final class PriceHeap {
+
+        private final boolean highestFirst;
+        private int[] ids = new int[16];
+        private double[] prices = new double[16];
+        private int size;
+
+        PriceHeap(boolean highestFirst) {
+            this.highestFirst = highestFirst;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        double topPrice() {
+            return prices[0];
+        }
+
+        void push(int id, double price) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            int k = size++;
+            while (k > 0) {
+                int parent = (k - 1) >>> 1;
+                if (!before(id, price, ids[parent], prices[parent])) {
+                    break;
+                }
+                ids[k] = ids[parent];
+                prices[k] = prices[parent];
+                k = parent;
+            }
+            ids[k] = id;
+            prices[k] = price;
+        }
+
+        int pop() {
+            int top = ids[0];
+            int lastId = ids[--size];
+            double lastPrice = prices[size];
+            int k = 0;
+            while (true) {
+                int child = 2 * k + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && before(ids[child + 1], prices[child + 1], ids[child], prices[child])) {
+                    child++;
+                }
+                if (!before(ids[child], prices[child], lastId, lastPrice)) {
+                    break;
+                }
+                ids[k] = ids[child];
+                prices[k] = prices[child];
+                k = child;
+            }
+            if (size > 0) {
+                ids[k] = lastId;
+                prices[k] = lastPrice;
+            }
+            return top;
+        }
+
+        private boolean before(int a, double pa, int b, double pb) {
+            if (pa != pb) {
+                return highestFirst ? pa > pb : pa < pb;
+            }
+            return a < b;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a large CSV file on several cores.
+ * The file is split into byte ranges that start right after a newline. Each
+ * range is memory-mapped and parsed on its own thread into a local column
+ * buffer, and the buffers are then joined in file order. Only the first
+ * range skips the header line, so the row order is the same as a
+ * sequential read.
+ */
+public class ParallelCsvLoader {
+
+    // Upper bound on one range, keeps each mapping well under 2 GB
+    private static final long MAX_CHUNK = 256L << 20;
+    // Files smaller than this are not worth splitting
+    private static final long MIN_SPLIT = 1L << 20;
+
+    /**
+     * Parses the fields of one data row into a sink
+     */
+    public interface RowParser {
+        void parse(String[] fields, BarSink sink) throws IOException, ParseException;
+    }
+
+    private ParallelCsvLoader() {
+    }
+
+    /**
+     * Load a CSV file in parallel
+     * @param file The CSV file, with a header line
+     * @param threads Number of parser threads
+     * @param parser Turns the fields of a row into a bar
+     * @return All rows in file order
+     */
+    public static HeapBarSeries load(Path file, int threads, RowParser parser) throws IOException, ParseException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = split(channel, size, threads);
+
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+            try {
+                List<Future<HeapBarSeries>> parts = new ArrayList<>();
+                for (int k = 0; k + 1 < bounds.length; k++) {
+                    long start = bounds[k];
+                    long end = bounds[k + 1];
+                    boolean skipHeader = k == 0;
+                    parts.add(pool.submit(() -> parseRange(channel, start, end, skipHeader, parser)));
+                }
+
+                HeapBarSeries result = new HeapBarSeries();
+                for (Future<HeapBarSeries> part : parts) {
+                    result.addAll(part.get());
+                }
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + file, e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof ParseException) {
+                    throw (ParseException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    // Range boundaries; every one after the first sits just past a newline
+    private static long[] split(FileChannel channel, long size, int threads) throws IOException {
+        int chunks = 1;
+        if (size >= MIN_SPLIT) {
+            chunks = (int) Math.max(threads * 4L, (size + MAX_CHUNK - 1) / MAX_CHUNK);
+        }
+        long[] bounds = new long[chunks + 1];
+        bounds[chunks] = size;
+        for (int k = 1; k < chunks; k++) {
+            long pos = Math.max(bounds[k - 1], size * k / chunks);
+            bounds[k] = nextLine(channel, pos, size);
+        }
+        return bounds;
+    }
+
+    private static long nextLine(FileChannel channel, long pos, long size) throws IOException {
+        if (pos == 0) {
+            return 0;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        // Start at pos - 1 so a range that already begins a line is kept as is
+        long at = pos - 1;
+        while (at < size) {
+            buf.clear();
+            int n = channel.read(buf, at);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return at + i + 1;
+                }
+            }
+            at += n;
+        }
+        return size;
+    }
+
+    private static HeapBarSeries parseRange(FileChannel channel, long start, long end, boolean skipHeader,
+            RowParser parser) throws IOException, ParseException {
+        HeapBarSeries out = new HeapBarSeries();
+        if (end <= start) {
+            return out;
+        }
+        MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        byte[] line = new byte[256];
+        int len = 0;
+        boolean header = skipHeader;
+
+        int limit = buf.limit();
+        for (int i = 0; i <= limit; i++) {
+            byte b = i < limit ? buf.get(i) : (byte) '\n';
+            if (b != '\n') {
+                if (len == line.length) {
+                    byte[] grown = new byte[line.length * 2];
+                    System.arraycopy(line, 0, grown, 0, len);
+                    line = grown;
+                }
+                line[len++] = b;
+                continue;
+            }
+            if (len > 0 && line[len - 1] == '\r') {
+                len--;
+            }
+            if (len > 0) {
+                if (header) {
+                    header = false;
+                } else {
+                    parser.parse(new String(line, 0, len, StandardCharsets.ISO_8859_1).split(","), out);
+                }
+            }
+            len = 0;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Online performance accumulator for a single strategy run.
+ * Every statistic is updated in O(1) per bar, so a run can be summarised
+ * without keeping its equity curve in memory.
+ */
+public class PerformanceStats {
+
+    private static final double TRADING_DAYS = 252.0;
+    private static final double YEAR_MILLIS = 365.25 * BarSeries.DAY_MILLIS;
+
+    private double initialWorth;
+    private double lastWorth;
+    private long firstTime, lastTime;
+    private int bars, exposedBars;
+    // Distinct calendar days seen, to annualise intraday bars
+    private long currentDay;
+    private int days;
+
+    // Running mean and variance of per-bar returns (Welford)
+    private int returnCount;
+    private double meanReturn, m2Return, downsideSq;
+
+    // Drawdown tracking
+    private double peak;
+    private double maxDrawdown;
+    private int underwaterBars, maxDrawdownDuration;
+
+    // Trade tracking (average cost basis)
+    private int position;
+    private double costBasis;
+    private int buys, sells, wins, losses;
+    private double grossProfit, grossLoss;
+
+    // Every field starts at zero, the state reset(0) sets
+    public PerformanceStats() {
+    }
+
+    /**
+     * Clear all state and start a new run
+     * @param initialWorth Starting portfolio value
+     */
+    public void reset(double initialWorth) {
+        this.initialWorth = initialWorth;
+        lastWorth = initialWorth;
+        peak = initialWorth;
+        firstTime = lastTime = 0;
+        bars = exposedBars = 0;
+        currentDay = 0;
+        days = 0;
+        returnCount = 0;
+        meanReturn = m2Return = downsideSq = 0;
+        maxDrawdown = 0;
+        underwaterBars = maxDrawdownDuration = 0;
+        position = 0;
+        costBasis = 0;
+        buys = sells = wins = losses = 0;
+        grossProfit = grossLoss = 0;
+    }
+
+    /**
+     * Record the portfolio value at the end of a bar
+     * @param time Bar timestamp in milliseconds
+     * @param worth Portfolio value (cash + holdings)
+     * @param shares Shares held at the end of the bar
+     */
+    public void update(long time, double worth, int shares) {
+        long day = Math.floorDiv(time, BarSeries.DAY_MILLIS);
+        if (bars == 0) {
+            firstTime = time;
+        }
+        if (bars == 0 || day != currentDay) {
+            currentDay = day;
+            days++;
+        }
+        lastTime = time;
+
+        if (lastWorth != 0) {
+            double r = worth / lastWorth - 1;
+            returnCount++;
+            double delta = r - meanReturn;
+            meanReturn += delta / returnCount;
+            m2Return += delta * (r - meanReturn);
+            if (r < 0) {
+                downsideSq += r * r;
+            }
+        }
+
+        if (worth >= peak) {
+            peak = worth;
+            underwaterBars = 0;
+        } else {
+            underwaterBars++;
+            maxDrawdownDuration = Math.max(maxDrawdownDuration, underwaterBars);
+            maxDrawdown = Math.max(maxDrawdown, (peak - worth) / peak);
+        }
+
+        if (shares > 0) {
+            exposedBars++;
+        }
+        bars++;
+        lastWorth = worth;
+    }
+
+    // Record a buy fill
+    public void onBuy(int qty, double price) {
+        if (qty <= 0) {
+            return;
+        }
+        costBasis += qty * price;
+        position += qty;
+        buys++;
+    }
+
+    // Record a sell fill, realising P&L against the average cost
+    public void onSell(int qty, double price) {
+        if (qty <= 0 || position <= 0) {
+            return;
+        }
+        qty = Math.min(qty, position);
+        double avgCost = costBasis / position;
+        costBasis -= qty * avgCost;
+        position -= qty;
+        recordSell(qty * (price - avgCost));
+    }
+
+    // Count a buy whose position is tracked by the caller (multi-asset runs)
+    public void recordBuy() {
+        buys++;
+    }
+
+    // Count a sell with P&L realised by the caller (multi-asset runs)
+    public void recordSell(double pnl) {
+        sells++;
+        if (pnl > 0) {
+            wins++;
+            grossProfit += pnl;
+        } else {
+            losses++;
+            grossLoss -= pnl;
+        }
+    }
+
+    public int getBars() {
+        return bars;
+    }
+
+    public double getFinalWorth() {
+        return lastWorth;
+    }
+
+    public double getTotalReturn() {
+        return initialWorth == 0 ? 0 : lastWorth / initialWorth - 1;
+    }
+
+    public double getCagr() {
+        double years = (lastTime - firstTime) / YEAR_MILLIS;
+        if (years <= 0 || initialWorth <= 0 || lastWorth <= 0) {
+            return 0;
+        }
+        return Math.pow(lastWorth / initialWorth, 1 / years) - 1;
+    }
+
+    // Annualised standard deviation of per-bar returns
+    public double getVolatility() {
+        if (returnCount < 2) {
+            return 0;
+        }
+        return Math.sqrt(m2Return / (returnCount - 1)) * Math.sqrt(periodsPerYear());
+    }
+
+    // Annualised Sharpe ratio with a zero risk-free rate
+    public double getSharpe() {
+        double vol = getVolatility();
+        return vol == 0 ? 0 : meanReturn * periodsPerYear() / vol;
+    }
+
+    // Annualised Sortino ratio with a zero target return
+    public double getSortino() {
+        if (returnCount == 0 || downsideSq == 0) {
+            return 0;
+        }
+        double downside = Math.sqrt(downsideSq / returnCount) * Math.sqrt(periodsPerYear());
+        return meanReturn * periodsPerYear() / downside;
+    }
+
+    // Bars per year: 252 for daily bars, scaled by bars per day for intraday ones
+    private double periodsPerYear() {
+        return days == 0 ? TRADING_DAYS : TRADING_DAYS * bars / days;
+    }
+
+    // Largest peak-to-trough loss as a fraction of the peak
+    public double getMaxDrawdown() {
+        return maxDrawdown;
+    }
+
+    // Longest stretch of bars spent below a previous peak
+    public int getMaxDrawdownDuration() {
+        return maxDrawdownDuration;
+    }
+
+    // Fraction of bars with an open position
+    public double getExposure() {
+        return bars == 0 ? 0 : (double) exposedBars / bars;
+    }
+
+    public int getBuyCount() {
+        return buys;
+    }
+
+    public int getSellCount() {
+        return sells;
+    }
+
+    public double getWinRate() {
+        int closed = wins + losses;
+        return closed == 0 ? 0 : (double) wins / closed;
+    }
+
+    public double getAverageWin() {
+        return wins == 0 ? 0 : grossProfit / wins;
+    }
+
+    public double getAverageLoss() {
+        return losses == 0 ? 0 : grossLoss / losses;
+    }
+
+    public double getProfitFactor() {
+        if (grossLoss == 0) {
+            return grossProfit > 0 ? Double.POSITIVE_INFINITY : 0;
+        }
+        return grossProfit / grossLoss;
+    }
+
+    /**
+     * Human readable summary of the run
+     * @return Multi-line text, one statistic per line
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("CAGR: ").append(String.format("%.2f", getCagr() * 100)).append("%\n");
+        sb.append("Volatility: ").append(String.format("%.2f", getVolatility() * 100)).append("%\n");
+        sb.append("Sharpe: ").append(String.format("%.2f", getSharpe())).append("\n");
+        sb.append("Sortino: ").append(String.format("%.2f", getSortino())).append("\n");
+        sb.append("Max drawdown: ").append(String.format("%.2f", getMaxDrawdown() * 100)).append("% over ")
+                .append(getMaxDrawdownDuration()).append(" bars\n");
+        sb.append("Exposure: ").append(String.format("%.2f", getExposure() * 100)).append("%\n");
+        sb.append("Trades: ").append(buys).append(" buys, ").append(sells).append(" sells, win rate ")
+                .append(String.format("%.2f", getWinRate() * 100)).append("%, profit factor ")
+                .append(String.format("%.2f", getProfitFactor())).append("\n");
+        return sb.toString();
+    }
+}
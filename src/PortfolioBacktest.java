@@ -0,0 +1,241 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Backtests a strategy across many symbols that share one cash account.
+ * The symbols' bar series are merged in time order with a k-way merge: a
+ * binary heap holds one cursor per symbol, keyed by its next timestamp.
+ * No dense date-by-symbol matrix is built. Per-step state is a few
+ * primitive arrays sized by the number of symbols, and the run is one pass
+ * over all bars.
+ *
+ * Each step is one timestamp. The strategy sees every symbol with a bar at
+ * that time, then the portfolio is marked to market at the latest close of
+ * every holding.
+ */
+public class PortfolioBacktest {
+
+    /**
+     * Called once per symbol bar, in time order
+     */
+    public interface Strategy {
+        void onBar(PortfolioBacktest portfolio, int symbol, int i);
+    }
+
+    /**
+     * Decides how many shares a buy signal may take
+     */
+    public interface Allocation {
+        int buyQuantity(PortfolioBacktest portfolio, int symbol, double price);
+    }
+
+    private final List<String> symbols;
+    private final List<BarSeries> series;
+    private Allocation allocation = equalWeight();
+
+    // Account state
+    private double cash;
+    private final int[] shares;
+    private final double[] costBasis;
+    private final double[] lastClose;
+    private double holdingsValue;
+    private int openPositions;
+
+    // Merge state: heap of symbol ids ordered by the time of their next bar
+    private final int[] cursor;
+    private final int[] heap;
+    private int heapSize;
+
+    private final PerformanceStats stats = new PerformanceStats();
+
+    public PortfolioBacktest(List<String> symbols, List<BarSeries> series) {
+        if (symbols.size() != series.size()) {
+            throw new IllegalArgumentException("One bar series is needed per symbol");
+        }
+        this.symbols = new ArrayList<>(symbols);
+        this.series = new ArrayList<>(series);
+        int n = series.size();
+        shares = new int[n];
+        costBasis = new double[n];
+        lastClose = new double[n];
+        cursor = new int[n];
+        heap = new int[n];
+    }
+
+    public void setAllocation(Allocation allocation) {
+        this.allocation = allocation;
+    }
+
+    // Spend at most an equal share of the current worth on each symbol
+    public static Allocation equalWeight() {
+        return (p, symbol, price) -> {
+            double target = p.getWorth() / p.getSymbolCount();
+            double room = Math.min(p.getCash(), target - p.getShares(symbol) * price);
+            return room > 0 ? (int) (room / price) : 0;
+        };
+    }
+
+    // Spend a fixed fraction of the free cash on each buy signal
+    public static Allocation cashFraction(double fraction) {
+        return (p, symbol, price) -> (int) (p.getCash() * fraction / price);
+    }
+
+    /**
+     * Run the strategy over the merged bar streams
+     * @param balance Starting cash
+     * @param strategy Trading rules
+     * @return Final portfolio worth
+     */
+    public double run(double balance, Strategy strategy) {
+        cash = balance;
+        holdingsValue = 0;
+        openPositions = 0;
+        stats.reset(balance);
+        heapSize = 0;
+        for (int s = 0; s < series.size(); s++) {
+            shares[s] = 0;
+            costBasis[s] = 0;
+            lastClose[s] = 0;
+            cursor[s] = 0;
+            if (series.get(s).size() > 0) {
+                push(s);
+            }
+        }
+
+        while (heapSize > 0) {
+            long time = nextTime(heap[0]);
+            // Every symbol with a bar at this timestamp
+            while (heapSize > 0 && nextTime(heap[0]) == time) {
+                int s = pop();
+                int i = cursor[s];
+                double close = series.get(s).close().get(i);
+                holdingsValue += shares[s] * (close - lastClose[s]);
+                lastClose[s] = close;
+
+                strategy.onBar(this, s, i);
+
+                cursor[s]++;
+                if (cursor[s] < series.get(s).size()) {
+                    push(s);
+                }
+            }
+            stats.update(time, getWorth(), openPositions);
+        }
+        return getWorth();
+    }
+
+    // Buy using the allocation rule; returns the shares bought
+    public int buy(int symbol, double price) {
+        int qty = allocation.buyQuantity(this, symbol, price);
+        buy(symbol, qty, price);
+        return qty;
+    }
+
+    public void buy(int symbol, int qty, double price) {
+        qty = Math.min(qty, (int) (cash / price));
+        if (qty <= 0) {
+            return;
+        }
+        if (shares[symbol] == 0) {
+            openPositions++;
+        }
+        cash -= qty * price;
+        shares[symbol] += qty;
+        costBasis[symbol] += qty * price;
+        holdingsValue += qty * lastClose[symbol];
+        stats.recordBuy();
+    }
+
+    public void sell(int symbol, int qty, double price) {
+        qty = Math.min(qty, shares[symbol]);
+        if (qty <= 0) {
+            return;
+        }
+        double avgCost = costBasis[symbol] / shares[symbol];
+        cash += qty * price;
+        costBasis[symbol] -= qty * avgCost;
+        shares[symbol] -= qty;
+        holdingsValue -= qty * lastClose[symbol];
+        if (shares[symbol] == 0) {
+            openPositions--;
+            costBasis[symbol] = 0;
+        }
+        stats.recordSell(qty * (price - avgCost));
+    }
+
+    public double getCash() {
+        return cash;
+    }
+
+    public int getShares(int symbol) {
+        return shares[symbol];
+    }
+
+    // Cash plus every holding at its latest close
+    public double getWorth() {
+        return cash + holdingsValue;
+    }
+
+    public int getSymbolCount() {
+        return symbols.size();
+    }
+
+    public String getSymbol(int symbol) {
+        return symbols.get(symbol);
+    }
+
+    public BarSeries getBars(int symbol) {
+        return series.get(symbol);
+    }
+
+    public PerformanceStats getPerformanceStats() {
+        return stats;
+    }
+
+    private long nextTime(int s) {
+        return series.get(s).time(cursor[s]);
+    }
+
+    // Ties on time go to the lower symbol id, so runs are deterministic
+    private boolean before(int a, int b) {
+        long ta = nextTime(a), tb = nextTime(b);
+        return ta < tb || (ta == tb && a < b);
+    }
+
+    private void push(int s) {
+        int k = heapSize++;
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            if (!before(s, heap[parent])) {
+                break;
+            }
+            heap[k] = heap[parent];
+            k = parent;
+        }
+        heap[k] = s;
+    }
+
+    private int pop() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        int k = 0;
+        while (true) {
+            int child = 2 * k + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], last)) {
+                break;
+            }
+            heap[k] = heap[child];
+            k = child;
+        }
+        if (heapSize > 0) {
+            heap[k] = last;
+        }
+        return top;
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+/**
+ * Minimum and maximum of any index range of a column in constant time, for
+ * autoscaling a chart's y axis on every zoom or pan without scanning.
+ *
+ * The column is cut into blocks of BLOCK values. A sparse table holds the
+ * min and max of every run of 2^k whole blocks, so the whole blocks of a
+ * range are covered by two overlapping runs, and at most two partial
+ * blocks at its ends are scanned. That is 2 * BLOCK reads at worst, and
+ * about 10 MB of tables for 10 million values where a sparse table per
+ * value would need gigabytes.
+ *
+ * Built by update(), which only indexes values added since its last call,
+ * so a column that grows (a replay) is indexed as it goes; values already
+ * indexed must not change. NaN values are ignored.
+ */
+public class RangeMinMax {
+
+    private static final int SHIFT = 8;
+    // Values per block
+    public static final int BLOCK = 1 << SHIFT;
+
+    private final DoubleSeries values;
+    // min[k][b] and max[k][b]: over blocks b to b + 2^k - 1
+    private double[][] min = new double[0][], max = new double[0][];
+    // Whole blocks indexed so far
+    private int blocks;
+
+    public RangeMinMax(DoubleSeries values) {
+        this.values = values;
+    }
+
+    /**
+     * Index the whole blocks added to the column since the last update;
+     * constant time per new block
+     */
+    public void update() {
+        update(values.size());
+    }
+
+    /**
+     * Index only the first size values, for a column that is allocated in
+     * full and filled as it goes, such as the replay chart's
+     * @param size Values filled in so far; only ever grows
+     */
+    public void update(int size) {
+        int total = Math.min(size, values.size()) >> SHIFT;
+        if (total <= blocks) {
+            return;
+        }
+        int levels = 32 - Integer.numberOfLeadingZeros(total);
+        if (levels > min.length) {
+            min = Arrays.copyOf(min, levels);
+            max = Arrays.copyOf(max, levels);
+        }
+        for (int k = 0; k < levels; k++) {
+            int needed = total - (1 << k) + 1;
+            if (min[k] == null || min[k].length < needed) {
+                int capacity = Math.max(needed, min[k] == null ? 16 : min[k].length * 2);
+                min[k] = min[k] == null ? new double[capacity] : Arrays.copyOf(min[k], capacity);
+                max[k] = max[k] == null ? new double[capacity] : Arrays.copyOf(max[k], capacity);
+            }
+        }
+        for (int b = blocks; b < total; b++) {
+            double lo = Double.POSITIVE_INFINITY, hi = Double.NEGATIVE_INFINITY;
+            for (int i = b << SHIFT, end = i + BLOCK; i < end; i++) {
+                double v = values.get(i);
+                // Comparisons with NaN are false, so NaN is skipped
+                if (v < lo) {
+                    lo = v;
+                }
+                if (v > hi) {
+                    hi = v;
+                }
+            }
+            min[0][b] = lo;
+            max[0][b] = hi;
+            // Every longer run that ends with this block
+            for (int k = 1; k < levels && b - (1 << k) + 1 >= 0; k++) {
+                int start = b - (1 << k) + 1, half = start + (1 << (k - 1));
+                min[k][start] = Math.min(min[k - 1][start], min[k - 1][half]);
+                max[k][start] = Math.max(max[k - 1][start], max[k - 1][half]);
+            }
+        }
+        blocks = total;
+    }
+
+    /**
+     * Smallest value in [from, to); call update first if the column grew
+     * @return The minimum, or NaN if the range holds no values
+     */
+    public double min(int from, int to) {
+        return query(from, to, false);
+    }
+
+    /**
+     * Largest value in [from, to)
+     * @return The maximum, or NaN if the range holds no values
+     */
+    public double max(int from, int to) {
+        return query(from, to, true);
+    }
+
+    private double query(int from, int to, boolean largest) {
+        from = Math.max(0, from);
+        to = Math.min(to, values.size());
+        double best = largest ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        // Whole indexed blocks inside the range
+        int first = (from + BLOCK - 1) >> SHIFT;
+        int last = Math.min(to >> SHIFT, blocks);
+        if (first >= last) {
+            best = scan(from, to, best, largest);
+        } else {
+            best = scan(from, first << SHIFT, best, largest);
+            best = scan(last << SHIFT, to, best, largest);
+            int k = 31 - Integer.numberOfLeadingZeros(last - first);
+            int second = last - (1 << k);
+            if (largest) {
+                best = Math.max(best, Math.max(max[k][first], max[k][second]));
+            } else {
+                best = Math.min(best, Math.min(min[k][first], min[k][second]));
+            }
+        }
+        // Still the starting value: nothing but NaN in the range
+        return best == (largest ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY) ? Double.NaN : best;
+    }
+
+    private double scan(int from, int to, double best, boolean largest) {
+        for (int i = from; i < to; i++) {
+            double v = values.get(i);
+            if (largest ? v > best : v < best) {
+                best = v;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a loaded bar history as a live feed.
+ * One producer thread publishes the bars into a {@link BarRingBuffer} and
+ * every subscriber consumes them on its own thread. A slow subscriber holds
+ * the producer back rather than missing bars. Speed is a multiple of the
+ * historical bar spacing: 1 replays in real time, {@link #UNTHROTTLED} as
+ * fast as the slowest subscriber allows.
+ */
+public class ReplayFeed {
+
+    public static final double UNTHROTTLED = Double.POSITIVE_INFINITY;
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final BarSeries bars;
+    private final int capacity;
+    private final List<ReplayListener> listeners = new ArrayList<>();
+    private volatile double speed = UNTHROTTLED;
+    private volatile boolean stopped;
+
+    private BarRingBuffer ring;
+    private final List<Thread> threads = new ArrayList<>();
+
+    public ReplayFeed(BarSeries bars) {
+        this(bars, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a feed
+     * @param bars Bars to replay, in time order
+     * @param capacity Ring buffer slots, bounds how far subscribers can lag
+     */
+    public ReplayFeed(BarSeries bars, int capacity) {
+        this.bars = bars;
+        this.capacity = capacity;
+    }
+
+    // Replay speed; may be changed while running. 0 or less also means unthrottled
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    // Subscribers must be added before start
+    public void subscribe(ReplayListener listener) {
+        if (ring != null) {
+            throw new IllegalStateException("Replay already started");
+        }
+        listeners.add(listener);
+    }
+
+    public void start() {
+        if (ring != null) {
+            throw new IllegalStateException("Replay already started");
+        }
+        ring = new BarRingBuffer(capacity, listeners.size());
+        for (int c = 0; c < listeners.size(); c++) {
+            int consumer = c;
+            ReplayListener listener = listeners.get(c);
+            threads.add(newThread("replay-subscriber-" + c, () -> ring.consume(consumer, listener)));
+        }
+        threads.add(newThread("replay-producer", this::produce));
+        for (Thread t : threads) {
+            t.start();
+        }
+    }
+
+    // Wait until every subscriber has seen the last bar
+    public void await() throws InterruptedException {
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    // End the replay early; subscribers get onEnd after the bars already published
+    public void stop() {
+        stopped = true;
+        if (ring != null) {
+            ring.close();
+        }
+    }
+
+    public boolean isRunning() {
+        for (Thread t : threads) {
+            if (t.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void produce() {
+        DoubleSeries open = bars.open(), high = bars.high(), low = bars.low();
+        DoubleSeries close = bars.close(), volume = bars.volume();
+        // Pacing anchor: bar time and wall clock it was due at, reset when the speed changes
+        double pace = Double.NaN;
+        long anchorTime = 0, anchorNanos = 0;
+
+        for (int i = 0; i < bars.size() && !stopped; i++) {
+            long t = bars.time(i);
+            double s = speed;
+            boolean throttled = s > 0 && s < UNTHROTTLED;
+            if (throttled) {
+                if (s != pace) {
+                    pace = s;
+                    anchorTime = t;
+                    anchorNanos = System.nanoTime();
+                }
+                long due = anchorNanos + (long) ((t - anchorTime) * 1_000_000.0 / s);
+                long wait;
+                while (!stopped && speed == s && (wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(Math.min(wait, 50_000_000L));
+                }
+            } else {
+                pace = Double.NaN;
+            }
+            if (!ring.publish(i, t, open.get(i), high.get(i), low.get(i), close.get(i), volume.get(i))) {
+                break;
+            }
+        }
+        ring.close();
+    }
+
+    private static Thread newThread(String name, Runnable task) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
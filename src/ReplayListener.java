@@ -0,0 +1,13 @@
+/**
+ * Subscriber to a {@link ReplayFeed}.
+ * Bars arrive as primitives straight from the ring buffer, so delivering an
+ * event allocates nothing. Each subscriber is called on its own thread.
+ */
+public interface ReplayListener {
+    
+    void onBar(int index, long time, double open, double high, double low, double close, double volume);
+    
+    // Called once after the last bar, or when the replay is stopped
+    default void onEnd() {
+    }
+}
@@ -0,0 +1,291 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Disk-backed cache of finished strategy runs, so running the same strategy
+ * with the same balance on the same data again is a file read. An entry is
+ * keyed by a hash of the bar data's content, the strategy, its options, the
+ * starting balance and ENGINE_VERSION, and holds the result's statistics
+ * and its equity curve, gzipped (see StrategyResult.writeTo). Each entry is
+ * one file; reading it refreshes its modification time, and when the
+ * directory grows past its size limit the least recently used files are
+ * deleted. Entries are written to a temporary file and moved into place,
+ * so several processes can share a directory.
+ */
+public class ResultCache {
+
+    // Bump whenever a change can alter any strategy's result, so stale entries are never read
+    public static final int ENGINE_VERSION = 1;
+
+    private static final String SUFFIX = ".result";
+    // Size limit of the shared cache in megabytes, overridable with -Dstockbot.resultCacheMB
+    private static final long DEFAULT_LIMIT_MB = 256;
+    // Bars hashed per digest update
+    private static final int HASH_CHUNK = 4096;
+
+    /**
+     * Computes a result on a cache miss
+     */
+    public interface Computation {
+        StrategyResult compute();
+    }
+
+    private final Path directory;
+    private final long limit;
+    // Misses being computed, so concurrent requests for one key compute it once
+    private final ConcurrentHashMap<String, CompletableFuture<StrategyResult>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    /**
+     * Create a cache; the directory is created on the first write
+     * @param directory Where the entries are stored
+     * @param limit Most bytes of entries to keep
+     */
+    public ResultCache(Path directory, long limit) {
+        this.directory = directory;
+        this.limit = limit;
+    }
+
+    // Process-wide cache in -Dstockbot.resultCacheDir, by default ~/.stockbot/results
+    public static ResultCache shared() {
+        return Shared.CACHE;
+    }
+
+    // Created on first use, so runs that never cache never touch the file system
+    private static final class Shared {
+        static final ResultCache CACHE = new ResultCache(
+                Paths.get(System.getProperty("stockbot.resultCacheDir",
+                        Paths.get(System.getProperty("user.home"), ".stockbot", "results").toString())),
+                Long.getLong("stockbot.resultCacheMB", DEFAULT_LIMIT_MB) << 20);
+    }
+
+    /**
+     * Build a cache key
+     * @param dataHash Content hash of the bars, see dataHash
+     * @param strategy Strategy name
+     * @param options Anything else the result depends on, e.g. rules and run mode
+     * @param balance Starting balance
+     * @return Key for get
+     */
+    public static String key(String dataHash, String strategy, String options, double balance) {
+        MessageDigest digest = sha256();
+        String text = "engine " + ENGINE_VERSION + "\n" + dataHash + "\n" + strategy + "\n" + options + "\n" + balance;
+        return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * SHA-256 of every bar's time and values, independent of the file the
+     * bars came from
+     * @param bars Loaded bars
+     * @return Hex digest
+     */
+    public static String dataHash(BarSeries bars) {
+        MessageDigest digest = sha256();
+        DoubleSeries[] columns = {bars.open(), bars.high(), bars.low(), bars.close(), bars.adjClose(), bars.volume()};
+        double[] chunk = new double[HASH_CHUNK];
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_CHUNK * 8).order(ByteOrder.LITTLE_ENDIAN);
+        int size = bars.size();
+        for (int from = 0; from < size; from += HASH_CHUNK) {
+            int len = Math.min(HASH_CHUNK, size - from);
+            buffer.clear();
+            for (int i = from; i < from + len; i++) {
+                buffer.putLong(bars.time(i));
+            }
+            digest.update(buffer.flip());
+            for (DoubleSeries column : columns) {
+                column.copyTo(from, chunk, 0, len);
+                buffer.clear();
+                buffer.asDoubleBuffer().put(chunk, 0, len);
+                buffer.limit(len * 8);
+                digest.update(buffer);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Fetch a result, computing and storing it on a miss
+     * @param key Entry key, see key
+     * @param computation Runs the strategy on a miss
+     * @return The stored or newly computed result
+     */
+    public StrategyResult get(String key, Computation computation) {
+        StrategyResult cached = read(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        CompletableFuture<StrategyResult> created = new CompletableFuture<>();
+        CompletableFuture<StrategyResult> running = inFlight.putIfAbsent(key, created);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                // The computing thread failed; rethrow its exception here too
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+
+        misses.incrementAndGet();
+        try {
+            StrategyResult result = computation.compute();
+            write(key, result);
+            created.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            created.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, created);
+        }
+    }
+
+    // Delete every entry
+    public void clear() throws IOException {
+        for (Path file : entries()) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    // Stored result, or null if there is none or it can't be read
+    private StrategyResult read(String key) {
+        Path file = directory.resolve(key + SUFFIX);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            StrategyResult result = StrategyResult.readFrom(in);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return result;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // Truncated, corrupt or from an older format: drop it and recompute
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+                // Left for trim
+            }
+            return null;
+        }
+    }
+
+    // Store a result; a failed write only costs a recomputation later
+    private void write(String key, StrategyResult result) {
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+                    result.writeTo(out);
+                }
+                Files.move(temp, directory.resolve(key + SUFFIX),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            trim();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Delete least recently used entries until the directory is within its limit
+    private void trim() throws IOException {
+        List<Path> files = entries();
+        long[] sizes = new long[files.size()];
+        long[] used = new long[files.size()];
+        long total = 0;
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                sizes[i] = Files.size(files.get(i));
+                used[i] = Files.getLastModifiedTime(files.get(i)).toMillis();
+            } catch (NoSuchFileException e) {
+                // Deleted meanwhile by another process
+                used[i] = Long.MAX_VALUE;
+            }
+            total += sizes[i];
+        }
+        if (total <= limit) {
+            return;
+        }
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(used[a], used[b]));
+        for (int k = 0; k < order.length && total > limit; k++) {
+            int i = order[k];
+            Files.deleteIfExists(files.get(i));
+            total -= sizes[i];
+        }
+    }
+
+    private List<Path> entries() throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
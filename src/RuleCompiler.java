@@ -0,0 +1,607 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles trading rules such as {@code rsi > 30 && ma < open && rsi < 70}
+ * into a tree of lambdas, once, before a backtest.
+ * Evaluating a rule for a bar is then a few direct calls on the columns. No
+ * text is parsed and nothing is looked up or allocated per bar. Constant
+ * subexpressions are folded while compiling.
+ *
+ * The common shapes skip the lambdas: a comparison of an in-memory column
+ * with a constant or another column reads the columns' arrays directly,
+ * and a chain of {@code &&} or {@code ||} is one loop over its terms, so a
+ * rule made only of such comparisons runs without interface calls.
+ *
+ * Grammar, loosest binding first:
+ * <pre>
+ *   rule    := and ('||' and)*
+ *   and     := not ('&amp;&amp;' not)*
+ *   not     := '!' not | compare
+ *   compare := sum (('&lt;' | '&lt;=' | '&gt;' | '&gt;=' | '==' | '!=') sum)?
+ *   sum     := product (('+' | '-') product)*
+ *   product := unary (('*' | '/') unary)*
+ *   unary   := '-' unary | primary
+ *   primary := number | name ('(' number (',' number)* ')')? ('[' integer ']')? | '(' rule ')'
+ * </pre>
+ * A name is a column such as open or rsi; parameters pick a variant, e.g.
+ * rsi(7). {@code x[k]} is the value k bars back. Values before the first
+ * bar are NaN, so comparisons with them are false.
+ */
+public class RuleCompiler {
+
+    /**
+     * A compiled yes/no rule
+     */
+    public interface Rule {
+        boolean test(int i);
+    }
+
+    /**
+     * A compiled numeric expression
+     */
+    public interface Value {
+        double get(int i);
+    }
+
+    /**
+     * Resolves the column names a rule uses
+     */
+    public interface Columns {
+        /**
+         * @param name Column name as written in the rule, lower case
+         * @param params Parameters written after the name, empty if none
+         * @return The column, or null if the name is unknown
+         */
+        DoubleSeries column(String name, double[] params);
+    }
+
+    // Compares whole blocks of bars at once
+    private static final IndicatorKernels KERNELS = IndicatorKernels.get();
+
+    private final Columns columns;
+
+    public RuleCompiler(Columns columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Compile a rule
+     * @param source Rule text
+     * @return The compiled rule
+     * @throws IllegalArgumentException If the text is not a valid rule
+     */
+    public Rule compile(String source) {
+        Parser parser = new Parser(source);
+        Node node = parser.parseRule();
+        parser.expectEnd();
+        Rule rule = node.rule(source);
+        // A lone comparison is tested in blocks like a chain
+        if (rule instanceof Comparison) {
+            return new Comparisons(new Comparison[]{(Comparison) rule}, true);
+        }
+        return rule;
+    }
+
+    /**
+     * Compile a numeric expression such as {@code (high + low) / 2}
+     * @param source Expression text
+     * @return The compiled expression
+     */
+    public Value compileValue(String source) {
+        Parser parser = new Parser(source);
+        Node node = parser.parseRule();
+        parser.expectEnd();
+        return node.value(source);
+    }
+
+    // A parsed piece of a rule: either a number or a truth value
+    private static final class Node {
+        final Value value;
+        final Rule rule;
+        // Known at compile time
+        final boolean constant;
+        final double constantValue;
+        // An in-memory column read k bars back, or null
+        final DoubleColumn column;
+        final int back;
+        final int position;
+
+        private Node(Value value, Rule rule, boolean constant, double constantValue, DoubleColumn column, int back, int position) {
+            this.value = value;
+            this.rule = rule;
+            this.constant = constant;
+            this.constantValue = constantValue;
+            this.column = column;
+            this.back = back;
+            this.position = position;
+        }
+
+        static Node number(double v, int position) {
+            return new Node(i -> v, null, true, v, null, 0, position);
+        }
+
+        static Node value(Value value, int position) {
+            return new Node(value, null, false, 0, null, 0, position);
+        }
+
+        static Node column(Value value, DoubleColumn column, int back, int position) {
+            return new Node(value, null, false, 0, column, back, position);
+        }
+
+        static Node rule(Rule rule, int position) {
+            return new Node(null, rule, false, 0, null, 0, position);
+        }
+
+        Value value(String source) {
+            if (value == null) {
+                throw error(source, position, "Expected a number, found a condition");
+            }
+            return value;
+        }
+
+        Rule rule(String source) {
+            if (rule == null) {
+                throw error(source, position, "Expected a condition, found a number");
+            }
+            return rule;
+        }
+    }
+
+    private final class Parser {
+
+        private final String src;
+        private int pos;
+
+        Parser(String src) {
+            this.src = src;
+        }
+
+        Node parseRule() {
+            Node left = parseAnd();
+            if (!peekToken("||")) {
+                return left;
+            }
+            List<Rule> terms = new ArrayList<>();
+            terms.add(left.rule(src));
+            while (accept("||")) {
+                terms.add(parseAnd().rule(src));
+            }
+            return Node.rule(chain(terms, false), left.position);
+        }
+
+        Node parseAnd() {
+            Node left = parseNot();
+            if (!peekToken("&&")) {
+                return left;
+            }
+            List<Rule> terms = new ArrayList<>();
+            terms.add(left.rule(src));
+            while (accept("&&")) {
+                terms.add(parseNot().rule(src));
+            }
+            return Node.rule(chain(terms, true), left.position);
+        }
+
+        Node parseNot() {
+            int at = skipSpaces();
+            if (peek("!") && !peek("!=")) {
+                pos++;
+                Rule r = parseNot().rule(src);
+                return Node.rule(i -> !r.test(i), at);
+            }
+            return parseCompare();
+        }
+
+        Node parseCompare() {
+            Node left = parseSum();
+            skipSpaces();
+            String op = null;
+            for (String candidate : new String[]{"<=", ">=", "==", "!=", "<", ">"}) {
+                if (peek(candidate)) {
+                    op = candidate;
+                    break;
+                }
+            }
+            if (op == null) {
+                return left;
+            }
+            pos += op.length();
+            Node right = parseSum();
+            Value a = left.value(src);
+            Value b = right.value(src);
+            // Columns and constants are compared straight from the arrays
+            if (left.column != null && (right.column != null || right.constant)) {
+                return Node.rule(new Comparison(op, left, right), left.position);
+            }
+            if (left.constant && right.column != null) {
+                return Node.rule(new Comparison(flip(op), right, left), left.position);
+            }
+            switch (op) {
+                case "<":
+                    return Node.rule(i -> a.get(i) < b.get(i), left.position);
+                case "<=":
+                    return Node.rule(i -> a.get(i) <= b.get(i), left.position);
+                case ">":
+                    return Node.rule(i -> a.get(i) > b.get(i), left.position);
+                case ">=":
+                    return Node.rule(i -> a.get(i) >= b.get(i), left.position);
+                case "==":
+                    return Node.rule(i -> a.get(i) == b.get(i), left.position);
+                default:
+                    return Node.rule(i -> a.get(i) != b.get(i), left.position);
+            }
+        }
+
+        Node parseSum() {
+            Node left = parseProduct();
+            while (true) {
+                skipSpaces();
+                char op = pos < src.length() ? src.charAt(pos) : 0;
+                if (op != '+' && op != '-') {
+                    return left;
+                }
+                pos++;
+                left = arithmetic(left, op, parseProduct());
+            }
+        }
+
+        Node parseProduct() {
+            Node left = parseUnary();
+            while (true) {
+                skipSpaces();
+                char op = pos < src.length() ? src.charAt(pos) : 0;
+                if (op != '*' && op != '/') {
+                    return left;
+                }
+                pos++;
+                left = arithmetic(left, op, parseUnary());
+            }
+        }
+
+        Node parseUnary() {
+            int at = skipSpaces();
+            if (accept("-")) {
+                Node inner = parseUnary();
+                if (inner.constant) {
+                    return Node.number(-inner.constantValue, at);
+                }
+                Value v = inner.value(src);
+                return Node.value(i -> -v.get(i), at);
+            }
+            return parsePrimary();
+        }
+
+        Node parsePrimary() {
+            int at = skipSpaces();
+            if (at >= src.length()) {
+                throw error(src, at, "Unexpected end of rule");
+            }
+            char c = src.charAt(at);
+            if (c == '(') {
+                pos++;
+                Node inner = parseRule();
+                expect(")");
+                return inner;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                return Node.number(parseNumber(), at);
+            }
+            if (Character.isLetter(c) || c == '_') {
+                return parseColumn(at);
+            }
+            throw error(src, at, "Unexpected '" + c + "'");
+        }
+
+        Node parseColumn(int at) {
+            while (pos < src.length() && (Character.isLetterOrDigit(src.charAt(pos)) || src.charAt(pos) == '_')) {
+                pos++;
+            }
+            String name = src.substring(at, pos).toLowerCase();
+
+            List<Double> params = new ArrayList<>();
+            if (accept("(")) {
+                do {
+                    skipSpaces();
+                    params.add(parseNumber());
+                } while (accept(","));
+                expect(")");
+            }
+            double[] p = new double[params.size()];
+            for (int k = 0; k < p.length; k++) {
+                p[k] = params.get(k);
+            }
+
+            int back = 0;
+            if (accept("[")) {
+                skipSpaces();
+                int start = pos;
+                back = (int) parseNumber();
+                if (back < 0 || back != Double.parseDouble(src.substring(start, pos))) {
+                    throw error(src, start, "Lookback must be a whole number of bars");
+                }
+                expect("]");
+            }
+
+            DoubleSeries column = columns.column(name, p);
+            if (column == null) {
+                throw error(src, at, "Unknown column '" + name + "'");
+            }
+            DoubleColumn array = column instanceof DoubleColumn ? (DoubleColumn) column : null;
+            if (back == 0) {
+                return Node.column(column::get, array, 0, at);
+            }
+            int k = back;
+            return Node.column(i -> i >= k ? column.get(i - k) : Double.NaN, array, k, at);
+        }
+
+        double parseNumber() {
+            int start = pos;
+            while (pos < src.length() && (Character.isDigit(src.charAt(pos)) || src.charAt(pos) == '.')) {
+                pos++;
+            }
+            try {
+                return Double.parseDouble(src.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error(src, start, "Bad number");
+            }
+        }
+
+        // Binary arithmetic, folded when both sides are constants
+        Node arithmetic(Node left, char op, Node right) {
+            Value a = left.value(src);
+            Value b = right.value(src);
+            if (left.constant && right.constant) {
+                double x = left.constantValue, y = right.constantValue;
+                double r = op == '+' ? x + y : op == '-' ? x - y : op == '*' ? x * y : x / y;
+                return Node.number(r, left.position);
+            }
+            switch (op) {
+                case '+':
+                    return Node.value(i -> a.get(i) + b.get(i), left.position);
+                case '-':
+                    return Node.value(i -> a.get(i) - b.get(i), left.position);
+                case '*':
+                    return Node.value(i -> a.get(i) * b.get(i), left.position);
+                default:
+                    return Node.value(i -> a.get(i) / b.get(i), left.position);
+            }
+        }
+
+        int skipSpaces() {
+            while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) {
+                pos++;
+            }
+            return pos;
+        }
+
+        boolean peek(String token) {
+            return src.startsWith(token, pos);
+        }
+
+        boolean peekToken(String token) {
+            skipSpaces();
+            return peek(token);
+        }
+
+        boolean accept(String token) {
+            skipSpaces();
+            if (peek(token)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        void expect(String token) {
+            if (!accept(token)) {
+                throw error(src, pos, "Expected '" + token + "'");
+            }
+        }
+
+        void expectEnd() {
+            if (skipSpaces() < src.length()) {
+                throw error(src, pos, "Unexpected '" + src.charAt(pos) + "'");
+            }
+        }
+    }
+
+    // The same comparison with its sides swapped, e.g. 30 < rsi is rsi > 30
+    private static String flip(String op) {
+        switch (op) {
+            case "<":
+                return ">";
+            case "<=":
+                return ">=";
+            case ">":
+                return "<";
+            case ">=":
+                return "<=";
+            default:
+                return op;
+        }
+    }
+
+    // One rule for a whole && or || chain; nested chains of the same kind are spliced in
+    private static Rule chain(List<Rule> terms, boolean all) {
+        List<Rule> flat = new ArrayList<>();
+        boolean comparisons = true;
+        for (Rule term : terms) {
+            if (term instanceof Chain && ((Chain) term).all == all) {
+                flat.addAll(List.of(((Chain) term).terms));
+            } else if (term instanceof Comparisons && ((Comparisons) term).all == all) {
+                flat.addAll(List.of(((Comparisons) term).terms));
+            } else {
+                flat.add(term);
+            }
+        }
+        for (Rule term : flat) {
+            comparisons &= term instanceof Comparison;
+        }
+        if (comparisons) {
+            return new Comparisons(flat.toArray(new Comparison[0]), all);
+        }
+        return new Chain(flat.toArray(new Rule[0]), all);
+    }
+
+    /**
+     * A column compared with a constant or another column. The columns'
+     * arrays are read directly, so there is no call through Value; values
+     * before the first bar are NaN as elsewhere.
+     */
+    private static final class Comparison implements Rule {
+        // Outcomes of comparing a with b, as bits; NaN makes them unordered
+        private static final int LESS = 1, EQUAL = 2, GREATER = 4, UNORDERED = 8;
+
+        // Outcomes for which the comparison is true
+        private final int accept;
+        // The operator for IndicatorKernels.compare
+        private final int kernelOp;
+        private final double[] left, right;
+        private final int leftSize, rightSize, leftBack, rightBack;
+        // Right side when it is a constant (right == null)
+        private final double constant;
+
+        Comparison(String op, Node left, Node right) {
+            this.accept = op.equals("<") ? LESS : op.equals("<=") ? LESS | EQUAL : op.equals(">") ? GREATER
+                    : op.equals(">=") ? GREATER | EQUAL : op.equals("==") ? EQUAL : LESS | GREATER | UNORDERED;
+            this.kernelOp = op.equals("<") ? IndicatorKernels.LT : op.equals("<=") ? IndicatorKernels.LE
+                    : op.equals(">") ? IndicatorKernels.GT : op.equals(">=") ? IndicatorKernels.GE
+                    : op.equals("==") ? IndicatorKernels.EQ : IndicatorKernels.NE;
+            // Arrays are taken now: columns must not change while the rule is in use
+            this.left = left.column.array();
+            this.leftSize = left.column.size();
+            this.leftBack = left.back;
+            this.right = right.column == null ? null : right.column.array();
+            this.rightSize = right.column == null ? 0 : right.column.size();
+            this.rightBack = right.back;
+            this.constant = right.constantValue;
+        }
+
+        @Override
+        public boolean test(int i) {
+            double a = read(left, leftSize, i - leftBack);
+            double b = right == null ? constant : read(right, rightSize, i - rightBack);
+            int outcome = a < b ? LESS : a > b ? GREATER : a == b ? EQUAL : UNORDERED;
+            return (accept & outcome) != 0;
+        }
+
+        // First bar past the end of either column
+        int limit() {
+            return right == null ? leftSize + leftBack : Math.min(leftSize + leftBack, rightSize + rightBack);
+        }
+
+        /**
+         * Test len bars from the given one into out. Whole blocks go to the
+         * kernels; one whose lookback reaches before the first bar is
+         * tested bar by bar, as those bars read NaN.
+         */
+        void test(int from, int len, boolean[] out) {
+            if (from < Math.max(leftBack, right == null ? 0 : rightBack)) {
+                for (int k = 0; k < len; k++) {
+                    out[k] = test(from + k);
+                }
+            } else if (right == null) {
+                KERNELS.compare(kernelOp, left, from - leftBack, constant, out, len);
+            } else {
+                KERNELS.compare(kernelOp, left, from - leftBack, right, from - rightBack, out, len);
+            }
+        }
+
+        private static double read(double[] data, int size, int j) {
+            if (j >= size) {
+                throw outOfBounds(j, size);
+            }
+            return j < 0 ? Double.NaN : data[j];
+        }
+
+        // Kept out of read so test stays small enough for the JIT to inline
+        private static IndexOutOfBoundsException outOfBounds(int j, int size) {
+            return new IndexOutOfBoundsException("Index " + j + " out of bounds for length " + size);
+        }
+    }
+
+    /**
+     * An && or || chain of plain comparisons. When bars are tested in
+     * order, as a backtest does, a block of them is tested at once, one
+     * tight loop per comparison, and later calls read the saved results;
+     * that leaves no per-bar dispatch at all. Any other bar is tested on
+     * its own. The saved block makes a rule unsafe to share between threads.
+     */
+    private static final class Comparisons implements Rule {
+        private static final int BLOCK = 256;
+
+        private final Comparison[] terms;
+        private final boolean all;
+        // Bars up to limit can be read from every column
+        private final int limit;
+        private final boolean[] results = new boolean[BLOCK], scratch = new boolean[BLOCK];
+        // Results held for bars [blockFrom, blockTo)
+        private int blockFrom, blockTo;
+
+        Comparisons(Comparison[] terms, boolean all) {
+            this.terms = terms;
+            this.all = all;
+            int limit = Integer.MAX_VALUE;
+            for (Comparison term : terms) {
+                limit = Math.min(limit, term.limit());
+            }
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean test(int i) {
+            if (i >= blockFrom && i < blockTo) {
+                return results[i - blockFrom];
+            }
+            // Moving forward, even skipping bars as a sell rule does, or
+            // starting a new pass from an earlier bar: test a block
+            if ((i < blockFrom || i - blockTo < BLOCK) && i >= 0 && i < limit) {
+                testBlock(i);
+                return results[0];
+            }
+            for (Comparison term : terms) {
+                if (term.test(i) != all) {
+                    return !all;
+                }
+            }
+            return all;
+        }
+
+        private void testBlock(int from) {
+            int len = Math.min(BLOCK, limit - from);
+            terms[0].test(from, len, results);
+            for (int t = 1; t < terms.length; t++) {
+                terms[t].test(from, len, scratch);
+                KERNELS.merge(results, scratch, len, !all);
+            }
+            blockFrom = from;
+            blockTo = from + len;
+        }
+    }
+
+    // An && or || chain of any rules
+    private static final class Chain implements Rule {
+        private final Rule[] terms;
+        private final boolean all;
+
+        Chain(Rule[] terms, boolean all) {
+            this.terms = terms;
+            this.all = all;
+        }
+
+        @Override
+        public boolean test(int i) {
+            for (Rule term : terms) {
+                if (term.test(i) != all) {
+                    return !all;
+                }
+            }
+            return all;
+        }
+    }
+
+    private static IllegalArgumentException error(String source, int position, String message) {
+        return new IllegalArgumentException(message + " at position " + (position + 1) + " in rule: " + source);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Plain loop implementation of the indicator kernels.
+ * This is the reference the vectorized kernels are checked against.
+ */
+public class ScalarKernels implements IndicatorKernels {
+    
+    @Override
+    public void gainLoss(double[] price, int n, double[] gain, double[] loss) {
+        if (n == 0) {
+            return;
+        }
+        gain[0] = 0.0;
+        loss[0] = 0.0;
+        for (int i = 1; i < n; i++) {
+            double change = price[i] - price[i - 1];
+            if (change >= 0) {
+                gain[i] = change;
+                loss[i] = 0.0;
+            } else {
+                gain[i] = 0.0;
+                loss[i] = Math.abs(change);
+            }
+        }
+    }
+    
+    @Override
+    public void trailingMean(double[] x, int n, int window, double[] out) {
+        trailingMean(x, 0, n, window, out);
+    }
+    
+    // Shared with the vector kernels for the ragged head and tail
+    static void trailingMean(double[] x, int from, int to, int window, double[] out) {
+        for (int i = from; i < to; i++) {
+            double sum = 0;
+            int count = 0;
+            for (int j = Math.max(0, i - window + 1); j <= i; j++) {
+                sum += x[j];
+                count++;
+            }
+            out[i] = sum / count;
+        }
+    }
+    
+    @Override
+    public void trailingSum(double[] x, int n, int window, double[] out) {
+        trailingSum(x, 0, n, window, out);
+    }
+    
+    static void trailingSum(double[] x, int from, int to, int window, double[] out) {
+        for (int i = from; i < to; i++) {
+            double sum = 0;
+            for (int j = i; j > Math.max(-1, i - window); j--) {
+                sum += x[j];
+            }
+            out[i] = sum;
+        }
+    }
+    
+    @Override
+    public void equity(double cash, double shares, double[] close, int from, int to, double[] out) {
+        for (int i = from; i < to; i++) {
+            out[i - from] = cash + shares * close[i];
+        }
+    }
+    
+    @Override
+    public void equity(double[] cash, double[] shares, double[] close, int n, double[] out) {
+        for (int i = 0; i < n; i++) {
+            out[i] = cash[i] + shares[i] * close[i];
+        }
+    }
+    
+    @Override
+    public void compare(int op, double[] a, int aFrom, double c, boolean[] out, int n) {
+        compare(op, a, aFrom, null, 0, c, out, 0, n);
+    }
+    
+    @Override
+    public void compare(int op, double[] a, int aFrom, double[] b, int bFrom, boolean[] out, int n) {
+        compare(op, a, aFrom, b, bFrom, 0, out, 0, n);
+    }
+    
+    // Entries [from, to) of either compare; a null b compares with c
+    static void compare(int op, double[] a, int aFrom, double[] b, int bFrom, double c, boolean[] out, int from, int to) {
+        switch (op) {
+            case LT:
+                for (int k = from; k < to; k++) {
+                    out[k] = a[aFrom + k] < (b == null ? c : b[bFrom + k]);
+                }
+                break;
+            case LE:
+                for (int k = from; k < to; k++) {
+                    out[k] = a[aFrom + k] <= (b == null ? c : b[bFrom + k]);
+                }
+                break;
+            case GT:
+                for (int k = from; k < to; k++) {
+                    out[k] = a[aFrom + k] > (b == null ? c : b[bFrom + k]);
+                }
+                break;
+            case GE:
+                for (int k = from; k < to; k++) {
+                    out[k] = a[aFrom + k] >= (b == null ? c : b[bFrom + k]);
+                }
+                break;
+            case EQ:
+                for (int k = from; k < to; k++) {
+                    out[k] = a[aFrom + k] == (b == null ? c : b[bFrom + k]);
+                }
+                break;
+            default:
+                for (int k = from; k < to; k++) {
+                    out[k] = a[aFrom + k] != (b == null ? c : b[bFrom + k]);
+                }
+        }
+    }
+    
+    @Override
+    public void merge(boolean[] out, boolean[] x, int n, boolean any) {
+        merge(out, x, 0, n, any);
+    }
+    
+    static void merge(boolean[] out, boolean[] x, int from, int to, boolean any) {
+        if (any) {
+            for (int k = from; k < to; k++) {
+                out[k] |= x[k];
+            }
+        } else {
+            for (int k = from; k < to; k++) {
+                out[k] &= x[k];
+            }
+        }
+    }
+}
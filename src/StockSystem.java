@@ -1,11 +1,28 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public class StockSystem {
 
@@ -13,26 +30,72 @@ public class StockSystem {
     private String format1 = "M/dd/yyyy", format2 = "MM/dd/yyyy", format3 = "M/d/yyyy", 
                    format4 = "M/dd/yyyy", format5 = "yyyy-MM-dd";
     private DateTimeFormatter formDate = DateTimeFormatter.ofPattern("MM/dd/yyyy");
+    private DateTimeFormatter formDateTime = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss");
+    // Date-time formats for intraday rows
+    // No fast-path match for a date-time
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final DateTimeFormatter[] TIME_FORMATS = {
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS"),
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"),
+        DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"),
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS"),
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"),
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm"),
+        DateTimeFormatter.ofPattern("M/d/yyyy H:mm:ss"),
+        DateTimeFormatter.ofPattern("M/d/yyyy H:mm")
+    };
     
     private double balance;
     private int stock;
     private static final int N = 14;
+    // Period MainSystem.smoothy uses for the moving average
+    private static final int MA_PERIOD = 14;
+    // Names of algo1, algo2 and algo3, in that order
+    public static final String[] ALGORITHMS = {
+        "Algorithm 1: Long Game",
+        "Algorithm 2: RSI & MA Method",
+        "Algorithm 3: Using Module"
+    };
+    // Bars evaluated per equity kernel call, keeps the scratch buffer a fixed size
+    private static final int EQUITY_CHUNK = 1024;
+    // Bars per indicator kernel call, so off-heap columns are never copied whole
+    private static final int INDICATOR_CHUNK = 1 << 16;
 
     private StringBuilder str = new StringBuilder();
     private BufferedWriter log;
 
-    private ArrayList<Double> rsiValues = new ArrayList<>();
-    private ArrayList<Double> open = new ArrayList<>();
-    private ArrayList<Double> high = new ArrayList<>();
-    private ArrayList<Double> low = new ArrayList<>();
-    private ArrayList<Double> close = new ArrayList<>();
-    private ArrayList<Double> adj_close = new ArrayList<>();
-    private ArrayList<Double> vol = new ArrayList<>();
-    private ArrayList<LocalDate> date = new ArrayList<>();
-    private ArrayList<Double> ma = new ArrayList<>();
+    // Loaded bars (on-heap or a memory-mapped store) and the column views used by the algorithms
+    private BarSeries bars = new HeapBarSeries();
+    private DoubleSeries open = bars.open();
+    private DoubleSeries high = bars.high();
+    private DoubleSeries low = bars.low();
+    private DoubleSeries close = bars.close();
+    private DoubleSeries adj_close = bars.adjClose();
+    private DoubleSeries vol = bars.volume();
+    // MA and RSI columns, fetched from the indicator cache on first use
+    private DoubleSeries rsiValues;
+    private DoubleSeries ma;
+    private IndicatorCache indicatorCache = IndicatorCache.shared();
     
     // Performance tracking for the chart
-    private ArrayList<Double> performanceData = new ArrayList<>();
+    private DoubleColumn performanceData = new DoubleColumn();
+    private PerformanceStats stats = new PerformanceStats();
+    // When set, runs only feed the stats accumulator and keep no equity curve or log
+    private boolean summaryOnly = false;
+    // Bar length to resample to while loading, in milliseconds; 0 keeps the file's own bars
+    private long timeframe = 0;
+    // Parser threads for loadData; 1 reads the file sequentially
+    private int loadThreads = 1;
+    // Receives every fill of the single-asset algorithms when set
+    private TradeJournal.Writer journal;
+    // Whether runs write their Activity_log CSV files
+    private boolean activityLogs = true;
+    // Trading costs for runs through the order engine
+    private double slippage, commissionPerOrder, commissionPerShare, commissionRate;
+    // Stores the analyze methods' results on disk when set
+    private ResultCache resultCache;
+    // Content hash of the loaded bars, computed on first use by the result cache
+    private volatile String dataHash;
 
     private MainSystem mainSystem;
     
@@ -48,118 +111,300 @@ public class StockSystem {
         this.balance = balance;
     }
     
+    public void setSummaryOnly(boolean summaryOnly) {
+        this.summaryOnly = summaryOnly;
+    }
+    
+    public void setTimeframe(long timeframe) {
+        this.timeframe = timeframe;
+    }
+    
+    public void setLoadThreads(int loadThreads) {
+        this.loadThreads = loadThreads;
+    }
+    
+    public void setActivityLogs(boolean activityLogs) {
+        this.activityLogs = activityLogs;
+    }
+    
+    /**
+     * Trading costs applied by ruleOrderAlgo
+     * @param slippage Adverse move on market and stop fills, as a fraction of the price
+     * @param perOrder Fixed fee per fill
+     * @param perShare Fee per share
+     * @param rate Fee as a fraction of the traded value
+     */
+    public void setExecutionCosts(double slippage, double perOrder, double perShare, double rate) {
+        this.slippage = slippage;
+        this.commissionPerOrder = perOrder;
+        this.commissionPerShare = perShare;
+        this.commissionRate = rate;
+    }
+    
+    // Cache for analyze, analyzeRules and analyzeRuleOrders; null turns caching off
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+    
+    // SHA-256 of the loaded bars' contents, computed once per load
+    public String getDataHash() {
+        String hash = dataHash;
+        if (hash == null) {
+            hash = ResultCache.dataHash(bars);
+            dataHash = hash;
+        }
+        return hash;
+    }
+    
+    // Journal to append the algorithms' fills to, one journal run per backtest; null turns journaling off
+    public void setTradeJournal(TradeJournal.Writer journal) {
+        this.journal = journal;
+    }
+    
     public void loadData(String inputFile, String outputFile) throws IOException, ParseException {
         // Clear previous data
         clearData();
         
         // Read the CSV file
+        HeapBarSeries loaded;
+        // Compressed files can't be split by byte range, so they are always streamed
+        if (loadThreads > 1 && !mainSystem.isGzip(inputFile)) {
+            loaded = ParallelCsvLoader.load(Paths.get(inputFile), loadThreads, this::addRow);
+            if (timeframe > 0) {
+                loaded = BarResampler.resample(loaded, timeframe);
+            }
+        } else {
+            loaded = readBars(inputFile);
+        }
+
+        // Generate MA and RSI values
+        setBars(loaded);
+
+        // Write results to output file, unless no export was asked for
+        if (outputFile != null && !outputFile.trim().isEmpty()) {
+            exportIndicators(outputFile);
+        }
+    }
+    
+    /**
+     * Write the Date,RSI,Open,MA export for the loaded data.
+     * Rows are streamed out in chunks, so the export never sits in memory whole.
+     * @param outputFile The CSV file to create
+     */
+    public void exportIndicators(String outputFile) throws IOException {
+        try (IndicatorCsvWriter writer = new IndicatorCsvWriter(new FileOutputStream(outputFile))) {
+            writer.writeHeader();
+            DoubleSeries rsiValues = rsi(), ma = movingAverage();
+            for (int i = 0; i < rsiValues.size(); i++) {
+                writer.writeRow(bars.time(i), rsiValues.get(i), open.get(i), ma.get(i));
+            }
+        }
+    }
+    
+    // Sequential read of the CSV file, resampling on the fly if a timeframe is set
+    private HeapBarSeries readBars(String inputFile) throws IOException, ParseException {
         BufferedReader br = mainSystem.readFile(inputFile);
-        BufferedWriter write = mainSystem.writeFile(outputFile);
         boolean header = false;
+        HeapBarSeries loaded = new HeapBarSeries();
+        BarResampler resampler = timeframe > 0 ? new BarResampler(timeframe, loaded) : null;
 
         String line;
         // Store respective values
         while ((line = br.readLine()) != null) {
+            // Blank lines are skipped, as in the parallel loader
+            if (line.isEmpty()) {
+                continue;
+            }
             String[] list = line.split(",");
             if (!header) {
                 header = true;
                 continue;
             }
 
-            date.add(add_Date(list[0]));
-            open.add(Double.parseDouble(list[1].trim()));
-            high.add(Double.parseDouble(list[2].trim()));
-            low.add(Double.parseDouble(list[3].trim()));
-            close.add(Double.parseDouble(list[4].trim()));
-            adj_close.add(Double.parseDouble(list[5].trim()));
-            vol.add(Double.parseDouble(list[6].trim()));
+            addRow(list, resampler != null ? resampler : loaded);
         }
-
-        // Generate MA and RSI values
-        ma = mainSystem.smoothy(open);
-        rsiValues = getRSI(open, N);
-
-        // Write results to output file
-        StringBuilder head_line = new StringBuilder();
-        head_line.append("Date").append(",").append("RSI values").append(",").append("Open price").append(",")
-                .append("Moving Average");
-
-        str.append(head_line).append("\n");
-        for (int i = 0; i < rsiValues.size(); i++) {
-            Double rsi_val = mainSystem.format(rsiValues.get(i));
-            Double ma_val = mainSystem.format(ma.get(i));
-            str.append(date.get(i)).append(",").append(rsi_val).append(",").append(open.get(i)).append(",")
-                    .append(ma_val).append("\n");
+        if (resampler != null) {
+            resampler.flush();
         }
-
-        write.write(str.toString());
-        write.close();
         br.close();
+        return loaded;
+    }
+    
+    /**
+     * Use an already loaded bar history, on-heap or off-heap. Its MA and RSI
+     * columns are computed on first use, in the same kind of storage.
+     * @param bars The bar history
+     */
+    public void setBars(BarSeries bars) {
+        this.bars = bars;
+        open = bars.open();
+        high = bars.high();
+        low = bars.low();
+        close = bars.close();
+        adj_close = bars.adjClose();
+        vol = bars.volume();
+        performanceData.clear();
+        ma = null;
+        rsiValues = null;
+        dataHash = null;
+    }
+    
+    public void setIndicatorCache(IndicatorCache indicatorCache) {
+        this.indicatorCache = indicatorCache;
+        ma = null;
+        rsiValues = null;
+    }
+    
+    // Moving average of the open price, memoized per dataset
+    private DoubleSeries movingAverage() {
+        if (ma == null) {
+            ma = indicatorCache.get(bars, "SMA", new double[]{MA_PERIOD}, () -> {
+                DoubleSeries out = bars.newColumn(bars.size());
+                mainSystem.smoothy(open, out);
+                return out;
+            });
+        }
+        return ma;
+    }
+    
+    // RSI of the open price, memoized per dataset and period
+    private DoubleSeries rsi(int n) {
+        return indicatorCache.get(bars, "RSI", new double[]{n}, () -> {
+            DoubleSeries out = bars.newColumn(bars.size());
+            computeRSI(open, n, out);
+            return out;
+        });
+    }
+    
+    private DoubleSeries rsi() {
+        if (rsiValues == null) {
+            rsiValues = rsi(N);
+        }
+        return rsiValues;
+    }
+    
+    /**
+     * Convert a CSV file into an off-heap bar store without holding it in memory
+     * @param inputFile CSV file in the same format as loadData
+     * @param storeFile Bar store file to create
+     */
+    public void convertToBarStore(String inputFile, String storeFile) throws IOException, ParseException {
+        BufferedReader br = mainSystem.readFile(inputFile);
+        boolean header = false;
+
+        try (OffHeapBarStore.Writer writer = new OffHeapBarStore.Writer(Paths.get(storeFile))) {
+            BarResampler resampler = timeframe > 0 ? new BarResampler(timeframe, writer) : null;
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] list = line.split(",");
+                if (!header) {
+                    header = true;
+                    continue;
+                }
+                addRow(list, resampler != null ? resampler : writer);
+            }
+            if (resampler != null) {
+                resampler.flush();
+            }
+        } finally {
+            br.close();
+        }
+    }
+    
+    /**
+     * Resample the loaded bars to a coarser timeframe and recompute the indicators
+     * @param interval Bar length in milliseconds, e.g. BarResampler.FIVE_MINUTES
+     */
+    public void resample(long interval) {
+        setBars(BarResampler.resample(bars, interval));
+    }
+    
+    // Parse one CSV row: Date,Open,High,Low,Close,Adj Close,Volume bars or Time,Price,Size ticks
+    private void addRow(String[] list, BarSink sink) throws IOException, ParseException {
+        long time = add_Time(list[0]);
+        if (list.length == 3) {
+            double price = Double.parseDouble(list[1].trim());
+            sink.add(time, price, price, price, price, price, Double.parseDouble(list[2].trim()));
+            return;
+        }
+        sink.add(time, Double.parseDouble(list[1].trim()), Double.parseDouble(list[2].trim()),
+                Double.parseDouble(list[3].trim()), Double.parseDouble(list[4].trim()),
+                Double.parseDouble(list[5].trim()), Double.parseDouble(list[6].trim()));
     }
     
     private void clearData() {
-        rsiValues.clear();
-        open.clear();
-        high.clear();
-        low.clear();
-        close.clear();
-        adj_close.clear();
-        vol.clear();
-        date.clear();
-        ma.clear();
+        bars = new HeapBarSeries();
+        open = bars.open();
+        high = bars.high();
+        low = bars.low();
+        close = bars.close();
+        adj_close = bars.adjClose();
+        vol = bars.volume();
+        rsiValues = null;
+        ma = null;
+        dataHash = null;
         performanceData.clear();
         str = new StringBuilder();
     }
     
     // Algorithm 1: Long-term holding strategy
     public double algo1() {
-        log = mainSystem.writeFile("Activity_log_Algorithm_1_TheLongGame.csv");
         str = new StringBuilder();
         double bal = balance, worth;
-        LocalDate buy_date = date.get(0);
+        LocalDate buy_date = bars.date(0);
         LocalDate[] sell_date = new LocalDate[4];
         double[] price = new double[4];
         price[0] = open.get(0);
 
         // Clear and initialize performance data
         performanceData.clear();
+        stats.reset(balance);
 
         // Header
-        str.append("Date").append(",").append("Networth").append("\n");
+        if (!summaryOnly) {
+            str.append("Date").append(",").append("Networth").append("\n");
+        }
 
         // To test for 1-4 years of patient
         for (int i = 0; i < 4; i++) {
             sell_date[i] = buy_date.plusYears(i + 1);
         }
+        // Each sell date as the range of epoch days isWithinAWeek accepts, so bars compare as plain numbers
+        long[] sellFrom = new long[4], sellTo = new long[4];
+        for (int k = 0; k < 4; k++) {
+            LocalDate date = sell_date[k];
+            sellFrom[k] = Math.max(date.withDayOfMonth(1).toEpochDay(), date.toEpochDay() - 3);
+            sellTo[k] = Math.min(date.withDayOfMonth(date.lengthOfMonth()).toEpochDay(), date.toEpochDay() + 3);
+        }
 
         int buyShare = (int) (bal / price[0]);
         bal -= buyShare * open.get(0);
+        onBuy(0, buyShare, open.get(0), bal);
 
-        for (int i = 0; i < date.size(); i++) {
-            if (isWithinAWeek(sell_date[0], date.get(i))) {
-                price[0] = open.get(i);
-            }
-            if (isWithinAWeek(sell_date[1], date.get(i))) {
-                price[1] = open.get(i);
-            }
-            if (isWithinAWeek(sell_date[2], date.get(i))) {
-                price[2] = open.get(i);
+        // The position never changes, so the worth can be evaluated in chunks
+        IndicatorKernels kernels = IndicatorKernels.get();
+        double[] closeChunk = new double[EQUITY_CHUNK];
+        double[] worthChunk = new double[EQUITY_CHUNK];
+
+        for (int i = 0; i < bars.size(); i++) {
+            if (i % EQUITY_CHUNK == 0) {
+                int len = Math.min(EQUITY_CHUNK, bars.size() - i);
+                close.copyTo(i, closeChunk, 0, len);
+                kernels.equity(bal, buyShare, closeChunk, 0, len, worthChunk);
             }
-            if (isWithinAWeek(sell_date[3], date.get(i))) {
-                price[3] = open.get(i);
+            // Calendar day of the bar, so intraday bars are matched by their day
+            long day = Math.floorDiv(bars.time(i), BarSeries.DAY_MILLIS);
+            for (int k = 0; k < 4; k++) {
+                if (day >= sellFrom[k] && day <= sellTo[k]) {
+                    price[k] = open.get(i);
+                }
             }
 
-            worth = bal + (buyShare * close.get(i));
-            performanceData.add(worth);
-            str.append(date.get(i).format(formDate)).append(",").append(mainSystem.format(worth)).append("\n");
+            worth = worthChunk[i % EQUITY_CHUNK];
+            recordWorth(i, worth, buyShare);
         }
 
-        try {
-            log.write(str.toString());
-            log.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        writeLog("Activity_log_Algorithm_1_TheLongGame.csv");
         
         // Return final worth
         return bal + (buyShare * close.get(close.size() - 1));
@@ -167,8 +412,8 @@ public class StockSystem {
     
     // Algorithm 2: RSI and MA based trading
     public double algo2() {
-        log = mainSystem.writeFile("Activity_log_Algorithm_2_RSI_MA_Method.csv");
         str = new StringBuilder();
+        DoubleSeries rsiValues = rsi(), ma = movingAverage();
         double bal = balance, worth = 0;
         int buyShare = 0;
         int val;
@@ -176,11 +421,14 @@ public class StockSystem {
 
         // Clear and initialize performance data
         performanceData.clear();
+        stats.reset(balance);
 
         // Header
-        str.append("Date").append(",").append("Networth").append("\n");
+        if (!summaryOnly) {
+            str.append("Date").append(",").append("Networth").append("\n");
+        }
 
-        for (int i = 0; i < date.size(); i++) {
+        for (int i = 0; i < bars.size(); i++) {
             // Buy if the rsi value is going above 30 and the MA is lower than the current price
             if (!stop) {
                 if (rsiValues.get(i) > 30 && ma.get(i) < open.get(i) && rsiValues.get(i) < 70) {
@@ -189,6 +437,7 @@ public class StockSystem {
                         if (val > 0) {
                             bal -= val * open.get(i);
                             buyShare += val;
+                            onBuy(i, val, open.get(i), bal);
                         }
                     }
                 }
@@ -199,6 +448,7 @@ public class StockSystem {
                         if (val > 0) {
                             buyShare -= val;
                             bal += val * open.get(i);
+                            onSell(i, val, open.get(i), bal);
                         }
                     }
                 }
@@ -206,7 +456,7 @@ public class StockSystem {
 
             // Calculate current portfolio worth
             worth = bal + (buyShare * close.get(i));
-            performanceData.add(worth);
+            recordWorth(i, worth, buyShare);
             
             // Check if we should stop (doubled money and RSI trend is changing)
             if (balance * 2 <= worth) {
@@ -214,48 +464,363 @@ public class StockSystem {
                     stop = true;
                 }
             }
-
-            str.append(date.get(i).format(formDate)).append(",").append(mainSystem.format(worth)).append("\n");
         }
 
-        try {
-            log.write(str.toString());
-            log.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        writeLog("Activity_log_Algorithm_2_RSI_MA_Method.csv");
 
         // Calculate final worth
         worth = bal;
         if (buyShare > 0) {
             worth += buyShare * close.get(close.size() - 1);
         }
-        
+
         return worth;
     }
+
+    /**
+     * Algorithm 2 driven by a replay feed instead of the precomputed columns.
+     * The strategy keeps its own incremental MA and RSI and sees one bar at a
+     * time, like it would on a live feed; the result matches algo2().
+     * @param speed Replay speed, a multiple of real time or ReplayFeed.UNTHROTTLED
+     * @param observers Extra subscribers, e.g. a chart following the replay
+     * @return The started feed; call await() before reading the results
+     */
+    public ReplayFeed replayAlgo2(double speed, ReplayListener... observers) {
+        str = new StringBuilder();
+        performanceData.clear();
+        stats.reset(balance);
+        if (!summaryOnly) {
+            str.append("Date").append(",").append("Networth").append("\n");
+        }
+
+        ReplayFeed feed = new ReplayFeed(bars);
+        feed.setSpeed(speed);
+        feed.subscribe(new ReplayListener() {
+            private final IncrementalIndicators ind = new IncrementalIndicators(N);
+            private double bal = balance, worth = 0, lastClose = 0;
+            private int buyShare = 0;
+            private boolean stop = false;
+
+            @Override
+            public void onBar(int i, long time, double o, double h, double l, double c, double v) {
+                ind.update(o);
+                double rsi = ind.getRSI();
+                int val;
+                if (!stop) {
+                    if (rsi > 30 && ind.getMA() < o && rsi < 70) {
+                        if (bal > o) {
+                            val = tradeEvaluator(1, i, bal);
+                            if (val > 0) {
+                                bal -= val * o;
+                                buyShare += val;
+                                onBuy(i, val, o, bal);
+                            }
+                        }
+                    } else if (rsi < 70 && (i > 0 && ind.getRSI(1) > 70) && ind.getMA() > o) {
+                        if (buyShare > 0) {
+                            val = tradeEvaluator(2, i, (double) buyShare);
+                            if (val > 0) {
+                                buyShare -= val;
+                                bal += val * o;
+                                onSell(i, val, o, bal);
+                            }
+                        }
+                    }
+                }
+
+                worth = bal + (buyShare * c);
+                lastClose = c;
+                recordWorth(i, worth, buyShare);
+
+                if (balance * 2 <= worth) {
+                    if (i > 1 && !(rsi > ind.getRSI(1) && ind.getRSI(1) > ind.getRSI(2))) {
+                        stop = true;
+                    }
+                }
+            }
+
+            @Override
+            public void onEnd() {
+                writeLog("Activity_log_Algorithm_2_RSI_MA_Method.csv");
+            }
+        });
+        for (ReplayListener observer : observers) {
+            feed.subscribe(observer);
+        }
+        feed.start();
+        return feed;
+    }
+
+    /**
+     * Trade on user-written rules, e.g. buy "rsi > 30 && ma < open && rsi < 70"
+     * and sell "rsi < 70 && rsi[1] > 70 && ma > open". Both rules are compiled
+     * once before the run (see RuleCompiler). Positions are sized like
+     * algorithm 2: buy with 30% of the cash, sell half the shares.
+     * Besides the price columns, rsi(n) and ma, rules can use ema(n), atr(n),
+     * macd, macd_signal and macd_hist (fast, slow, signal), bb_upper,
+     * bb_middle and bb_lower (period, width), stoch_k(n) and stoch_d(n, smooth);
+     * parameters left off take the usual defaults.
+     * @param buyRule Condition to buy on
+     * @param sellRule Condition to sell on, checked when the buy rule is false
+     * @return Final worth
+     */
+    public double ruleAlgo(String buyRule, String sellRule) {
+        RuleCompiler compiler = new RuleCompiler(this::ruleColumn);
+        RuleCompiler.Rule buy = compiler.compile(buyRule);
+        RuleCompiler.Rule sell = compiler.compile(sellRule);
+
+        str = new StringBuilder();
+        double bal = balance, worth = 0;
+        int buyShare = 0;
+        int val;
+
+        performanceData.clear();
+        stats.reset(balance);
+        if (!summaryOnly) {
+            str.append("Date").append(",").append("Networth").append("\n");
+        }
+
+        for (int i = 0; i < bars.size(); i++) {
+            if (buy.test(i)) {
+                if (bal > open.get(i)) {
+                    val = tradeEvaluator(1, i, bal);
+                    if (val > 0) {
+                        bal -= val * open.get(i);
+                        buyShare += val;
+                        onBuy(i, val, open.get(i), bal);
+                    }
+                }
+            } else if (sell.test(i)) {
+                if (buyShare > 0) {
+                    val = tradeEvaluator(2, i, (double) buyShare);
+                    if (val > 0) {
+                        buyShare -= val;
+                        bal += val * open.get(i);
+                        onSell(i, val, open.get(i), bal);
+                    }
+                }
+            }
+
+            worth = bal + (buyShare * close.get(i));
+            recordWorth(i, worth, buyShare);
+        }
+
+        writeLog("Activity_log_Custom_Rules.csv");
+        return worth;
+    }
+    
+    /**
+     * Trade on rules through the order engine instead of at the open. The
+     * rules are checked after each bar closes and entries are market orders
+     * for the next open, sized like ruleAlgo. Each entry gets a stop below
+     * and a profit target above its fill price; these fill inside later
+     * bars' high/low range, and when one fills the other is cancelled. The
+     * sell rule cancels the exits and sells everything at the next open.
+     * Costs come from setExecutionCosts.
+     * @param buyRule Condition to buy on
+     * @param sellRule Condition to sell on, checked when the buy rule is false
+     * @param stopLoss Stop distance below the entry, as a fraction; 0 for no stop
+     * @param takeProfit Target distance above the entry, as a fraction; 0 for no target
+     * @return Final worth
+     */
+    public double ruleOrderAlgo(String buyRule, String sellRule, double stopLoss, double takeProfit) {
+        RuleCompiler compiler = new RuleCompiler(this::ruleColumn);
+        RuleCompiler.Rule buy = compiler.compile(buyRule);
+        RuleCompiler.Rule sell = compiler.compile(sellRule);
+
+        OrderEngine engine = new OrderEngine(bars);
+        engine.setSlippage(slippage);
+        engine.setCommission(commissionPerOrder, commissionPerShare, commissionRate);
+        engine.setTradeJournal(journal);
+        // Each exit order's partner in its stop/target pair
+        Map<Integer, Integer> exits = new HashMap<>();
+        engine.setFillListener((e, order, i, side, qty, price, commission) -> {
+            if (side == OrderEngine.BUY) {
+                int stop = stopLoss > 0 ? e.stop(OrderEngine.SELL, qty, price * (1 - stopLoss)) : -1;
+                int target = takeProfit > 0 ? e.limit(OrderEngine.SELL, qty, price * (1 + takeProfit)) : -1;
+                exits.put(stop, target);
+                exits.put(target, stop);
+                exits.remove(-1);
+            } else {
+                Integer partner = exits.remove(order);
+                if (partner != null && exits.remove(partner) != null) {
+                    e.cancel(partner);
+                }
+            }
+        });
+
+        str = new StringBuilder();
+        performanceData.clear();
+        if (!summaryOnly) {
+            str.append("Date").append(",").append("Networth").append("\n");
+        }
+
+        double worth = engine.run(balance, (e, i) -> {
+            if (buy.test(i)) {
+                int shares = (int) (e.getCash() * 0.3 / close.get(i));
+                if (shares > 0) {
+                    e.market(OrderEngine.BUY, shares);
+                }
+            } else if (sell.test(i) && e.getPosition() > 0) {
+                for (int order : exits.keySet()) {
+                    e.cancel(order);
+                }
+                exits.clear();
+                e.market(OrderEngine.SELL, e.getPosition());
+            }
+            if (!summaryOnly) {
+                double value = e.getWorth(i);
+                performanceData.add(value);
+                if (activityLogs) {
+                    str.append(logStamp(bars.time(i))).append(",").append(mainSystem.format(value)).append("\n");
+                }
+            }
+        });
+        stats = engine.getPerformanceStats();
+
+        writeLog("Activity_log_Custom_Rules_Orders.csv");
+        return worth;
+    }
+    
+    // Column names a rule may use
+    private DoubleSeries ruleColumn(String name, double[] params) {
+        switch (name) {
+            case "rsi":
+                if (params.length == 0) {
+                    return rsi();
+                }
+                if (params.length != 1 || params[0] < 1 || params[0] != (int) params[0]) {
+                    throw new IllegalArgumentException("rsi takes one whole period, e.g. rsi(14)");
+                }
+                return rsi((int) params[0]);
+            case "ma":
+            case "sma":
+                return noParams(name, params, movingAverage());
+            case "open":
+                return noParams(name, params, open);
+            case "high":
+                return noParams(name, params, high);
+            case "low":
+                return noParams(name, params, low);
+            case "close":
+                return noParams(name, params, close);
+            case "adj_close":
+            case "adjclose":
+                return noParams(name, params, adj_close);
+            case "volume":
+            case "vol":
+                return noParams(name, params, vol);
+            case "ema": {
+                double[] p = params(name, params, 1, 14);
+                return indicator(FusedIndicators.Indicator.EMA, FusedIndicators.Output.EMA, p,
+                        f -> f.setEmaPeriod((int) p[0]));
+            }
+            case "macd":
+            case "macd_signal":
+            case "macd_hist": {
+                double[] p = params(name, params, 3, 12, 26, 9);
+                FusedIndicators.Output output = name.equals("macd") ? FusedIndicators.Output.MACD
+                        : name.equals("macd_signal") ? FusedIndicators.Output.MACD_SIGNAL : FusedIndicators.Output.MACD_HIST;
+                return indicator(FusedIndicators.Indicator.MACD, output, p,
+                        f -> f.setMacd((int) p[0], (int) p[1], (int) p[2]));
+            }
+            case "atr": {
+                double[] p = params(name, params, 1, 14);
+                return indicator(FusedIndicators.Indicator.ATR, FusedIndicators.Output.ATR, p,
+                        f -> f.setAtrPeriod((int) p[0]));
+            }
+            case "bb_upper":
+            case "bb_middle":
+            case "bb_lower": {
+                double[] p = params(name, params, 1, 20, 2);
+                FusedIndicators.Output output = name.equals("bb_upper") ? FusedIndicators.Output.BB_UPPER
+                        : name.equals("bb_middle") ? FusedIndicators.Output.BB_MIDDLE : FusedIndicators.Output.BB_LOWER;
+                return indicator(FusedIndicators.Indicator.BOLLINGER, output, p,
+                        f -> f.setBollinger((int) p[0], p[1]));
+            }
+            case "stoch_k":
+            case "stoch_d": {
+                double[] p = params(name, params, 2, 14, 3);
+                FusedIndicators.Output output = name.equals("stoch_k") ? FusedIndicators.Output.STOCH_K : FusedIndicators.Output.STOCH_D;
+                return indicator(FusedIndicators.Indicator.STOCHASTIC, output, p,
+                        f -> f.setStochastic((int) p[0], (int) p[1]));
+            }
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * A column from FusedIndicators over the high, low and close prices,
+     * memoized per dataset, line and parameters like rsi(n)
+     * @param params Every parameter, defaults included, so ema and ema(14) share an entry
+     * @param setup Applies the parameters; throws IllegalArgumentException on bad ones
+     */
+    private DoubleSeries indicator(FusedIndicators.Indicator indicator, FusedIndicators.Output output,
+            double[] params, Consumer<FusedIndicators> setup) {
+        FusedIndicators indicators = new FusedIndicators(EnumSet.of(indicator), 0);
+        // Check the parameters before anything is cached
+        setup.accept(indicators);
+        return indicatorCache.get(bars, output.name(), params, () -> {
+            indicators.compute(high, low, close);
+            DoubleSeries out = bars.newColumn(bars.size());
+            out.copyFrom(indicators.output(output), 0, 0, bars.size());
+            return out;
+        });
+    }
+    
+    /**
+     * Rule parameters with defaults for any left off the end
+     * @param periods How many leading parameters are periods, which must be whole
+     * @param defaults Default of each parameter
+     */
+    private static double[] params(String name, double[] params, int periods, double... defaults) {
+        if (params.length > defaults.length) {
+            throw new IllegalArgumentException(name + " takes at most " + defaults.length + " parameters");
+        }
+        double[] all = defaults.clone();
+        System.arraycopy(params, 0, all, 0, params.length);
+        for (int k = 0; k < periods; k++) {
+            if (all[k] != (int) all[k]) {
+                throw new IllegalArgumentException(name + " periods must be whole numbers");
+            }
+        }
+        return all;
+    }
+    
+    private static DoubleSeries noParams(String name, double[] params, DoubleSeries column) {
+        if (params.length > 0) {
+            throw new IllegalArgumentException(name + " takes no parameters");
+        }
+        return column;
+    }
     
     // Algorithm 3: Aggressive buy/sell based on price and RSI
     public double algo3() {
-        log = mainSystem.writeFile("Activity_log_Algorithm_3_UsingModule.csv");
         str = new StringBuilder();
+        DoubleSeries rsiValues = rsi();
         double bal = balance, worth = 0;
         double buyPrice = open.get(0);
         int bought, buyShare = 0;
 
         // Clear and initialize performance data
         performanceData.clear();
+        stats.reset(balance);
 
         // Initial purchase
         bought = (int) (bal / buyPrice);
         buyShare += bought;
         bal -= (bought * buyPrice);
+        onBuy(0, bought, buyPrice, bal);
 
         boolean stop = false;
         
         // Header
-        str.append("Date").append(",").append("Networth").append("\n");
+        if (!summaryOnly) {
+            str.append("Date").append(",").append("Networth").append("\n");
+        }
 
-        for (int i = 1; i < date.size(); i++) {
+        for (int i = 1; i < bars.size(); i++) {
             // Buy strategy
             if (!stop) {
                 if (open.get(i) < buyPrice || (rsiValues.get(i) > 30 && rsiValues.get(i) < 70)) {
@@ -263,17 +828,19 @@ public class StockSystem {
                     buyShare += bought;
                     buyPrice = open.get(i);
                     bal -= bought * buyPrice;
+                    onBuy(i, bought, buyPrice, bal);
                 }
                 // Sell strategy
                 else if (open.get(i) > buyPrice || rsiValues.get(i) > 70) {
                     bal += buyShare * open.get(i);
+                    onSell(i, buyShare, open.get(i), bal);
                     buyShare = 0;
                 }
             }
             
             // Calculate current portfolio worth
             worth = bal + (buyShare * close.get(i));
-            performanceData.add(worth);
+            recordWorth(i, worth, buyShare);
             
             // Check if we should stop (doubled money and RSI trend is changing)
             if (balance * 2 <= worth) {
@@ -281,16 +848,9 @@ public class StockSystem {
                     stop = true;
                 }
             }
-
-            str.append(date.get(i).format(formDate)).append(",").append(mainSystem.format(worth)).append("\n");
         }
 
-        try {
-            log.write(str.toString());
-            log.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        writeLog("Activity_log_Algorithm_3_UsingModule.csv");
         
         // Calculate final worth
         worth = bal;
@@ -301,6 +861,345 @@ public class StockSystem {
         return worth;
     }
     
+    /**
+     * Portfolio version of algorithm 2: the RSI and MA rules run on every symbol
+     * against one shared cash balance, with equal-weight position sizing
+     * @param inputFiles One CSV file per symbol
+     * @return Final portfolio worth
+     */
+    public double portfolioAlgo2(List<String> inputFiles) throws IOException, ParseException {
+        List<String> names = new ArrayList<>();
+        List<BarSeries> series = new ArrayList<>();
+        List<DoubleSeries> mas = new ArrayList<>();
+        List<DoubleSeries> rsis = new ArrayList<>();
+
+        for (String file : inputFiles) {
+            StockSystem one = loadSymbol(file);
+            names.add(symbolName(file));
+            series.add(one.bars);
+            mas.add(one.movingAverage());
+            rsis.add(one.rsi());
+        }
+
+        PortfolioBacktest portfolio = new PortfolioBacktest(names, series);
+        double worth = portfolio.run(balance, (p, s, i) -> {
+            double price = p.getBars(s).open().get(i);
+            double rsi = rsis.get(s).get(i);
+            double avg = mas.get(s).get(i);
+            if (rsi > 30 && avg < price && rsi < 70) {
+                p.buy(s, price);
+            } else if (rsi < 70 && i > 0 && rsis.get(s).get(i - 1) > 70 && avg > price) {
+                p.sell(s, (int) (p.getShares(s) * 0.5), price);
+            }
+        });
+        stats = portfolio.getPerformanceStats();
+        return worth;
+    }
+
+    /**
+     * Correlations and covariances of daily returns across many symbols,
+     * each symbol's bars read from one CSV file and named after it. The files
+     * are loaded in parallel and the matrix is computed on the common pool.
+     * @param inputFiles One CSV file per symbol
+     * @param precision Arithmetic and storage precision of the matrix
+     * @return The matrix over the dates every file has
+     */
+    public CorrelationMatrix correlationMatrix(List<String> inputFiles, CorrelationMatrix.Precision precision)
+            throws IOException, ParseException, InterruptedException {
+        List<String> names = new ArrayList<>();
+        List<BarSeries> series = new ArrayList<>();
+        forEachSymbol(inputFiles, (name, one) -> {
+            names.add(name);
+            series.add(one.bars);
+        });
+        return CorrelationMatrix.compute(names, series, precision, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Bring a screener up to date with the latest bars of many symbols, each
+     * read from one CSV file and named after it. Only bars newer than a
+     * symbol's row are applied.
+     * @param screener Screener to update
+     * @param inputFiles One CSV file per symbol
+     * @return Number of bars applied
+     */
+    public int updateScreener(UniverseScreener screener, List<String> inputFiles)
+            throws IOException, ParseException, InterruptedException {
+        int[] applied = {0};
+        forEachSymbol(inputFiles, (name, one) -> applied[0] += screener.update(name, one.bars));
+        return applied[0];
+    }
+    
+    /**
+     * Load one system per file on a thread pool and hand each to the action
+     * on the calling thread, in file order. At most two files per thread are
+     * loaded ahead, so a large universe is never in memory at once unless the
+     * action keeps it.
+     */
+    private void forEachSymbol(List<String> inputFiles, BiConsumer<String, StockSystem> action)
+            throws IOException, ParseException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayDeque<Future<StockSystem>> loads = new ArrayDeque<>();
+            int next = 0;
+            for (int s = 0; s < inputFiles.size(); s++) {
+                while (next < inputFiles.size() && loads.size() < 2 * threads) {
+                    String file = inputFiles.get(next++);
+                    loads.add(pool.submit(() -> loadSymbol(file)));
+                }
+                action.accept(symbolName(inputFiles.get(s)), loads.poll().get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    // Load one symbol's file into a system of its own with this one's settings
+    private StockSystem loadSymbol(String file) throws IOException, ParseException {
+        StockSystem one = new StockSystem();
+        one.setMainSystem(mainSystem);
+        one.setTimeframe(timeframe);
+        one.setLoadThreads(loadThreads);
+        one.loadData(file, null);
+        return one;
+    }
+    
+    // Symbol name of a file: its name up to the first dot
+    private static String symbolName(String file) {
+        String name = Paths.get(file).getFileName().toString();
+        return name.contains(".") ? name.substring(0, name.indexOf('.')) : name;
+    }
+    
+    /**
+     * Run one algorithm and snapshot its outcome
+     * @param algorithm Index into ALGORITHMS
+     * @return The immutable result
+     */
+    public StrategyResult runAlgorithm(int algorithm) {
+        double worth;
+        switch (algorithm) {
+            case 0:
+                worth = algo1();
+                break;
+            case 1:
+                worth = algo2();
+                break;
+            case 2:
+                worth = algo3();
+                break;
+            default:
+                throw new IllegalArgumentException("No such algorithm: " + algorithm);
+        }
+        return snapshot(ALGORITHMS[algorithm], worth);
+    }
+    
+    // Immutable copy of the last run's curve and stats
+    private StrategyResult snapshot(String name, double worth) {
+        double[] equity = new double[performanceData.size()];
+        performanceData.copyTo(0, equity, 0, equity.length);
+        return new StrategyResult(name, balance, worth, equity, stats);
+    }
+    
+    /**
+     * Rule-based run on a private copy of the run state, safe to call from
+     * several threads like analyze
+     * @param buyRule Buy condition, see ruleAlgo
+     * @param sellRule Sell condition
+     * @param balance Starting balance for this run
+     * @return The immutable result
+     */
+    public StrategyResult analyzeRules(String buyRule, String sellRule, double balance) {
+        String name = "Rules: buy " + buyRule + ", sell " + sellRule;
+        return cached(name, runMode(), balance, () -> {
+            StockSystem run = forkRun(balance);
+            double worth = run.ruleAlgo(buyRule, sellRule);
+            return run.snapshot(name, worth);
+        });
+    }
+    
+    /**
+     * Order engine run on a private copy of the run state, see ruleOrderAlgo
+     * @param buyRule Buy condition
+     * @param sellRule Sell condition
+     * @param stopLoss Stop distance below each entry, as a fraction; 0 for none
+     * @param takeProfit Target distance above each entry, as a fraction; 0 for none
+     * @param balance Starting balance for this run
+     * @return The immutable result
+     */
+    public StrategyResult analyzeRuleOrders(String buyRule, String sellRule, double stopLoss, double takeProfit, double balance) {
+        String name = "Orders: buy " + buyRule + ", sell " + sellRule + ", stop " + stopLoss + ", target " + takeProfit;
+        String costs = "slippage " + slippage + ", fees " + commissionPerOrder + " " + commissionPerShare + " " + commissionRate;
+        return cached(name, runMode() + ", " + costs, balance, () -> {
+            StockSystem run = forkRun(balance);
+            double worth = run.ruleOrderAlgo(buyRule, sellRule, stopLoss, takeProfit);
+            return run.snapshot(name, worth);
+        });
+    }
+    
+    /**
+     * Run every algorithm at the same time. Each run gets its own copy of the
+     * run state; the bars and indicator columns are shared read-only.
+     * @param balance Starting balance of every run, passed in so a later
+     *        setBalance cannot change it while the runs are queued
+     * @return One result per algorithm, in ALGORITHMS order
+     */
+    public List<StrategyResult> analyzeAll(double balance) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(ALGORITHMS.length);
+        try {
+            List<Future<StrategyResult>> runs = new ArrayList<>();
+            for (int a = 0; a < ALGORITHMS.length; a++) {
+                int algorithm = a;
+                runs.add(pool.submit(() -> analyze(algorithm, balance)));
+            }
+            List<StrategyResult> results = new ArrayList<>();
+            for (Future<StrategyResult> run : runs) {
+                results.add(run.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Run one algorithm on a private copy of the run state. The loaded data
+     * is only read, so any number of threads may call this at once as long
+     * as nothing reloads it meanwhile.
+     * @param algorithm Index into ALGORITHMS
+     * @param balance Starting balance for this run
+     * @return The immutable result
+     */
+    public StrategyResult analyze(int algorithm, double balance) {
+        if (algorithm < 0 || algorithm >= ALGORITHMS.length) {
+            throw new IllegalArgumentException("No such algorithm: " + algorithm);
+        }
+        return cached(ALGORITHMS[algorithm], runMode(), balance, () -> forkRun(balance).runAlgorithm(algorithm));
+    }
+    
+    /**
+     * Run one algorithm on a private copy of the run state, appending its
+     * fills to a journal. Never served from the result cache, since a cached
+     * run has no fills to write.
+     * @param algorithm Index into ALGORITHMS
+     * @param balance Starting balance for this run
+     * @param journal Journal to append the fills to
+     * @return The immutable result
+     */
+    public StrategyResult analyze(int algorithm, double balance, TradeJournal.Writer journal) {
+        if (algorithm < 0 || algorithm >= ALGORITHMS.length) {
+            throw new IllegalArgumentException("No such algorithm: " + algorithm);
+        }
+        StockSystem run = forkRun(balance);
+        run.journal = journal;
+        return run.runAlgorithm(algorithm);
+    }
+    
+    // Look the run up in the result cache, if there is one; otherwise just run it
+    private StrategyResult cached(String strategy, String options, double balance, ResultCache.Computation run) {
+        if (resultCache == null) {
+            return run.compute();
+        }
+        return resultCache.get(ResultCache.key(getDataHash(), strategy, options, balance), run);
+    }
+    
+    // Run settings that change a result: summary-only runs keep no equity curve
+    private String runMode() {
+        return summaryOnly ? "summary only" : "full";
+    }
+    
+    // A system over the same loaded data with fresh run state; it journals only if the caller sets one
+    private StockSystem forkRun(double balance) {
+        StockSystem run = new StockSystem();
+        run.mainSystem = mainSystem;
+        run.balance = balance;
+        run.summaryOnly = summaryOnly;
+        run.activityLogs = activityLogs;
+        run.slippage = slippage;
+        run.commissionPerOrder = commissionPerOrder;
+        run.commissionPerShare = commissionPerShare;
+        run.commissionRate = commissionRate;
+        run.timeframe = timeframe;
+        run.loadThreads = loadThreads;
+        run.bars = bars;
+        run.open = open;
+        run.high = high;
+        run.low = low;
+        run.close = close;
+        run.adj_close = adj_close;
+        run.vol = vol;
+        run.indicatorCache = indicatorCache;
+        run.rsiValues = rsiValues;
+        run.ma = ma;
+        return run;
+    }
+    
+    // Feed one bar into the stats and, unless running summary only, the curve and log
+    private void recordWorth(int i, double worth, int shares) {
+        stats.update(bars.time(i), worth, shares);
+        if (summaryOnly) {
+            return;
+        }
+        performanceData.add(worth);
+        if (activityLogs) {
+            str.append(logStamp(bars.time(i))).append(",").append(mainSystem.format(worth)).append("\n");
+        }
+    }
+    
+    // Record a buy fill in the stats and, if set, the trade journal
+    private void onBuy(int i, int qty, double price, double cashAfter) {
+        stats.onBuy(qty, price);
+        journal(i, TradeJournal.BUY, qty, price, cashAfter);
+    }
+    
+    private void onSell(int i, int qty, double price, double cashAfter) {
+        stats.onSell(qty, price);
+        journal(i, TradeJournal.SELL, qty, price, cashAfter);
+    }
+    
+    private void journal(int i, int side, int qty, double price, double cashAfter) {
+        if (journal == null || qty <= 0) {
+            return;
+        }
+        try {
+            journal.append(bars.time(i), side, qty, price, cashAfter);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    // Write the activity log built up during a run
+    private void writeLog(String fileName) {
+        if (summaryOnly || !activityLogs) {
+            return;
+        }
+        log = mainSystem.writeFile(fileName);
+        try {
+            log.write(str.toString());
+            log.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
     // Helper methods from your original code
     private int tradeEvaluator(int input, int i, double bal) {
         Double current_price = mainSystem.format(open.get(i));
@@ -318,11 +1217,101 @@ public class StockSystem {
         }
     }
     
+    // Timestamp of a row: a date-time for intraday rows, midnight for plain dates
+    private long add_Time(String listItem) throws ParseException {
+        String value = listItem.trim();
+        if (value.indexOf(':') < 0) {
+            return BarSeries.toTime(add_Date(value).atStartOfDay());
+        }
+        // yyyy-MM-dd HH:mm[:ss] is read directly; anything else goes through the formats
+        long time = parseNumericDateTime(value);
+        if (time != NO_TIME) {
+            return time;
+        }
+        for (DateTimeFormatter format : TIME_FORMATS) {
+            try {
+                return BarSeries.toTime(LocalDateTime.parse(value, format));
+            } catch (DateTimeParseException e) {
+                // Try the next format
+            }
+        }
+        throw new IllegalArgumentException("Could not parse date: " + value);
+    }
+    
+    // Log stamps stay plain dates for daily bars
+    private String logStamp(long time) {
+        LocalDateTime stamp = BarSeries.toDateTime(time);
+        return Math.floorMod(time, BarSeries.DAY_MILLIS) == 0 ? stamp.format(formDate) : stamp.format(formDateTime);
+    }
+    
     private LocalDate add_Date(String listItem) throws ParseException {
-        LocalDate current_date = parseDateFlexible(listItem, format1, format2, format3, format4, format5);
+        // Plain numeric dates are read directly; anything else goes through the formats
+        LocalDate current_date = parseNumericDate(listItem);
+        if (current_date == null) {
+            current_date = parseDateFlexible(listItem, format1, format2, format3, format4, format5);
+        }
         return current_date;
     }
     
+    // yyyy-MM-dd or M/d/yyyy with one or two digit month and day, without a formatter; null if neither
+    private static LocalDate parseNumericDate(String date) {
+        int n = date.length();
+        int year, month, day;
+        int slash1 = date.indexOf('/'), slash2 = date.indexOf('/', slash1 + 1);
+        if (n == 10 && date.charAt(4) == '-' && date.charAt(7) == '-') {
+            year = digits(date, 0, 4);
+            month = digits(date, 5, 7);
+            day = digits(date, 8, 10);
+        } else if (slash1 >= 1 && slash1 <= 2 && slash2 - slash1 >= 2 && slash2 - slash1 <= 3 && n - slash2 == 5) {
+            year = digits(date, slash2 + 1, n);
+            month = digits(date, 0, slash1);
+            day = digits(date, slash1 + 1, slash2);
+        } else {
+            return null;
+        }
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > YearMonth.of(year, month).lengthOfMonth()) {
+            // Not digits or out of range: the formats decide
+            return null;
+        }
+        return LocalDate.of(year, month, day);
+    }
+    
+    // yyyy-MM-dd HH:mm or yyyy-MM-dd HH:mm:ss, with a space or a T, without a formatter; NO_TIME if neither
+    private static long parseNumericDateTime(String value) {
+        int n = value.length();
+        if ((n != 16 && n != 19) || value.charAt(4) != '-' || value.charAt(7) != '-'
+                || (value.charAt(10) != ' ' && value.charAt(10) != 'T') || value.charAt(13) != ':'
+                || (n == 19 && value.charAt(16) != ':')) {
+            return NO_TIME;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 7);
+        int day = digits(value, 8, 10);
+        int hour = digits(value, 11, 13);
+        int minute = digits(value, 14, 16);
+        int second = n == 19 ? digits(value, 17, 19) : 0;
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > YearMonth.of(year, month).lengthOfMonth()
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            // Not digits or out of range: the formats decide
+            return NO_TIME;
+        }
+        return LocalDate.of(year, month, day).toEpochDay() * BarSeries.DAY_MILLIS
+                + (hour * 3600 + minute * 60 + second) * 1000L;
+    }
+    
+    // Value of the digits in [from, to), or -1 if any character is not a digit
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int k = from; k < to; k++) {
+            char c = text.charAt(k);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+    
     private static LocalDate parseDateFlexible(String dateString, String... formats) {
         for (String format : formats) {
             try {
@@ -334,102 +1323,118 @@ public class StockSystem {
         throw new IllegalArgumentException("Could not parse date: " + dateString);
     }
     
-    private static boolean isWithinAWeek(LocalDate date1, LocalDate date2) {
-        // Calculate the difference in days between the dates
-        long daysBetween = 10;
-        if (date1.getYear() == date2.getYear()) {
-            if (date1.getMonth() == date2.getMonth()) {
-                daysBetween = Math.abs(date1.until(date2).getDays());
-            }
-        }
-
-        // Check if the absolute difference is less than or equal to 3 days
-        return daysBetween <= 3;
-    }
-    
     // RSI calculation methods
-    private ArrayList<Double> getRSI(ArrayList<Double> price, int n) {
-        ArrayList<Double> U = new ArrayList<>();
-        ArrayList<Double> D = new ArrayList<>();
-        ArrayList<Double> rsiVal = new ArrayList<>();
-        ArrayList<Double> rs = new ArrayList<>();
-
-        double change;
-
-        // for the first value
-        // Because my code need it for formatting
-        // I either do this or remove some early days
-        U.add(0.0);
-        D.add(0.0);
-        U.add(0.0);
-        D.add(0.0);
-
-        for (int i = 1; i < price.size(); i++) {
-            change = price.get(i) - price.get(i - 1);
-            if (change >= 0) {
-                U.add(change);
-                D.add(0.0);
-            } else {
-                U.add(0.0);
-                D.add(Math.abs(change));
-            }
-        }
-        rs = getRS(U, D, n);
+    // Runs over fixed-size chunks; each chunk re-reads the n prices before it
+    // so its window sums match a single pass over the whole column
+    private void computeRSI(DoubleSeries price, int n, DoubleSeries out) {
+        IndicatorKernels kernels = IndicatorKernels.get();
+        int size = price.size();
+        int cap = Math.min(size, INDICATOR_CHUNK + n);
+        double[] buf = new double[cap];
+        double[] up = new double[cap];
+        double[] down = new double[cap];
+        double[] sumUp = new double[cap];
+        double[] sumDown = new double[cap];
+        double[] rsiVal = new double[cap];
 
-        for (double ele : rs) {
-            double rsi = 0;
-            if (ele == 0) {
-                rsiVal.add(100.0);
-            } else {
-                rsi = (100 - (100 / (1 + ele)));
-                rsiVal.add(rsi);
-            }
-        }
-        return rsiVal;
-    }
+        for (int start = 0; start < size; start += INDICATOR_CHUNK) {
+            int end = Math.min(start + INDICATOR_CHUNK, size);
+            int from = Math.max(0, start - n);
+            int len = end - from;
+            price.copyTo(from, buf, 0, len);
+
+            // The first value has no previous price, so it counts as no change
+            kernels.gainLoss(buf, len, up, down);
+            kernels.trailingSum(up, len, n, sumUp);
+            kernels.trailingSum(down, len, n, sumDown);
 
-    // Get the rs values
-    private ArrayList<Double> getRS(ArrayList<Double> up, ArrayList<Double> down, int n) {
-        ArrayList<Double> rs = new ArrayList<>();
-        for (int i = 1; i < up.size(); i++) {
-            double avgU = 0, avgD = 0;
-            for (int num = i; num > Math.max(0, i - n); num--) {
-                avgU += up.get(num);
-                avgD += down.get(num);
+            for (int i = start - from; i < len; i++) {
+                double rs = sumDown[i] == 0 ? 0 : sumUp[i] / sumDown[i];
+                if (rs == 0) {
+                    rsiVal[i] = 100.0;
+                } else {
+                    rsiVal[i] = (100 - (100 / (1 + rs)));
+                }
             }
-            if (avgD == 0) {
-                rs.add(0.0);
-            } else
-                rs.add(avgU / avgD);
+            out.copyFrom(rsiVal, start - from, start, end - start);
         }
-        return rs;
+    }
+    
+    /**
+     * Run a set of indicators over the loaded high, low and close columns in one pass
+     * @param indicators The indicator set; its outputs are filled in place
+     */
+    public void computeIndicators(FusedIndicators indicators) {
+        indicators.compute(high, low, close);
     }
     
     // Getter methods for GUI components to access the data
     public int getDataSize() {
-        return date.size();
+        return bars.size();
+    }
+    
+    public BarSeries getBars() {
+        return bars;
     }
     
     public LocalDate getFirstDate() {
-        return date.isEmpty() ? null : date.get(0);
+        return bars.size() == 0 ? null : bars.date(0);
     }
     
     public LocalDate getLastDate() {
-        return date.isEmpty() ? null : date.get(date.size() - 1);
+        return bars.size() == 0 ? null : bars.date(bars.size() - 1);
     }
     
     public ArrayList<Double> getOpenPrices() {
-        return open;
+        return open.toList();
     }
     
     public ArrayList<Double> getMAValues() {
-        return ma;
+        return movingAverage().toList();
     }
     
     public ArrayList<Double> getRSIValues() {
-        return rsiValues;
+        return rsi().toList();
     }
     
     public ArrayList<Double> getPerformanceData() {
+        return performanceData.toList();
+    }
+    
+    // Column views for charts, read without copying
+    public DoubleSeries getEquityCurve() {
         return performanceData;
-    }
\ No newline at end of file
+    }
+    
+    public DoubleSeries getMovingAverage() {
+        return movingAverage();
+    }
+    
+    public DoubleSeries getRSI() {
+        return rsi();
+    }
+    
+    // RSI with another lookback, cached like the default one
+    public DoubleSeries getRSI(int period) {
+        return rsi(period);
+    }
+    
+    /**
+     * Any column a rule can use, e.g. getIndicator("bb_upper", 20, 2) or
+     * getIndicator("macd"), for charting it next to the prices
+     * @param name Column name as in a rule
+     * @param params Parameters as in a rule
+     * @throws IllegalArgumentException If the name or parameters are not valid
+     */
+    public DoubleSeries getIndicator(String name, double... params) {
+        DoubleSeries column = ruleColumn(name.toLowerCase(), params);
+        if (column == null) {
+            throw new IllegalArgumentException("Unknown indicator '" + name + "'");
+        }
+        return column;
+    }
+    
+    public PerformanceStats getPerformanceStats() {
+        return stats;
+    }
+}
@@ -1,26 +1,56 @@
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import org.jfree.chart.ChartFactory;
-import org.jfree.chart.ChartPanel;
-import org.jfree.chart.JFreeChart;
-import org.jfree.chart.plot.PlotOrientation;
-import org.jfree.chart.plot.XYPlot;
-import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
+import javax.swing.table.DefaultTableModel;
 
 public class StockBotGUI extends JFrame {
     
     private StockSystem stockSystem;
     private MainSystem mainSystem;
     private JComboBox<String> algorithmSelector;
+    private JComboBox<String> timeframeSelector;
+    // Resampling interval for each timeframeSelector entry, 0 keeps the file's bars
+    private static final long[] TIMEFRAMES = {
+        0, BarResampler.MINUTE, BarResampler.FIVE_MINUTES, BarResampler.HOUR, BarResampler.DAY
+    };
+    private JComboBox<String> replaySpeedSelector;
+    // Replay speed for each replaySpeedSelector entry, as a multiple of real time
+    private static final double[] REPLAY_SPEEDS = {
+        1, 86_400, 7 * 86_400, 30 * 86_400, ReplayFeed.UNTHROTTLED
+    };
+    private ReplayFeed replayFeed;
+    private javax.swing.Timer replayTimer;
+    private JButton analyzeAllButton;
+    private JTabbedPane resultTabs;
+    private DefaultTableModel comparisonModel;
+    // Equity and Trades tabs of the last single run, added by the first one
+    private EquityTableModel equityModel;
+    private TradeTableModel tradeModel;
+    private JComponent tradesTab;
+    private Path tradesFile;
+    // Run the Trades tab shows; its fills are journaled when the tab is first viewed
+    private int tradesAlgorithm = -1;
+    private double tradesBalance;
+    private int tradesGeneration;
+    private boolean tradesLoading;
+    private static final String[] COMPARISON_COLUMNS = {
+        "Algorithm", "Final ($)", "Return (%)", "CAGR (%)", "Sharpe", "Sortino",
+        "Max DD (%)", "Exposure (%)", "Buys", "Sells", "Win rate (%)"
+    };
+    private static final Color[] STRATEGY_COLORS = {Color.GREEN, Color.BLUE, Color.ORANGE};
+    // One chart reused by every view, created when the first chart is shown
+    private LineChartView chartView;
     private JTextField balanceField;
     private JTextField stockSearchField;
     private JTextArea resultArea;
@@ -30,8 +60,7 @@ public class StockBotGUI extends JFrame {
     private DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("MM/dd/yyyy");
     
     public StockBotGUI() {
-        // Initialize components
-        stockSystem = new StockSystem();
+        // Initialize components; the StockSystem is created by the first load
         mainSystem = new MainSystem();
         
         // Setup the frame
@@ -76,7 +105,7 @@ public class StockBotGUI extends JFrame {
         JButton browseButton = new JButton("Browse");
         browseButton.addActionListener(e -> {
             JFileChooser fileChooser = new JFileChooser();
-            fileChooser.setFileFilter(new FileNameExtensionFilter("CSV Files", "csv"));
+            fileChooser.setFileFilter(new FileNameExtensionFilter("CSV Files (.csv, .csv.gz)", "csv", "gz"));
             int result = fileChooser.showOpenDialog(this);
             if (result == JFileChooser.APPROVE_OPTION) {
                 selectedFile = fileChooser.getSelectedFile();
@@ -92,7 +121,9 @@ public class StockBotGUI extends JFrame {
         gbc.gridy = 1;
         panel.add(new JLabel("Export File:"), gbc);
         
+        // Leave empty to skip the indicator export
         exportFileField = new JTextField(20);
+        exportFileField.setToolTipText("Optional; leave empty to skip the indicator export");
         gbc.gridx = 1;
         gbc.weightx = 1.0;
         panel.add(exportFileField, gbc);
@@ -130,17 +161,28 @@ public class StockBotGUI extends JFrame {
         gbc.gridy = 3;
         panel.add(new JLabel("Algorithm:"), gbc);
         
-        algorithmSelector = new JComboBox<>(new String[]{
-            "Algorithm 1: Long Game",
-            "Algorithm 2: RSI & MA Method",
-            "Algorithm 3: Using Module"
-        });
+        algorithmSelector = new JComboBox<>(StockSystem.ALGORITHMS);
         gbc.gridx = 1;
         panel.add(algorithmSelector, gbc);
         
-        // Stock search row
+        // Timeframe row
         gbc.gridx = 0;
         gbc.gridy = 4;
+        panel.add(new JLabel("Timeframe:"), gbc);
+        
+        timeframeSelector = new JComboBox<>(new String[]{
+            "As loaded",
+            "1 minute",
+            "5 minutes",
+            "1 hour",
+            "Daily"
+        });
+        gbc.gridx = 1;
+        panel.add(timeframeSelector, gbc);
+        
+        // Stock search row
+        gbc.gridx = 0;
+        gbc.gridy = 5;
         panel.add(new JLabel("Stock Search:"), gbc);
         
         stockSearchField = new JTextField(10);
@@ -163,8 +205,31 @@ public class StockBotGUI extends JFrame {
         analyzeButton.addActionListener(e -> runAnalysis());
         buttonPanel.add(analyzeButton);
         
+        analyzeAllButton = new JButton("Analyze All");
+        analyzeAllButton.addActionListener(e -> runAnalyzeAll());
+        buttonPanel.add(analyzeAllButton);
+        
+        replaySpeedSelector = new JComboBox<>(new String[]{
+            "1x (real time)",
+            "1 day/s",
+            "1 week/s",
+            "1 month/s",
+            "Unthrottled"
+        });
+        replaySpeedSelector.setSelectedIndex(2);
+        replaySpeedSelector.addActionListener(e -> {
+            if (replayFeed != null) {
+                replayFeed.setSpeed(REPLAY_SPEEDS[replaySpeedSelector.getSelectedIndex()]);
+            }
+        });
+        buttonPanel.add(replaySpeedSelector);
+        
+        JButton replayButton = new JButton("Replay");
+        replayButton.addActionListener(e -> runReplay());
+        buttonPanel.add(replayButton);
+        
         gbc.gridx = 0;
-        gbc.gridy = 5;
+        gbc.gridy = 6;
         gbc.gridwidth = 3;
         panel.add(buttonPanel, gbc);
         
@@ -184,7 +249,11 @@ public class StockBotGUI extends JFrame {
         resultArea = new JTextArea();
         resultArea.setEditable(false);
         JScrollPane scrollPane = new JScrollPane(resultArea);
-        resultsPanel.add(scrollPane, BorderLayout.CENTER);
+        
+        // The Comparison tab is added by the first Analyze All
+        resultTabs = new JTabbedPane();
+        resultTabs.addTab("Log", scrollPane);
+        resultsPanel.add(resultTabs, BorderLayout.CENTER);
         
         // Create split pane with chart on top and results on bottom
         JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, chartPanel, resultsPanel);
@@ -200,21 +269,19 @@ public class StockBotGUI extends JFrame {
             return;
         }
         
-        if (exportFileField.getText().trim().isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Please specify an export file name.",
-                    "No Export File", JOptionPane.WARNING_MESSAGE);
-            return;
-        }
-        
+        stopReplay();
         try {
             stockSystem = new StockSystem();
             stockSystem.setMainSystem(mainSystem);
+            stockSystem.setTimeframe(TIMEFRAMES[timeframeSelector.getSelectedIndex()]);
+            stockSystem.setResultCache(ResultCache.shared());
             
             // Load the data
             stockSystem.loadData(selectedFile.getAbsolutePath(), exportFileField.getText());
             
             // Update the chart
             updateChart();
+            clearRunTables();
             
             resultArea.setText("Data loaded successfully.\n");
             resultArea.append("Total records: " + stockSystem.getDataSize() + "\n");
@@ -230,59 +297,27 @@ public class StockBotGUI extends JFrame {
     }
     
     private void updateChart() {
-        // Create dataset
-        XYSeriesCollection dataset = new XYSeriesCollection();
-        
-        // Add price series
-        XYSeries priceSeries = new XYSeries("Price");
-        ArrayList<Double> openPrices = stockSystem.getOpenPrices();
-        for (int i = 0; i < openPrices.size(); i++) {
-            priceSeries.add(i, openPrices.get(i));
-        }
-        dataset.addSeries(priceSeries);
+        // Price and MA read straight from the loaded columns
+        ColumnXYDataset dataset = new ColumnXYDataset();
+        dataset.addSeries("Price", stockSystem.getBars().open());
+        dataset.addSeries("Moving Average", stockSystem.getMovingAverage());
         
-        // Add MA series
-        XYSeries maSeries = new XYSeries("Moving Average");
-        ArrayList<Double> maValues = stockSystem.getMAValues();
-        for (int i = 0; i < maValues.size(); i++) {
-            maSeries.add(i, maValues.get(i));
+        showChart("Stock Price and Indicators", "Time", "Price", dataset, Color.BLUE, Color.RED);
+    }
+    
+    // Show a dataset in the one reusable chart; later calls only swap the dataset, titles and colors
+    private void showChart(String title, String xLabel, String yLabel, ColumnXYDataset dataset, Color... colors) {
+        if (chartView == null) {
+            chartView = new LineChartView();
         }
-        dataset.addSeries(maSeries);
-        
-        // Add RSI series on secondary axis if needed
-        XYSeries rsiSeries = new XYSeries("RSI");
-        ArrayList<Double> rsiValues = stockSystem.getRSIValues();
-        for (int i = 0; i < rsiValues.size(); i++) {
-            rsiSeries.add(i, rsiValues.get(i));
+        chartView.show(title, xLabel, yLabel, dataset, colors);
+        JComponent view = chartView.getComponent();
+        if (view.getParent() != chartPanel) {
+            chartPanel.removeAll();
+            chartPanel.add(view, BorderLayout.CENTER);
+            chartPanel.revalidate();
+            chartPanel.repaint();
         }
-        
-        // Create chart
-        JFreeChart chart = ChartFactory.createXYLineChart(
-                "Stock Price and Indicators",
-                "Time",
-                "Price",
-                dataset,
-                PlotOrientation.VERTICAL,
-                true,
-                true,
-                false
-        );
-        
-        // Customize the chart
-        XYPlot plot = chart.getXYPlot();
-        XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer();
-        renderer.setSeriesPaint(0, Color.BLUE);
-        renderer.setSeriesPaint(1, Color.RED);
-        plot.setRenderer(renderer);
-        
-        // Update the chart panel
-        chartPanel.removeAll();
-        ChartPanel panel = new ChartPanel(chart);
-        panel.setPreferredSize(new Dimension(600, 400));
-        panel.setMouseWheelEnabled(true);
-        chartPanel.add(panel, BorderLayout.CENTER);
-        chartPanel.revalidate();
-        chartPanel.repaint();
     }
     
     private void runAnalysis() {
@@ -292,6 +327,7 @@ public class StockBotGUI extends JFrame {
             return;
         }
         
+        stopReplay();
         try {
             double balance = Double.parseDouble(balanceField.getText());
             stockSystem.setBalance(balance);
@@ -301,26 +337,21 @@ public class StockBotGUI extends JFrame {
             resultArea.setText("");
             resultArea.append("Running analysis with initial balance: $" + balance + "\n\n");
             
-            double result = 0;
-            switch (selectedAlgo) {
-                case 0:
-                    result = stockSystem.algo1();
-                    break;
-                case 1:
-                    result = stockSystem.algo2();
-                    break;
-                case 2:
-                    result = stockSystem.algo3();
-                    break;
-            }
+            // Served from the result cache when this run was done before on the same data
+            long cacheHits = ResultCache.shared().getHits();
+            StrategyResult run = stockSystem.analyze(selectedAlgo, balance);
+            double result = run.getFinalWorth();
             
-            resultArea.append("Analysis complete.\n");
+            resultArea.append(ResultCache.shared().getHits() > cacheHits
+                    ? "Analysis loaded from the result cache.\n" : "Analysis complete.\n");
             resultArea.append("Final balance: $" + String.format("%.2f", result) + "\n");
             resultArea.append("Profit/Loss: $" + String.format("%.2f", result - balance) + 
                     " (" + String.format("%.2f", ((result - balance) / balance) * 100) + "%)\n");
+            resultArea.append("\n" + run.getSummary());
             
             // Update the chart with performance data
-            updatePerformanceChart(selectedAlgo);
+            updatePerformanceChart(selectedAlgo, run.getEquityCurve());
+            showRunTables(selectedAlgo, balance, run);
             
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Please enter a valid number for the balance.",
@@ -332,54 +363,354 @@ public class StockBotGUI extends JFrame {
         }
     }
     
-    private void updatePerformanceChart(int algorithmIndex) {
-        // Create dataset
-        XYSeriesCollection dataset = new XYSeriesCollection();
-        
-        // Add performance series based on algorithm
-        XYSeries performanceSeries = new XYSeries("Portfolio Value");
-        ArrayList<Double> performanceData = stockSystem.getPerformanceData();
-        for (int i = 0; i < performanceData.size(); i++) {
-            performanceSeries.add(i, performanceData.get(i));
+    // Run every algorithm in the background, then overlay the curves and fill the comparison table
+    private void runAnalyzeAll() {
+        if (stockSystem == null || stockSystem.getDataSize() == 0) {
+            JOptionPane.showMessageDialog(this, "Please load data first.",
+                    "No Data", JOptionPane.WARNING_MESSAGE);
+            return;
         }
-        dataset.addSeries(performanceSeries);
         
-        // Add initial balance reference line
-        XYSeries initialBalanceSeries = new XYSeries("Initial Balance");
-        double initialBalance = Double.parseDouble(balanceField.getText());
-        for (int i = 0; i < performanceData.size(); i++) {
-            initialBalanceSeries.add(i, initialBalance);
+        double balance;
+        try {
+            balance = Double.parseDouble(balanceField.getText());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter a valid number for the balance.",
+                    "Invalid Input", JOptionPane.ERROR_MESSAGE);
+            return;
         }
-        dataset.addSeries(initialBalanceSeries);
-        
-        // Create chart
-        JFreeChart chart = ChartFactory.createXYLineChart(
-                "Algorithm " + (algorithmIndex + 1) + " Performance",
-                "Trading Days",
-                "Portfolio Value ($)",
-                dataset,
-                PlotOrientation.VERTICAL,
-                true,
-                true,
-                false
-        );
-        
-        // Customize the chart
-        XYPlot plot = chart.getXYPlot();
-        XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer();
-        renderer.setSeriesPaint(0, Color.GREEN);
-        renderer.setSeriesPaint(1, Color.RED);
-        renderer.setSeriesShapesVisible(1, false); // No shapes for reference line
-        plot.setRenderer(renderer);
-        
-        // Update the chart panel
-        chartPanel.removeAll();
-        ChartPanel panel = new ChartPanel(chart);
-        panel.setPreferredSize(new Dimension(600, 400));
-        panel.setMouseWheelEnabled(true);
-        chartPanel.add(panel, BorderLayout.CENTER);
-        chartPanel.revalidate();
-        chartPanel.repaint();
+        stopReplay();
+        stockSystem.setBalance(balance);
+        StockSystem system = stockSystem;
+        
+        analyzeAllButton.setEnabled(false);
+        resultArea.setText("Running all algorithms with initial balance: $" + balance + "\n\n");
+        
+        new SwingWorker<List<StrategyResult>, Void>() {
+            @Override
+            protected List<StrategyResult> doInBackground() throws Exception {
+                return system.analyzeAll(balance);
+            }
+            
+            @Override
+            protected void done() {
+                analyzeAllButton.setEnabled(true);
+                try {
+                    showComparison(get(), balance);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    JOptionPane.showMessageDialog(StockBotGUI.this, "Error running analysis: " + cause.getMessage(),
+                            "Analysis Error", JOptionPane.ERROR_MESSAGE);
+                    cause.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+    
+    private void showComparison(List<StrategyResult> results, double balance) {
+        if (comparisonModel == null) {
+            createComparisonTab();
+        }
+        comparisonModel.setRowCount(0);
+        ColumnXYDataset dataset = new ColumnXYDataset();
+        Color[] colors = new Color[results.size() + 1];
+        int longest = 0;
+        for (StrategyResult r : results) {
+            comparisonModel.addRow(new Object[]{
+                r.getName(),
+                mainSystem.format(r.getFinalWorth()),
+                mainSystem.format(r.getTotalReturn() * 100),
+                mainSystem.format(r.getCagr() * 100),
+                mainSystem.format(r.getSharpe()),
+                mainSystem.format(r.getSortino()),
+                mainSystem.format(r.getMaxDrawdown() * 100),
+                mainSystem.format(r.getExposure() * 100),
+                r.getBuyCount(),
+                r.getSellCount(),
+                mainSystem.format(r.getWinRate() * 100)
+            });
+            resultArea.append(r.getName() + ": $" + String.format("%.2f", r.getFinalWorth()) + "\n");
+            resultArea.append(r.getSummary() + "\n");
+            
+            colors[dataset.getSeriesCount()] = STRATEGY_COLORS[dataset.getSeriesCount() % STRATEGY_COLORS.length];
+            dataset.addSeries(r.getName(), r.getEquityCurve());
+            longest = Math.max(longest, r.getEquitySize());
+        }
+        
+        colors[results.size()] = Color.RED;
+        dataset.addSeries("Initial Balance", referenceX(longest), referenceY(balance));
+        
+        showChart("Algorithm Comparison", "Trading Days", "Portfolio Value ($)", dataset, colors);
+        resultTabs.setSelectedIndex(resultTabs.indexOfTab("Comparison"));
+    }
+    
+    // Side by side statistics of every algorithm, filled by Analyze All
+    private void createComparisonTab() {
+        comparisonModel = new DefaultTableModel(COMPARISON_COLUMNS, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+            
+            // Typed columns so the row sorter orders numbers numerically
+            @Override
+            public Class<?> getColumnClass(int column) {
+                if (column == 0) {
+                    return String.class;
+                }
+                return column == 8 || column == 9 ? Integer.class : Double.class;
+            }
+        };
+        JTable comparisonTable = new JTable(comparisonModel);
+        comparisonTable.setAutoCreateRowSorter(true);
+        resultTabs.addTab("Comparison", new JScrollPane(comparisonTable));
+    }
+    
+    // Show a run in the Equity tab; its trades are journaled when the Trades tab is viewed
+    private void showRunTables(int algorithm, double balance, StrategyResult run) {
+        if (equityModel == null) {
+            createRunTabs();
+        }
+        equityModel.setResult(stockSystem.getBars(), run);
+        closeTrades();
+        tradesAlgorithm = algorithm;
+        tradesBalance = balance;
+        if (resultTabs.getSelectedComponent() == tradesTab) {
+            loadTrades();
+        }
+    }
+    
+    private void clearRunTables() {
+        // Forget the run too, or the Trades tab would replay it on the new bars
+        tradesAlgorithm = -1;
+        if (equityModel != null) {
+            equityModel.setResult(null, null);
+            closeTrades();
+        }
+    }
+    
+    // Equity and Trades tables over the last run, read in place rather than appended to the log
+    private void createRunTabs() {
+        equityModel = new EquityTableModel();
+        tradeModel = new TradeTableModel();
+        resultTabs.insertTab("Equity", null, createTableTab(equityModel, "change < -2"), null, 1);
+        tradesTab = createTableTab(tradeModel, "side == 1 && value > 1000");
+        resultTabs.insertTab("Trades", null, tradesTab, null, 2);
+        resultTabs.addChangeListener(e -> {
+            if (resultTabs.getSelectedComponent() == tradesTab && tradeModel.getJournal() == null && !tradesLoading) {
+                loadTrades();
+            }
+        });
+    }
+    
+    // A table with a filter rule field; clicking a column header sorts by it, again reverses
+    private JComponent createTableTab(ColumnTableModel model, String example) {
+        JTable table = new JTable(model);
+        table.setFillsViewportHeight(true);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    model.sort(table.convertColumnIndexToModel(column));
+                }
+            }
+        });
+        
+        JTextField filterField = new JTextField();
+        filterField.setToolTipText("Rule over " + String.join(", ", model.getRuleNames())
+                + ", e.g. " + example + "; Enter applies, empty shows all");
+        filterField.addActionListener(e -> {
+            try {
+                model.setFilter(filterField.getText());
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(this, ex.getMessage(), "Invalid Filter", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+        JPanel filterPanel = new JPanel(new BorderLayout(5, 0));
+        filterPanel.add(new JLabel("Filter:"), BorderLayout.WEST);
+        filterPanel.add(filterField, BorderLayout.CENTER);
+        
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(filterPanel, BorderLayout.NORTH);
+        panel.add(new JScrollPane(table), BorderLayout.CENTER);
+        return panel;
+    }
+    
+    // Rerun the shown run with a journal in the background and map its fills into the Trades tab
+    private void loadTrades() {
+        if (tradesAlgorithm < 0 || stockSystem == null) {
+            return;
+        }
+        StockSystem system = stockSystem;
+        int algorithm = tradesAlgorithm;
+        double balance = tradesBalance;
+        int generation = ++tradesGeneration;
+        tradesLoading = true;
+        new SwingWorker<Path, Void>() {
+            @Override
+            protected Path doInBackground() throws Exception {
+                Path file = Files.createTempFile("stockbot-trades", ".journal");
+                file.toFile().deleteOnExit();
+                try (TradeJournal.Writer journal = new TradeJournal.Writer(file)) {
+                    system.analyze(algorithm, balance, journal);
+                }
+                return file;
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    Path file = get();
+                    if (generation != tradesGeneration) {
+                        // A newer run replaced this one meanwhile
+                        Files.deleteIfExists(file);
+                        return;
+                    }
+                    tradesLoading = false;
+                    tradesFile = file;
+                    tradeModel.setJournal(TradeJournal.open(file));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException | IOException e) {
+                    tradesLoading = false;
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(StockBotGUI.this, "Error listing trades: " + cause.getMessage(),
+                            "Trades Error", JOptionPane.ERROR_MESSAGE);
+                    cause.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+    
+    // Empty the Trades tab, unmapping and deleting its journal
+    private void closeTrades() {
+        tradesGeneration++;
+        tradesLoading = false;
+        TradeJournal journal = tradeModel.getJournal();
+        tradeModel.setJournal(null);
+        if (journal != null) {
+            journal.unmap();
+        }
+        if (tradesFile != null) {
+            try {
+                Files.deleteIfExists(tradesFile);
+            } catch (IOException e) {
+                // Deleted on exit instead
+            }
+            tradesFile = null;
+        }
+    }
+    
+    // Replay the loaded bars through algorithm 2, drawing the chart as the bars arrive
+    private void runReplay() {
+        if (stockSystem == null || stockSystem.getDataSize() == 0) {
+            JOptionPane.showMessageDialog(this, "Please load data first.",
+                    "No Data", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        double balance;
+        try {
+            balance = Double.parseDouble(balanceField.getText());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Please enter a valid number for the balance.",
+                    "Invalid Input", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        stopReplay();
+        stockSystem.setBalance(balance);
+        
+        // The chart subscriber only fills preallocated arrays; the EDT picks up new points on a timer
+        int size = stockSystem.getDataSize();
+        double[] prices = new double[size];
+        double[] averages = new double[size];
+        AtomicInteger received = new AtomicInteger();
+        IncrementalIndicators indicators = new IncrementalIndicators(14);
+        ReplayListener chartFeed = (i, time, o, h, l, c, v) -> {
+            indicators.update(o);
+            prices[i] = o;
+            averages[i] = indicators.getMA();
+            received.lazySet(i + 1);
+        };
+        
+        // The chart reads the arrays directly and shows as many points as have arrived
+        ColumnXYDataset dataset = new ColumnXYDataset();
+        dataset.addSeries("Price", new DoubleColumn(prices, size));
+        dataset.addSeries("Moving Average", new DoubleColumn(averages, size));
+        dataset.setLimit(0);
+        showChart("Algorithm 2 Replay", "Time", "Price", dataset, Color.BLUE, Color.RED);
+        
+        resultArea.setText("Replaying " + size + " bars with initial balance: $" + balance + "\n");
+        
+        ReplayFeed feed = stockSystem.replayAlgo2(REPLAY_SPEEDS[replaySpeedSelector.getSelectedIndex()], chartFeed);
+        replayFeed = feed;
+        int[] shown = {0};
+        replayTimer = new javax.swing.Timer(40, e -> {
+            boolean done = !feed.isRunning();
+            int upto = received.get();
+            if (upto > shown[0]) {
+                dataset.setLimit(upto);
+                shown[0] = upto;
+            }
+            if (done) {
+                ((javax.swing.Timer) e.getSource()).stop();
+                PerformanceStats stats = stockSystem.getPerformanceStats();
+                double result = stats.getFinalWorth();
+                resultArea.append("Replay complete after " + stats.getBars() + " bars.\n");
+                resultArea.append("Final balance: $" + String.format("%.2f", result) + "\n");
+                resultArea.append("Profit/Loss: $" + String.format("%.2f", result - balance) + 
+                        " (" + String.format("%.2f", ((result - balance) / balance) * 100) + "%)\n");
+                resultArea.append("\n" + stats.summary());
+            }
+        });
+        replayTimer.start();
+    }
+    
+    private void stopReplay() {
+        if (replayFeed != null) {
+            // Wait for the subscribers so the next run starts from clean state
+            replayFeed.stop();
+            try {
+                replayFeed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            replayFeed = null;
+        }
+        if (replayTimer != null) {
+            replayTimer.stop();
+            replayTimer = null;
+        }
+    }
+    
+    private void updatePerformanceChart(int algorithmIndex, DoubleSeries equity) {
+        ColumnXYDataset dataset = new ColumnXYDataset();
+        dataset.addSeries("Portfolio Value", equity);
+        
+        // Initial balance reference line, drawn from its two end points
+        double initialBalance = Double.parseDouble(balanceField.getText());
+        dataset.addSeries("Initial Balance", referenceX(equity.size()), referenceY(initialBalance));
+        
+        showChart("Algorithm " + (algorithmIndex + 1) + " Performance", "Trading Days", "Portfolio Value ($)",
+                dataset, Color.GREEN, Color.RED);
+    }
+    
+    // X of a flat line across count points
+    private static DoubleSeries referenceX(int count) {
+        DoubleColumn x = new DoubleColumn(2);
+        x.add(0);
+        x.add(Math.max(0, count - 1));
+        return x;
+    }
+    
+    private static DoubleSeries referenceY(double value) {
+        DoubleColumn y = new DoubleColumn(2);
+        y.add(value);
+        y.add(value);
+        return y;
     }
     
     private void searchStock() {
@@ -469,7 +800,7 @@ public class StockBotGUI extends JFrame {
         JMenuItem openItem = new JMenuItem("Open CSV...");
         openItem.addActionListener(e -> {
             JFileChooser fileChooser = new JFileChooser();
-            fileChooser.setFileFilter(new FileNameExtensionFilter("CSV Files", "csv"));
+            fileChooser.setFileFilter(new FileNameExtensionFilter("CSV Files (.csv, .csv.gz)", "csv", "gz"));
             int result = fileChooser.showOpenDialog(this);
             if (result == JFileChooser.APPROVE_OPTION) {
                 selectedFile = fileChooser.getSelectedFile();
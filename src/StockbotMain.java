@@ -1,19 +1,179 @@
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
+/**
+ * Entry point. Opens the window, serves the HTTP API with --server, or
+ * writes the return correlations of many symbols with
+ *   --correlation out.csv [--float] file.csv... | directory
+ * or screens the latest values of many symbols with
+ *   --screen snapshot.bin rule [file.csv... | directory]
+ *
+ * Startup is kept short: the window is built without the chart library,
+ * and chart and data classes are warmed up on a background thread once it
+ * is showing. The time from JVM start to the first window is printed.
+ *
+ * For a faster start still, use an AppCDS archive (JDK 19+):
+ *   java -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=stockbot.jsa -cp ... StockBotMain
+ * creates the archive on the first run and uses it on later ones. To build
+ * it explicitly, run once with --startup-only, which exits as soon as the
+ * warm-up is done:
+ *   java -XX:ArchiveClassesAtExit=stockbot.jsa -cp ... StockBotMain --startup-only
+ *   java -XX:SharedArchiveFile=stockbot.jsa -cp ... StockBotMain
+ */
 public class StockBotMain {
-    public static void main(String[] args) {
+
+    // Time-to-first-window goal in milliseconds
+    private static final long STARTUP_TARGET_MILLIS = 500;
+    // MA and RSI period of new screen snapshots, as in StockSystem
+    private static final int SCREEN_PERIOD = 14;
+    // Fallback start time when the OS does not report the process start
+    private static final long MAIN_START = System.currentTimeMillis();
+
+    public static void main(String[] args) throws Exception {
+        // Headless mode: --server [port] [--bind address] [--data dir] serves the HTTP API instead of opening the window
+        if (args.length > 0 && args[0].equals("--server")) {
+            StockbotServer.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // Cross-sectional mode: correlation matrix of the given files, or of every CSV file in a directory
+        if (args.length > 0 && args[0].equals("--correlation")) {
+            correlation(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // Screener: update a snapshot of the latest values of many symbols and query it
+        if (args.length > 0 && args[0].equals("--screen")) {
+            screen(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        // Training run for a class data sharing archive: open, warm up, exit
+        boolean startupOnly = args.length > 0 && args[0].equals("--startup-only");
+
         try {
             // Set system look and feel
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
             e.printStackTrace();
         }
-        
+
         // Launch the application on the Event Dispatch Thread
         SwingUtilities.invokeLater(() -> {
             StockBotGUI gui = new StockBotGUI();
+            gui.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowOpened(WindowEvent e) {
+                    reportStartup();
+                    warmUp(startupOnly);
+                }
+            });
             gui.setVisible(true);
         });
     }
-}
\ No newline at end of file
+
+    // Load the symbols, compute their correlation matrix and write it as CSV
+    private static void correlation(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: --correlation out.csv [--float] file.csv... | directory");
+            return;
+        }
+        CorrelationMatrix.Precision precision = CorrelationMatrix.Precision.DOUBLE;
+        List<String> files = new ArrayList<>();
+        for (int a = 1; a < args.length; a++) {
+            if (args[a].equals("--float")) {
+                precision = CorrelationMatrix.Precision.FLOAT;
+            } else {
+                addInput(files, args[a]);
+            }
+        }
+        Collections.sort(files);
+
+        long start = System.nanoTime();
+        CorrelationMatrix matrix = new StockSystem().correlationMatrix(files, precision);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        matrix.writeCsv(Paths.get(args[0]));
+        System.out.println(matrix.size() + " symbols over " + matrix.getDateCount() + " common dates in "
+                + elapsed + " ms, written to " + args[0]);
+    }
+
+    // Update the screen snapshot from any given files, save it and print the symbols matching the rule
+    private static void screen(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: --screen snapshot.bin \"rsi < 30 && open > ma\" [file.csv... | directory]");
+            return;
+        }
+        Path snapshot = Paths.get(args[0]);
+        UniverseScreener screener = Files.exists(snapshot)
+                ? UniverseScreener.load(snapshot)
+                : new UniverseScreener(SCREEN_PERIOD);
+        List<String> files = new ArrayList<>();
+        for (int a = 2; a < args.length; a++) {
+            addInput(files, args[a]);
+        }
+        if (!files.isEmpty()) {
+            Collections.sort(files);
+            int applied = new StockSystem().updateScreener(screener, files);
+            screener.save(snapshot);
+            System.out.println(applied + " new bars from " + files.size() + " files");
+        }
+
+        long start = System.nanoTime();
+        List<String> matches = screener.query(args[1]);
+        long elapsed = (System.nanoTime() - start) / 1_000;
+        for (String symbol : matches) {
+            System.out.println(symbol);
+        }
+        System.out.println(matches.size() + " of " + screener.size() + " symbols match, in " + elapsed + " us");
+    }
+
+    // A CSV file, or every CSV file in a directory
+    private static void addInput(List<String> files, String arg) throws IOException {
+        Path path = Paths.get(arg);
+        if (!Files.isDirectory(path)) {
+            files.add(arg);
+            return;
+        }
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(path, "*.{csv,CSV,gz}")) {
+            for (Path file : dir) {
+                files.add(file.toString());
+            }
+        }
+    }
+
+    // Print the time from JVM start to the first window
+    private static void reportStartup() {
+        long start = ProcessHandle.current().info().startInstant()
+                .map(instant -> instant.toEpochMilli())
+                .orElse(MAIN_START);
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.println("Time to first window: " + elapsed + " ms"
+                + (elapsed > STARTUP_TARGET_MILLIS ? " (target " + STARTUP_TARGET_MILLIS + " ms)" : ""));
+    }
+
+    // Load what the first load and chart will need, at low priority off the EDT
+    private static void warmUp(boolean exitWhenDone) {
+        Thread thread = new Thread(() -> {
+            try {
+                new StockSystem();
+                LineChartView.warmUp();
+            } catch (RuntimeException | LinkageError e) {
+                // Only a head start; the real first use reports any problem
+                e.printStackTrace();
+            }
+            if (exitWhenDone) {
+                System.exit(0);
+            }
+        }, "stockbot-warmup");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+}
@@ -0,0 +1,461 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless HTTP front end for batch runs.
+ * Every request is handled on its own virtual thread. Datasets are loaded
+ * once into a shared cache and only read after that, so any number of
+ * runs can use the same bars and indicator columns at once without copying.
+ *
+ * There is no authentication, so the server listens on the loopback
+ * address unless another address is given explicitly, and only loads
+ * files under its data directory. Load errors are logged, not sent back,
+ * as parse messages quote the file.
+ *
+ * Endpoints (parameters in the query string, JSON responses):
+ *   GET  /datasets                          list loaded datasets
+ *   POST /datasets?name=&path=[&timeframe=]  load a CSV file under the data directory
+ *                                           (cached by name; 409 if the name is bound to
+ *                                           another path or timeframe) and select it
+ *   POST /datasets/select?name=             select a loaded dataset
+ *   POST /runs?[dataset=]&algorithm=&balance=  run an algorithm (1-3, or "all")
+ *   POST /runs?[dataset=]&algorithm=rules&buy=&sell=&balance=  run compiled trading rules
+ *   POST /runs?[dataset=]&algorithm=orders&buy=&sell=[&stop=][&target=]&balance=
+ *                                           run the rules through the order engine with
+ *                                           stop-loss and profit-target fractions
+ *   GET  /runs                              list stored results
+ *   GET  /runs/{id}                         statistics of one result
+ *   GET  /runs/{id}/equity                  equity curve of one result
+ */
+public class StockbotServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    // Results kept for fetching; the oldest are dropped first
+    private static final int MAX_RESULTS = 256;
+
+    private final HttpServer server;
+    // Real path of the directory datasets are loaded from
+    private final Path dataDirectory;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Loads in progress or done, so concurrent requests for one dataset load it once
+    private final Map<String, Dataset> datasets = new ConcurrentHashMap<>();
+    private volatile String selected;
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<Long, StrategyResult> results = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, StrategyResult> eldest) {
+            return size() > MAX_RESULTS;
+        }
+    };
+
+    // Serve on the loopback address, loading datasets from the working directory
+    public StockbotServer(int port) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, Paths.get(""));
+    }
+
+    /**
+     * @param address Address to listen on; anything but loopback exposes the API to the network
+     * @param port Port, or 0 for any free port
+     * @param dataDirectory Directory that dataset paths are resolved against and confined to
+     */
+    public StockbotServer(InetAddress address, int port, Path dataDirectory) throws IOException {
+        this.dataDirectory = dataDirectory.toRealPath();
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        server.setExecutor(executor);
+        server.createContext("/datasets", this::handleDatasets);
+        server.createContext("/runs", this::handleRuns);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleDatasets(HttpExchange exchange) throws IOException {
+        respond(exchange, () -> {
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = query(exchange);
+            String method = exchange.getRequestMethod();
+
+            if (path.equals("/datasets/select") && method.equals("POST")) {
+                String name = require(query, "name");
+                dataset(name);
+                selected = name;
+                return datasetJson(name);
+            }
+            if (path.equals("/datasets") && method.equals("GET")) {
+                List<String> items = new ArrayList<>();
+                for (String name : datasets.keySet()) {
+                    Dataset dataset = datasets.get(name);
+                    if (dataset != null && dataset.load.isDone() && !dataset.load.isCompletedExceptionally()) {
+                        items.add(datasetJson(name));
+                    }
+                }
+                return "{\"selected\":" + string(selected) + ",\"datasets\":" + array(items) + "}";
+            }
+            if (path.equals("/datasets") && method.equals("POST")) {
+                String name = require(query, "name");
+                String file = dataFile(require(query, "path"));
+                long timeframe = Long.parseLong(query.getOrDefault("timeframe", "0"));
+                load(name, file, timeframe);
+                selected = name;
+                return datasetJson(name);
+            }
+            throw new UnsupportedOperationException(method + " " + path);
+        });
+    }
+
+    private void handleRuns(HttpExchange exchange) throws IOException {
+        respond(exchange, () -> {
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = query(exchange);
+            String method = exchange.getRequestMethod();
+            String[] parts = path.substring(1).split("/");
+
+            if (parts.length == 1 && method.equals("POST")) {
+                String name = query.getOrDefault("dataset", selected);
+                if (name == null) {
+                    throw new IllegalArgumentException("No dataset selected");
+                }
+                StockSystem data = dataset(name);
+                double balance = Double.parseDouble(require(query, "balance"));
+                String algorithm = require(query, "algorithm");
+
+                List<String> items = new ArrayList<>();
+                if (algorithm.equals("all")) {
+                    // Each algorithm on its own virtual thread
+                    List<CompletableFuture<StrategyResult>> runs = new ArrayList<>();
+                    for (int a = 0; a < StockSystem.ALGORITHMS.length; a++) {
+                        int index = a;
+                        runs.add(CompletableFuture.supplyAsync(() -> data.analyze(index, balance), executor));
+                    }
+                    for (CompletableFuture<StrategyResult> run : runs) {
+                        items.add(store(run.get()));
+                    }
+                } else if (algorithm.equals("rules")) {
+                    items.add(store(data.analyzeRules(require(query, "buy"), require(query, "sell"), balance)));
+                } else if (algorithm.equals("orders")) {
+                    double stop = Double.parseDouble(query.getOrDefault("stop", "0"));
+                    double target = Double.parseDouble(query.getOrDefault("target", "0"));
+                    items.add(store(data.analyzeRuleOrders(require(query, "buy"), require(query, "sell"), stop, target, balance)));
+                } else {
+                    int index = Integer.parseInt(algorithm) - 1;
+                    if (index < 0 || index >= StockSystem.ALGORITHMS.length) {
+                        throw new IllegalArgumentException("No such algorithm: " + algorithm);
+                    }
+                    items.add(store(data.analyze(index, balance)));
+                }
+                return "{\"dataset\":" + string(name) + ",\"results\":" + array(items) + "}";
+            }
+            if (parts.length == 1 && method.equals("GET")) {
+                List<String> items = new ArrayList<>();
+                synchronized (results) {
+                    for (Map.Entry<Long, StrategyResult> e : results.entrySet()) {
+                        items.add("{\"id\":" + e.getKey() + ",\"name\":" + string(e.getValue().getName()) + "}");
+                    }
+                }
+                return array(items);
+            }
+            if (parts.length == 2 && method.equals("GET")) {
+                long id = Long.parseLong(parts[1]);
+                return resultJson(id, result(id));
+            }
+            if (parts.length == 3 && parts[2].equals("equity") && method.equals("GET")) {
+                StrategyResult r = result(Long.parseLong(parts[1]));
+                StringBuilder sb = new StringBuilder(r.getEquitySize() * 12 + 2).append('[');
+                for (int i = 0; i < r.getEquitySize(); i++) {
+                    if (i > 0) {
+                        sb.append(',');
+                    }
+                    sb.append(number(r.getEquity(i)));
+                }
+                return sb.append(']').toString();
+            }
+            throw new UnsupportedOperationException(method + " " + path);
+        });
+    }
+
+    /**
+     * Resolve a requested path against the data directory
+     * @return The real path of the file
+     * @throws IllegalArgumentException If it is not a file inside the data directory
+     */
+    private String dataFile(String requested) throws IOException {
+        Path file = dataDirectory.resolve(requested).normalize();
+        if (file.startsWith(dataDirectory) && Files.isRegularFile(file)) {
+            // Checked again after following links, which may point anywhere
+            file = file.toRealPath();
+            if (file.startsWith(dataDirectory)) {
+                return file.toString();
+            }
+        }
+        throw new IllegalArgumentException("No such file in the data directory: " + requested);
+    }
+
+    /**
+     * A dataset name, the parameters it was loaded with, and its load
+     */
+    private static final class Dataset {
+        final String file;
+        final long timeframe;
+        final CompletableFuture<StockSystem> load = new CompletableFuture<>();
+
+        Dataset(String file, long timeframe) {
+            this.file = file;
+            this.timeframe = timeframe;
+        }
+    }
+
+    /**
+     * A request that contradicts the server's state; answered with 409
+     */
+    private static class ConflictException extends RuntimeException {
+        ConflictException(String message) {
+            super(message);
+        }
+    }
+
+    // Load a dataset once; the first request loads it and the others wait on its future.
+    // A failed load is forgotten so it can be retried.
+    private StockSystem load(String name, String file, long timeframe) throws Exception {
+        Dataset dataset = new Dataset(file, timeframe);
+        Dataset existing = datasets.putIfAbsent(name, dataset);
+        if (existing != null) {
+            if (!existing.file.equals(file) || existing.timeframe != timeframe) {
+                throw new ConflictException("Dataset " + name + " is already loaded from other parameters");
+            }
+            return join(existing.load);
+        }
+        try {
+            StockSystem system = new StockSystem();
+            system.setTimeframe(timeframe);
+            system.setLoadThreads(Runtime.getRuntime().availableProcessors());
+            system.setActivityLogs(false);
+            // Repeated runs on the same data are served from disk
+            system.setResultCache(ResultCache.shared());
+            system.loadData(file, null);
+            dataset.load.complete(system);
+        } catch (IOException | ParseException | RuntimeException e) {
+            // The cause may quote the file's contents, so it goes to the log only
+            System.err.println("Could not load dataset " + name + " from " + file + ": " + e);
+            datasets.remove(name, dataset);
+            dataset.load.completeExceptionally(e instanceof IOException
+                    ? new IOException("Could not read dataset " + name)
+                    : new IllegalArgumentException("Could not parse dataset " + name));
+        }
+        return join(dataset.load);
+    }
+
+    private StockSystem dataset(String name) throws Exception {
+        Dataset dataset = datasets.get(name);
+        if (dataset == null) {
+            throw new NoSuchElementException("No dataset named " + name);
+        }
+        return join(dataset.load);
+    }
+
+    private static StockSystem join(CompletableFuture<StockSystem> load) throws Exception {
+        try {
+            return load.get();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private String store(StrategyResult r) {
+        long id = nextId.getAndIncrement();
+        synchronized (results) {
+            results.put(id, r);
+        }
+        return resultJson(id, r);
+    }
+
+    private StrategyResult result(long id) {
+        StrategyResult r;
+        synchronized (results) {
+            r = results.get(id);
+        }
+        if (r == null) {
+            throw new NoSuchElementException("No result " + id);
+        }
+        return r;
+    }
+
+    private String datasetJson(String name) throws Exception {
+        StockSystem data = dataset(name);
+        return "{\"name\":" + string(name) + ",\"bars\":" + data.getDataSize()
+                + ",\"first\":" + string(data.getDataSize() == 0 ? null : data.getFirstDate().toString())
+                + ",\"last\":" + string(data.getDataSize() == 0 ? null : data.getLastDate().toString()) + "}";
+    }
+
+    private static String resultJson(long id, StrategyResult r) {
+        return "{\"id\":" + id
+                + ",\"name\":" + string(r.getName())
+                + ",\"initialBalance\":" + number(r.getInitialBalance())
+                + ",\"finalWorth\":" + number(r.getFinalWorth())
+                + ",\"totalReturn\":" + number(r.getTotalReturn())
+                + ",\"cagr\":" + number(r.getCagr())
+                + ",\"volatility\":" + number(r.getVolatility())
+                + ",\"sharpe\":" + number(r.getSharpe())
+                + ",\"sortino\":" + number(r.getSortino())
+                + ",\"maxDrawdown\":" + number(r.getMaxDrawdown())
+                + ",\"maxDrawdownDuration\":" + r.getMaxDrawdownDuration()
+                + ",\"exposure\":" + number(r.getExposure())
+                + ",\"buys\":" + r.getBuyCount()
+                + ",\"sells\":" + r.getSellCount()
+                + ",\"winRate\":" + number(r.getWinRate())
+                + ",\"equityPoints\":" + r.getEquitySize() + "}";
+    }
+
+    /**
+     * Produces a response body; exceptions become error responses
+     */
+    private interface Handler {
+        String handle() throws Exception;
+    }
+
+    private static void respond(HttpExchange exchange, Handler handler) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            body = handler.handle();
+        } catch (Exception e) {
+            Throwable cause = e;
+            while ((cause instanceof ExecutionException || cause instanceof CompletionException)
+                    && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            status = status(cause);
+            body = "{\"error\":" + string(String.valueOf(cause.getMessage())) + "}";
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static int status(Throwable e) {
+        if (e instanceof NoSuchElementException) {
+            return 404;
+        }
+        if (e instanceof UnsupportedOperationException) {
+            return 405;
+        }
+        if (e instanceof ConflictException) {
+            return 409;
+        }
+        // Includes NumberFormatException for bad parameters and unparsable input files
+        if (e instanceof IllegalArgumentException || e instanceof ParseException) {
+            return 400;
+        }
+        return 500;
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String require(Map<String, String> query, String key) {
+        String value = query.get(key);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + key);
+        }
+        return value;
+    }
+
+    private static String array(List<String> items) {
+        return "[" + String.join(",", items) + "]";
+    }
+
+    // JSON has no NaN or infinity
+    private static String number(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "null";
+    }
+
+    private static String string(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Arguments: [port] [--bind address] [--data directory]. Without --bind
+     * only this machine can connect; datasets default to the working directory.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        InetAddress address = InetAddress.getLoopbackAddress();
+        Path data = Paths.get("");
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--bind") && i + 1 < args.length) {
+                address = InetAddress.getByName(args[++i]);
+            } else if (args[i].equals("--data") && i + 1 < args.length) {
+                data = Paths.get(args[++i]);
+            } else {
+                port = Integer.parseInt(args[i]);
+            }
+        }
+        StockbotServer server = new StockbotServer(address, port, data);
+        server.start();
+        System.out.println("StockBot server listening on " + address.getHostAddress() + ":" + server.getPort()
+                + ", datasets from " + server.dataDirectory);
+    }
+}
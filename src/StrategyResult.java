@@ -0,0 +1,236 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Immutable outcome of one strategy run: the equity curve and a snapshot of
+ * its performance statistics. Safe to hand between threads, e.g. from a
+ * background analysis to the Swing event thread.
+ */
+public final class StrategyResult {
+
+    private final String name;
+    private final double initialBalance;
+    private final double finalWorth;
+    private final double[] equity;
+    private final double totalReturn, cagr, volatility, sharpe, sortino, maxDrawdown, exposure, winRate;
+    private final int maxDrawdownDuration, buys, sells;
+    private final String summary;
+    // Version of the writeTo format
+    private static final int FORMAT = 1;
+
+    /**
+     * Snapshot a finished run
+     * @param name Strategy name
+     * @param initialBalance Starting balance
+     * @param finalWorth Worth returned by the run
+     * @param equity Worth per bar; copied
+     * @param stats Statistics of the run; read once, not kept
+     */
+    public StrategyResult(String name, double initialBalance, double finalWorth, double[] equity,
+            PerformanceStats stats) {
+        this.name = name;
+        this.initialBalance = initialBalance;
+        this.finalWorth = finalWorth;
+        this.equity = equity.clone();
+        this.totalReturn = initialBalance == 0 ? 0 : finalWorth / initialBalance - 1;
+        this.cagr = stats.getCagr();
+        this.volatility = stats.getVolatility();
+        this.sharpe = stats.getSharpe();
+        this.sortino = stats.getSortino();
+        this.maxDrawdown = stats.getMaxDrawdown();
+        this.maxDrawdownDuration = stats.getMaxDrawdownDuration();
+        this.exposure = stats.getExposure();
+        this.winRate = stats.getWinRate();
+        this.buys = stats.getBuyCount();
+        this.sells = stats.getSellCount();
+        this.summary = stats.summary();
+    }
+
+    // Rebuild a stored result; takes ownership of the equity array
+    private StrategyResult(String name, double initialBalance, double finalWorth, double[] equity,
+            double[] figures, int maxDrawdownDuration, int buys, int sells, String summary) {
+        this.name = name;
+        this.initialBalance = initialBalance;
+        this.finalWorth = finalWorth;
+        this.equity = equity;
+        this.totalReturn = figures[0];
+        this.cagr = figures[1];
+        this.volatility = figures[2];
+        this.sharpe = figures[3];
+        this.sortino = figures[4];
+        this.maxDrawdown = figures[5];
+        this.exposure = figures[6];
+        this.winRate = figures[7];
+        this.maxDrawdownDuration = maxDrawdownDuration;
+        this.buys = buys;
+        this.sells = sells;
+        this.summary = summary;
+    }
+
+    /**
+     * Write the result in a compact binary form for ResultCache. Each equity
+     * value is stored as the XOR of its bits with the previous value's;
+     * nearby values share sign, exponent and top mantissa bits, so only the
+     * XOR's low nonzero bytes are written, after a byte giving their count.
+     * @param out Destination
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(FORMAT);
+        out.writeUTF(name);
+        out.writeDouble(initialBalance);
+        out.writeDouble(finalWorth);
+        for (double figure : new double[]{totalReturn, cagr, volatility, sharpe, sortino, maxDrawdown, exposure, winRate}) {
+            out.writeDouble(figure);
+        }
+        out.writeInt(maxDrawdownDuration);
+        out.writeInt(buys);
+        out.writeInt(sells);
+        out.writeUTF(summary);
+        out.writeInt(equity.length);
+        long previous = 0;
+        for (double value : equity) {
+            long bits = Double.doubleToRawLongBits(value);
+            long xor = bits ^ previous;
+            int bytes = (71 - Long.numberOfLeadingZeros(xor)) / 8;
+            out.writeByte(bytes);
+            for (int b = 0; b < bytes; b++) {
+                out.writeByte((int) (xor >>> (8 * b)));
+            }
+            previous = bits;
+        }
+    }
+
+    /**
+     * Read a result written by writeTo
+     * @param in Source
+     * @return The result
+     * @throws IOException If the data is truncated or in another format
+     */
+    public static StrategyResult readFrom(DataInput in) throws IOException {
+        int format = in.readInt();
+        if (format != FORMAT) {
+            throw new IOException("Unsupported result format " + format);
+        }
+        String name = in.readUTF();
+        double initialBalance = in.readDouble();
+        double finalWorth = in.readDouble();
+        double[] figures = new double[8];
+        for (int k = 0; k < figures.length; k++) {
+            figures[k] = in.readDouble();
+        }
+        int maxDrawdownDuration = in.readInt();
+        int buys = in.readInt();
+        int sells = in.readInt();
+        String summary = in.readUTF();
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("Bad equity length " + size);
+        }
+        double[] equity = new double[size];
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            int bytes = in.readUnsignedByte();
+            if (bytes > 8) {
+                throw new IOException("Bad equity value length " + bytes);
+            }
+            long xor = 0;
+            for (int b = 0; b < bytes; b++) {
+                xor |= (long) in.readUnsignedByte() << (8 * b);
+            }
+            previous ^= xor;
+            equity[i] = Double.longBitsToDouble(previous);
+        }
+        return new StrategyResult(name, initialBalance, finalWorth, equity, figures,
+                maxDrawdownDuration, buys, sells, summary);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getInitialBalance() {
+        return initialBalance;
+    }
+
+    public double getFinalWorth() {
+        return finalWorth;
+    }
+
+    public double getTotalReturn() {
+        return totalReturn;
+    }
+
+    // Number of points on the equity curve
+    public int getEquitySize() {
+        return equity.length;
+    }
+
+    public double getEquity(int i) {
+        return equity[i];
+    }
+
+    // Read-only view of the equity curve, e.g. for a chart dataset
+    public DoubleSeries getEquityCurve() {
+        return new DoubleSeries() {
+            @Override
+            public int size() {
+                return equity.length;
+            }
+
+            @Override
+            public double get(int i) {
+                return equity[i];
+            }
+
+            @Override
+            public void copyFrom(double[] src, int off, int at, int len) {
+                throw new UnsupportedOperationException("Strategy results are immutable");
+            }
+        };
+    }
+
+    public double getCagr() {
+        return cagr;
+    }
+
+    public double getVolatility() {
+        return volatility;
+    }
+
+    public double getSharpe() {
+        return sharpe;
+    }
+
+    public double getSortino() {
+        return sortino;
+    }
+
+    public double getMaxDrawdown() {
+        return maxDrawdown;
+    }
+
+    public int getMaxDrawdownDuration() {
+        return maxDrawdownDuration;
+    }
+
+    public double getExposure() {
+        return exposure;
+    }
+
+    public double getWinRate() {
+        return winRate;
+    }
+
+    public int getBuyCount() {
+        return buys;
+    }
+
+    public int getSellCount() {
+        return sells;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+}
@@ -0,0 +1,322 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Append-only journal of trade fills in a memory-mapped file.
+ * Each fill is one fixed 32 byte record, so writing a trade is a few stores
+ * into the mapping instead of formatted text, and a reader can jump to any
+ * trade by index. CSV is only produced when asked for.
+ *
+ * File layout (little endian): a 16 byte header (magic, version, record
+ * count) followed by one record per fill: timestamp in milliseconds, side,
+ * quantity, price and the cash balance after the fill. The count is
+ * written after each record, so a reader never sees a half written one.
+ *
+ * One journal may hold several runs: a writer shared by several backtests,
+ * or a file reopened for appending. Records are in time order within a run,
+ * and a run starts wherever a fill is earlier than the one before it, so
+ * time searches go through one run at a time.
+ */
+public class TradeJournal {
+
+    public static final int BUY = 1;
+    public static final int SELL = 2;
+
+    private static final int MAGIC = 0x53544B4A; // "STKJ"
+    private static final int VERSION = 1;
+    private static final long HEADER = 16;
+    private static final long RECORD = 32;
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Receives fills during a scan, as primitives
+     */
+    public interface Visitor {
+        void onTrade(int index, long time, int side, int quantity, double price, double cashAfter);
+    }
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final int size;
+    // First record of each run, found on first use
+    private volatile int[] runStarts;
+
+    private TradeJournal(Arena arena, MemorySegment segment) {
+        this.arena = arena;
+        this.segment = segment;
+        if (segment.byteSize() < HEADER || segment.get(INT, 0) != MAGIC) {
+            throw new IllegalArgumentException("Not a trade journal file");
+        }
+        int version = segment.get(INT, 4);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported trade journal version: " + version);
+        }
+        long count = segment.get(LONG, 8);
+        // A journal that was not closed cleanly may be shorter than its capacity, never its count
+        this.size = Math.toIntExact(Math.min(count, (segment.byteSize() - HEADER) / RECORD));
+    }
+
+    /**
+     * Map a journal file read-only
+     * @param path The journal file
+     * @return The mapped journal; call unmap() when done with it
+     */
+    public static TradeJournal open(Path path) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MemorySegment segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            return new TradeJournal(arena, segment);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long time(int i) {
+        return segment.get(LONG, offset(i));
+    }
+
+    public int side(int i) {
+        return segment.get(INT, offset(i) + 8);
+    }
+
+    public int quantity(int i) {
+        return segment.get(INT, offset(i) + 12);
+    }
+
+    public double price(int i) {
+        return segment.get(DOUBLE, offset(i) + 16);
+    }
+
+    public double cashAfter(int i) {
+        return segment.get(DOUBLE, offset(i) + 24);
+    }
+
+    // Number of runs; an empty journal has one, empty, run
+    public int runCount() {
+        return runs().length;
+    }
+
+    // Index of a run's first trade
+    public int runStart(int run) {
+        return runs()[run];
+    }
+
+    // One past the index of a run's last trade
+    public int runEnd(int run) {
+        int[] starts = runs();
+        return run + 1 < starts.length ? starts[run + 1] : size;
+    }
+
+    /**
+     * First trade at or after a time, in a journal of a single run
+     * @param time Timestamp in milliseconds
+     * @return Index of the trade, or size() if every trade is earlier
+     * @throws IllegalStateException If the journal holds several runs; use indexOf(run, time)
+     */
+    public int indexOf(long time) {
+        if (runCount() > 1) {
+            throw new IllegalStateException("Journal holds " + runCount() + " runs; search one with indexOf(run, time)");
+        }
+        return indexOf(0, time);
+    }
+
+    /**
+     * First trade of a run at or after a time, by binary search over its time-ordered records
+     * @param run Run index
+     * @param time Timestamp in milliseconds
+     * @return Index of the trade, or runEnd(run) if every trade of the run is earlier
+     */
+    public int indexOf(int run, long time) {
+        int lo = runStart(run), hi = runEnd(run);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (time(mid) < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Replay a range of trades in order
+     * @param from First trade index
+     * @param to One past the last trade index
+     * @param visitor Receives each trade
+     */
+    public void scan(int from, int to, Visitor visitor) {
+        for (int i = from; i < to; i++) {
+            long pos = offset(i);
+            visitor.onTrade(i, segment.get(LONG, pos), segment.get(INT, pos + 8), segment.get(INT, pos + 12),
+                    segment.get(DOUBLE, pos + 16), segment.get(DOUBLE, pos + 24));
+        }
+    }
+
+    public void scan(Visitor visitor) {
+        scan(0, size, visitor);
+    }
+
+    /**
+     * Write the journal out as CSV
+     * @param csvFile File to create, with a Date,Side,Quantity,Price,Cash header
+     */
+    public void toCsv(Path csvFile) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(csvFile, StandardCharsets.US_ASCII)) {
+            out.write("Date,Side,Quantity,Price,Cash\n");
+            for (int i = 0; i < size; i++) {
+                out.write(BarSeries.toDateTime(time(i)).toString());
+                out.write(side(i) == BUY ? ",BUY," : ",SELL,");
+                out.write(Integer.toString(quantity(i)));
+                out.write(',');
+                out.write(Double.toString(price(i)));
+                out.write(',');
+                out.write(Double.toString(cashAfter(i)));
+                out.write('\n');
+            }
+        }
+    }
+
+    public void unmap() {
+        arena.close();
+    }
+
+    // One pass over the timestamps the first time runs are asked for
+    private int[] runs() {
+        int[] starts = runStarts;
+        if (starts == null) {
+            starts = new int[8];
+            int count = 1;
+            for (int i = 1; i < size; i++) {
+                if (time(i) < time(i - 1)) {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                    }
+                    starts[count++] = i;
+                }
+            }
+            starts = Arrays.copyOf(starts, count);
+            runStarts = starts;
+        }
+        return starts;
+    }
+
+    private long offset(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+        }
+        return HEADER + i * RECORD;
+    }
+
+    /**
+     * Appends fills to a journal file through a writable mapping. The file
+     * grows in large steps and is trimmed to the records written on close.
+     * Appends to an existing journal continue after its last record; a run
+     * whose fills start earlier than that record is read as a new run.
+     * Not thread-safe: one thread appends at a time.
+     */
+    public static class Writer implements AutoCloseable {
+
+        private static final long MIN_GROWTH = 64 * 1024 * RECORD;
+        private static final long MAX_GROWTH = 64L << 20;
+
+        private final FileChannel channel;
+        private Arena arena;
+        private MemorySegment segment;
+        private long count;
+
+        public Writer(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                if (channel.size() >= HEADER) {
+                    map(channel.size());
+                    if (segment.get(INT, 0) != MAGIC || segment.get(INT, 4) != VERSION) {
+                        throw new IllegalArgumentException("Not a trade journal file: " + path);
+                    }
+                    count = segment.get(LONG, 8);
+                } else {
+                    map(HEADER + MIN_GROWTH);
+                    segment.set(INT, 0, MAGIC);
+                    segment.set(INT, 4, VERSION);
+                    segment.set(LONG, 8, 0);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (arena != null) {
+                    arena.close();
+                }
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Append one fill
+         * @param time Timestamp in milliseconds
+         * @param side BUY or SELL
+         * @param quantity Shares filled
+         * @param price Fill price
+         * @param cashAfter Cash balance after the fill
+         */
+        public void append(long time, int side, int quantity, double price, double cashAfter) throws IOException {
+            long pos = HEADER + count * RECORD;
+            if (pos + RECORD > segment.byteSize()) {
+                map(segment.byteSize() + Math.min(MAX_GROWTH, Math.max(MIN_GROWTH, segment.byteSize())));
+            }
+            segment.set(LONG, pos, time);
+            segment.set(INT, pos + 8, side);
+            segment.set(INT, pos + 12, quantity);
+            segment.set(DOUBLE, pos + 16, price);
+            segment.set(DOUBLE, pos + 24, cashAfter);
+            count++;
+            segment.set(LONG, 8, count);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        // Push written records to the file
+        public void force() {
+            segment.force();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                segment.force();
+                arena.close();
+                channel.truncate(HEADER + count * RECORD);
+            } finally {
+                channel.close();
+            }
+        }
+
+        // Remap the whole file at a new size; the old mapping is released first
+        private void map(long bytes) throws IOException {
+            if (arena != null) {
+                arena.close();
+            }
+            arena = Arena.ofShared();
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes, arena);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * One row per fill of a trade journal, read from the mapping on demand.
+ */
+public class TradeTableModel extends ColumnTableModel {
+
+    private static final int DATE = 0, SIDE = 1, QUANTITY = 2, PRICE = 3, VALUE = 4, CASH = 5;
+
+    private TradeJournal journal;
+
+    public TradeTableModel() {
+        super(new String[]{"Date", "Side", "Quantity", "Price", "Value", "Cash After"},
+                new String[]{"time", "side", "quantity", "price", "value", "cash"});
+    }
+
+    /**
+     * Show a journal; the caller keeps it mapped while it is shown
+     * @param journal The fills; null to empty the table
+     */
+    public void setJournal(TradeJournal journal) {
+        this.journal = journal;
+        refresh();
+    }
+
+    public TradeJournal getJournal() {
+        return journal;
+    }
+
+    @Override
+    protected int rows() {
+        return journal == null ? 0 : journal.size();
+    }
+
+    @Override
+    protected double value(int row, int column) {
+        switch (column) {
+            case DATE:
+                return journal.time(row);
+            case SIDE:
+                return journal.side(row);
+            case QUANTITY:
+                return journal.quantity(row);
+            case PRICE:
+                return journal.price(row);
+            case VALUE:
+                return journal.quantity(row) * journal.price(row);
+            default:
+                return journal.cashAfter(row);
+        }
+    }
+
+    @Override
+    protected Object cell(int row, int column) {
+        switch (column) {
+            case DATE:
+                return formatTime(journal.time(row));
+            case SIDE:
+                return journal.side(row) == TradeJournal.BUY ? "Buy" : "Sell";
+            case QUANTITY:
+                return journal.quantity(row);
+            default:
+                return formatMoney(value(row, column));
+        }
+    }
+}
@@ -0,0 +1,426 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Screens a universe of symbols on their latest bar and indicator values.
+ * Each symbol is one row: its last bar, the values derived from it, and the
+ * running MA and RSI state of {@link IncrementalIndicators}, so a new bar
+ * updates a row without its history. The rows can be saved to a snapshot
+ * file and read back, so a daily screen only reads the day's new bars.
+ *
+ * Queries are rules in the {@link RuleCompiler} language with symbols in
+ * place of bars, e.g. {@code rsi < 30 && open > ma}. Each field keeps an
+ * index of the rows sorted by value, rebuilt on first use after an update.
+ * When a query is a chain of {@code &&} with comparisons of a field and a
+ * number, the narrowest of those comparisons is looked up by binary search
+ * and only its rows are tested against the whole rule; any other query
+ * tests every row.
+ *
+ * Not thread safe: update and query from one thread, or lock around them.
+ */
+public class UniverseScreener {
+
+    /**
+     * Fields a query may use: the last bar, the MA and RSI of the open price
+     * as StockSystem computes them, the open's distance from the MA and the
+     * close's change from the previous close, both in percent
+     */
+    public static final String[] FIELDS = {"open", "high", "low", "close", "volume", "ma", "rsi", "ma_distance", "change"};
+
+    private static final int OPEN = 0, HIGH = 1, LOW = 2, CLOSE = 3, VOLUME = 4, MA = 5, RSI = 6, MA_DISTANCE = 7, CHANGE = 8;
+    // Version of the snapshot format
+    private static final int FORMAT = 1;
+    // One comparison of a field and a number, either way round
+    private static final Pattern FIELD_FIRST = Pattern.compile("\\s*([a-z_]+)\\s*(<=|>=|==|<|>)\\s*(-?[0-9.]+)\\s*");
+    private static final Pattern NUMBER_FIRST = Pattern.compile("\\s*(-?[0-9.]+)\\s*(<=|>=|==|<|>)\\s*([a-z_]+)\\s*");
+
+    private final int period;
+    private final Map<String, Integer> rows = new HashMap<>();
+    private final List<String> symbols = new ArrayList<>();
+    private final List<IncrementalIndicators> indicators = new ArrayList<>();
+    private long[] times = new long[16];
+    // Close of the bar before the last, for change
+    private double[] previousClose = new double[16];
+    // One column per field, indexed by row
+    private final double[][] values = new double[FIELDS.length][16];
+    // Rows with a value in each field, sorted by value; null when stale
+    private final int[][] sorted = new int[FIELDS.length][];
+
+    /**
+     * Create an empty screener
+     * @param period MA and RSI period, 14 in StockSystem
+     */
+    public UniverseScreener(int period) {
+        this.period = period;
+    }
+
+    /**
+     * Add a bar to a symbol's row, creating the row for a new symbol. Bars
+     * not after the row's last bar are ignored, so feeding a whole history
+     * again only applies its new bars.
+     * @return True if the bar was applied
+     */
+    public boolean update(String symbol, long time, double open, double high, double low, double close, double volume) {
+        Integer found = rows.get(symbol);
+        int row;
+        if (found == null) {
+            row = symbols.size();
+            grow(row + 1);
+            rows.put(symbol, row);
+            symbols.add(symbol);
+            indicators.add(new IncrementalIndicators(period));
+            previousClose[row] = Double.NaN;
+        } else {
+            row = found;
+            if (time <= times[row]) {
+                return false;
+            }
+            previousClose[row] = values[CLOSE][row];
+        }
+        IncrementalIndicators state = indicators.get(row);
+        state.update(open);
+        times[row] = time;
+        values[OPEN][row] = open;
+        values[HIGH][row] = high;
+        values[LOW][row] = low;
+        values[CLOSE][row] = close;
+        values[VOLUME][row] = volume;
+        derive(row);
+        Arrays.fill(sorted, null);
+        return true;
+    }
+
+    /**
+     * Feed a symbol's bars, skipping those the row already has
+     * @param symbol Symbol name
+     * @param bars Its history, in time order
+     * @return Number of bars applied
+     */
+    public int update(String symbol, BarSeries bars) {
+        Integer row = rows.get(symbol);
+        int from = 0;
+        if (row != null) {
+            // Bars are in time order, so the new ones are a suffix
+            long last = times[row];
+            int lo = 0, hi = bars.size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (bars.time(mid) <= last) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            from = lo;
+        }
+        DoubleSeries open = bars.open(), high = bars.high(), low = bars.low(), close = bars.close(), volume = bars.volume();
+        int applied = 0;
+        for (int i = from; i < bars.size(); i++) {
+            if (update(symbol, bars.time(i), open.get(i), high.get(i), low.get(i), close.get(i), volume.get(i))) {
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Symbols whose latest values satisfy a rule
+     * @param rule Rule over FIELDS, e.g. {@code rsi < 30 && open > ma}
+     * @return Matching symbols, in the order they were added
+     * @throws IllegalArgumentException If the rule is not valid
+     */
+    public List<String> query(String rule) {
+        if (rule.indexOf('[') >= 0) {
+            throw new IllegalArgumentException("A screen sees only the latest values; lookbacks such as rsi[1] are not available");
+        }
+        int n = symbols.size();
+        RuleCompiler.Rule test = new RuleCompiler(this::column).compile(rule);
+
+        List<String> matches = new ArrayList<>();
+        int[] candidates = candidates(rule);
+        // Sorting a wide range back into row order costs more than testing every row
+        if (candidates == null || candidates.length > n / 4) {
+            for (int row = 0; row < n; row++) {
+                if (test.test(row)) {
+                    matches.add(symbols.get(row));
+                }
+            }
+        } else {
+            Arrays.sort(candidates);
+            for (int row : candidates) {
+                if (test.test(row)) {
+                    matches.add(symbols.get(row));
+                }
+            }
+        }
+        return matches;
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    /**
+     * Latest value of a field for a symbol
+     * @param symbol Symbol name
+     * @param field One of FIELDS
+     * @return The value; NaN if the symbol is unknown or the value undefined
+     */
+    public double getValue(String symbol, String field) {
+        Integer row = rows.get(symbol);
+        int f = field(field);
+        if (f < 0) {
+            throw new IllegalArgumentException("Unknown field '" + field + "'");
+        }
+        return row == null ? Double.NaN : values[f][row];
+    }
+
+    // Time of a symbol's last bar, or Long.MIN_VALUE if it has none
+    public long getTime(String symbol) {
+        Integer row = rows.get(symbol);
+        return row == null ? Long.MIN_VALUE : times[row];
+    }
+
+    /**
+     * Save every row, including the indicator state, to a snapshot file.
+     * Written to a temporary file first, so a failed save keeps the old one.
+     * @param file Destination
+     */
+    public void save(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FORMAT);
+                out.writeInt(period);
+                out.writeInt(symbols.size());
+                for (int row = 0; row < symbols.size(); row++) {
+                    out.writeUTF(symbols.get(row));
+                    out.writeLong(times[row]);
+                    for (int f = OPEN; f <= VOLUME; f++) {
+                        out.writeDouble(values[f][row]);
+                    }
+                    out.writeDouble(previousClose[row]);
+                    indicators.get(row).writeTo(out);
+                }
+            }
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read a snapshot written by save
+     * @param file Snapshot file
+     * @return The screener, ready for updates and queries
+     * @throws IOException If the file is unreadable, truncated or in another format
+     */
+    public static UniverseScreener load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int format = in.readInt();
+            if (format != FORMAT) {
+                throw new IOException("Unsupported snapshot format " + format);
+            }
+            UniverseScreener screener = new UniverseScreener(in.readInt());
+            int n = in.readInt();
+            screener.grow(n);
+            for (int row = 0; row < n; row++) {
+                String symbol = in.readUTF();
+                screener.rows.put(symbol, row);
+                screener.symbols.add(symbol);
+                screener.times[row] = in.readLong();
+                for (int f = OPEN; f <= VOLUME; f++) {
+                    screener.values[f][row] = in.readDouble();
+                }
+                screener.previousClose[row] = in.readDouble();
+                screener.indicators.add(IncrementalIndicators.readFrom(in));
+                screener.derive(row);
+            }
+            return screener;
+        }
+    }
+
+    // Indicator values of a row from its bar and indicator state
+    private void derive(int row) {
+        IncrementalIndicators state = indicators.get(row);
+        double open = values[OPEN][row], ma = state.getMA();
+        values[MA][row] = ma;
+        values[RSI][row] = state.getRSI();
+        values[MA_DISTANCE][row] = ma != 0 ? (open - ma) / ma * 100 : Double.NaN;
+        double previous = previousClose[row];
+        values[CHANGE][row] = previous != 0 ? (values[CLOSE][row] - previous) / previous * 100 : Double.NaN;
+    }
+
+    private void grow(int capacity) {
+        if (capacity <= times.length) {
+            return;
+        }
+        int size = Math.max(capacity, times.length + (times.length >> 1));
+        times = Arrays.copyOf(times, size);
+        previousClose = Arrays.copyOf(previousClose, size);
+        for (int f = 0; f < FIELDS.length; f++) {
+            values[f] = Arrays.copyOf(values[f], size);
+        }
+    }
+
+    // Query columns: a view of one field over the rows, without copying
+    private DoubleSeries column(String name, double[] params) {
+        int f = field(name);
+        if (f < 0) {
+            return null;
+        }
+        if (params.length > 0) {
+            throw new IllegalArgumentException(name + " takes no parameters; the screen keeps period " + period + " only");
+        }
+        return new DoubleColumn(values[f], symbols.size());
+    }
+
+    private static int field(String name) {
+        for (int f = 0; f < FIELDS.length; f++) {
+            if (FIELDS[f].equals(name)) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    // Rows of the narrowest field-number comparison of a rule made only of && chains, or null to test every row
+    private int[] candidates(String rule) {
+        String text = rule.toLowerCase();
+        if (text.contains("||") || text.contains("(") || text.replace("!=", "").contains("!")) {
+            return null;
+        }
+        int[] best = null;
+        int bestFrom = 0, bestTo = Integer.MAX_VALUE;
+        for (String part : text.split("&&")) {
+            int f;
+            String op;
+            double bound;
+            Matcher m = FIELD_FIRST.matcher(part);
+            if (m.matches()) {
+                f = field(m.group(1));
+                op = m.group(2);
+                bound = parse(m.group(3));
+            } else if ((m = NUMBER_FIRST.matcher(part)).matches()) {
+                f = field(m.group(3));
+                op = flip(m.group(2));
+                bound = parse(m.group(1));
+            } else {
+                continue;
+            }
+            if (f < 0 || Double.isNaN(bound)) {
+                continue;
+            }
+            int[] order = sorted(f);
+            double[] column = values[f];
+            // First position with a value above, or at least, the bound
+            int above = search(order, column, bound, true);
+            int atLeast = search(order, column, bound, false);
+            int from, to;
+            switch (op) {
+                case "<":
+                    from = 0;
+                    to = atLeast;
+                    break;
+                case "<=":
+                    from = 0;
+                    to = above;
+                    break;
+                case ">":
+                    from = above;
+                    to = order.length;
+                    break;
+                case ">=":
+                    from = atLeast;
+                    to = order.length;
+                    break;
+                default:
+                    from = atLeast;
+                    to = above;
+                    break;
+            }
+            if (best == null || to - from < bestTo - bestFrom) {
+                best = order;
+                bestFrom = from;
+                bestTo = to;
+            }
+        }
+        return best == null ? null : Arrays.copyOfRange(best, bestFrom, bestTo);
+    }
+
+    private static double parse(String number) {
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            // The compiler reports it
+            return Double.NaN;
+        }
+    }
+
+    // The same comparison with its sides swapped
+    private static String flip(String op) {
+        switch (op) {
+            case "<":
+                return ">";
+            case "<=":
+                return ">=";
+            case ">":
+                return "<";
+            case ">=":
+                return "<=";
+            default:
+                return op;
+        }
+    }
+
+    // First position in order whose value is above the bound (or at least the bound)
+    private static int search(int[] order, double[] column, double bound, boolean strictlyAbove) {
+        int lo = 0, hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double v = column[order[mid]];
+            if (strictlyAbove ? v <= bound : v < bound) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Rows with a value (not NaN) in a field, by ascending value
+    private int[] sorted(int f) {
+        if (sorted[f] == null) {
+            double[] column = values[f];
+            int[] order = new int[symbols.size()];
+            int n = 0;
+            for (int row = 0; row < order.length; row++) {
+                if (!Double.isNaN(column[row])) {
+                    order[n++] = row;
+                }
+            }
+            order = Arrays.copyOf(order, n);
+            IndexSort.byKey(order, column);
+            sorted[f] = order;
+        }
+        return sorted[f];
+    }
+}
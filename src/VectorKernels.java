@@ -0,0 +1,193 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD implementation of the indicator kernels using the incubating Vector API.
+ * Needs --add-modules jdk.incubator.vector at compile and run time; it is only
+ * loaded through {@link IndicatorKernels#get()} when that module is present.
+ *
+ * Lanes run across bars, so each bar's window is still summed one element at a
+ * time in the same order as {@link ScalarKernels}. No fused multiply-add is used.
+ * Results are therefore bit for bit identical to the scalar path.
+ */
+public class VectorKernels implements IndicatorKernels {
+    
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    
+    @Override
+    public void gainLoss(double[] price, int n, double[] gain, double[] loss) {
+        if (n == 0) {
+            return;
+        }
+        gain[0] = 0.0;
+        loss[0] = 0.0;
+        DoubleVector zero = DoubleVector.zero(SPECIES);
+        int i = 1;
+        for (int bound = 1 + SPECIES.loopBound(n - 1); i < bound; i += SPECIES.length()) {
+            DoubleVector change = DoubleVector.fromArray(SPECIES, price, i)
+                    .sub(DoubleVector.fromArray(SPECIES, price, i - 1));
+            VectorMask<Double> up = change.compare(VectorOperators.GE, 0.0);
+            zero.blend(change, up).intoArray(gain, i);
+            change.abs().blend(zero, up).intoArray(loss, i);
+        }
+        for (; i < n; i++) {
+            double change = price[i] - price[i - 1];
+            if (change >= 0) {
+                gain[i] = change;
+                loss[i] = 0.0;
+            } else {
+                gain[i] = 0.0;
+                loss[i] = Math.abs(change);
+            }
+        }
+    }
+    
+    @Override
+    public void trailingMean(double[] x, int n, int window, double[] out) {
+        int head = Math.min(n, window - 1);
+        ScalarKernels.trailingMean(x, 0, head, window, out);
+        int i = head;
+        for (int bound = head + SPECIES.loopBound(n - head); i < bound; i += SPECIES.length()) {
+            DoubleVector sum = DoubleVector.zero(SPECIES);
+            for (int j = i - window + 1; j <= i; j++) {
+                sum = sum.add(DoubleVector.fromArray(SPECIES, x, j));
+            }
+            sum.div(window).intoArray(out, i);
+        }
+        ScalarKernels.trailingMean(x, i, n, window, out);
+    }
+    
+    @Override
+    public void trailingSum(double[] x, int n, int window, double[] out) {
+        int head = Math.min(n, window - 1);
+        ScalarKernels.trailingSum(x, 0, head, window, out);
+        int i = head;
+        for (int bound = head + SPECIES.loopBound(n - head); i < bound; i += SPECIES.length()) {
+            DoubleVector sum = DoubleVector.zero(SPECIES);
+            for (int j = i; j > i - window; j--) {
+                sum = sum.add(DoubleVector.fromArray(SPECIES, x, j));
+            }
+            sum.intoArray(out, i);
+        }
+        ScalarKernels.trailingSum(x, i, n, window, out);
+    }
+    
+    @Override
+    public void equity(double cash, double shares, double[] close, int from, int to, double[] out) {
+        DoubleVector c = DoubleVector.broadcast(SPECIES, cash);
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            c.add(DoubleVector.fromArray(SPECIES, close, i).mul(shares)).intoArray(out, i - from);
+        }
+        for (; i < to; i++) {
+            out[i - from] = cash + shares * close[i];
+        }
+    }
+    
+    @Override
+    public void equity(double[] cash, double[] shares, double[] close, int n, double[] out) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+            DoubleVector held = DoubleVector.fromArray(SPECIES, shares, i).mul(DoubleVector.fromArray(SPECIES, close, i));
+            DoubleVector.fromArray(SPECIES, cash, i).add(held).intoArray(out, i);
+        }
+        for (; i < n; i++) {
+            out[i] = cash[i] + shares[i] * close[i];
+        }
+    }
+    
+    // Each loop names its operator, as the Vector API only compiles a constant one to SIMD
+    @Override
+    public void compare(int op, double[] a, int aFrom, double c, boolean[] out, int n) {
+        int k = 0;
+        int bound = SPECIES.loopBound(n);
+        switch (op) {
+            case LT:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.LT, c).intoArray(out, k);
+                }
+                break;
+            case LE:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.LE, c).intoArray(out, k);
+                }
+                break;
+            case GT:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.GT, c).intoArray(out, k);
+                }
+                break;
+            case GE:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.GE, c).intoArray(out, k);
+                }
+                break;
+            case EQ:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.EQ, c).intoArray(out, k);
+                }
+                break;
+            default:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.NE, c).intoArray(out, k);
+                }
+        }
+        ScalarKernels.compare(op, a, aFrom, null, 0, c, out, k, n);
+    }
+    
+    @Override
+    public void compare(int op, double[] a, int aFrom, double[] b, int bFrom, boolean[] out, int n) {
+        int k = 0;
+        int bound = SPECIES.loopBound(n);
+        switch (op) {
+            case LT:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.LT, DoubleVector.fromArray(SPECIES, b, bFrom + k)).intoArray(out, k);
+                }
+                break;
+            case LE:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.LE, DoubleVector.fromArray(SPECIES, b, bFrom + k)).intoArray(out, k);
+                }
+                break;
+            case GT:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.GT, DoubleVector.fromArray(SPECIES, b, bFrom + k)).intoArray(out, k);
+                }
+                break;
+            case GE:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.GE, DoubleVector.fromArray(SPECIES, b, bFrom + k)).intoArray(out, k);
+                }
+                break;
+            case EQ:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.EQ, DoubleVector.fromArray(SPECIES, b, bFrom + k)).intoArray(out, k);
+                }
+                break;
+            default:
+                for (; k < bound; k += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, aFrom + k).compare(VectorOperators.NE, DoubleVector.fromArray(SPECIES, b, bFrom + k)).intoArray(out, k);
+                }
+        }
+        ScalarKernels.compare(op, a, aFrom, b, bFrom, 0, out, k, n);
+    }
+    
+    @Override
+    public void merge(boolean[] out, boolean[] x, int n, boolean any) {
+        int k = 0;
+        int bound = SPECIES.loopBound(n);
+        if (any) {
+            for (; k < bound; k += SPECIES.length()) {
+                VectorMask.fromArray(SPECIES, out, k).or(VectorMask.fromArray(SPECIES, x, k)).intoArray(out, k);
+            }
+        } else {
+            for (; k < bound; k += SPECIES.length()) {
+                VectorMask.fromArray(SPECIES, out, k).and(VectorMask.fromArray(SPECIES, x, k)).intoArray(out, k);
+            }
+        }
+        ScalarKernels.merge(out, x, k, n, any);
+    }
+}